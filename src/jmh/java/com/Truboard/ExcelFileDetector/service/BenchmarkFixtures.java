@@ -0,0 +1,69 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.PropertiesPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Services wired the way Spring wires them, without starting the application context.
+ *
+ * The configuration is bound from application.properties; -Dexcel.* system properties passed to
+ * the benchmark JVM (e.g. -jvmArgsAppend -Dexcel.ingest.reader=dom) override it.
+ */
+final class BenchmarkFixtures {
+
+    final ExcelValidationConfig config;
+    final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    final FileStorageService fileStorageService;
+    final ValidationExecutor validationExecutor;
+    final ExcelService excelService;
+
+    BenchmarkFixtures() throws IOException {
+        this.config = loadConfig();
+        this.fileStorageService = new FileStorageService(config, meterRegistry);
+        this.validationExecutor = new ValidationExecutor(config);
+        this.excelService = new ExcelService(config, fileStorageService, validationExecutor,
+                new MemoryAdmissionService(config, meterRegistry), meterRegistry);
+    }
+
+    /**
+     * Synthetic loan tape of this shape for the configured rules, cached under target/jmh-workbooks.
+     */
+    Path workbook(int rows, double errorRate, double blankRate) throws IOException {
+        return new LoanTapeGenerator(config.getValidations())
+                .cached(Path.of("target", "jmh-workbooks"), rows, errorRate, blankRate);
+    }
+
+    static ExcelValidationConfig loadConfig() throws IOException {
+        Properties properties = PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("excel.")) properties.setProperty(name, System.getProperty(name));
+        }
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new PropertiesPropertySource("benchmark", properties));
+        return Binder.get(environment).bind("excel", ExcelValidationConfig.class).get();
+    }
+
+    /**
+     * The services log to stdout per column and per file; keep that out of the JMH output
+     * (building the messages is still measured, writing them to a terminal is not).
+     */
+    static void silenceStdout() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    void shutdown() {
+        validationExecutor.shutdown();
+        fileStorageService.shutdown();
+    }
+}
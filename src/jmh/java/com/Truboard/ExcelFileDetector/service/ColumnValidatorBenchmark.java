@@ -0,0 +1,97 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ColumnValidationRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-cell validation cost of each rule type (the former validateCellDetailed, now
+ * ColumnValidator.validate), on the values the workbooks produce: a share errorRate of the
+ * cells fails the rule. Reported per cell.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnValidatorBenchmark {
+
+    private static final int CELLS = 4096;
+
+    @Param({"number", "percent", "currency", "date", "text-regex", "text"})
+    public String ruleType;
+
+    @Param({"0.0", "0.1"})
+    public double errorRate;
+
+    private ColumnValidator validator;
+    private String[] values;
+    private final List<String> errors = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        ColumnValidationRule rule = new ColumnValidationRule();
+        rule.setRequired(true);
+        Random random = new Random(42);
+        values = new String[CELLS];
+        switch (ruleType) {
+            case "number":
+                rule.setType("number");
+                for (int i = 0; i < CELLS; i++) values[i] = fails(random) ? "n/a" : Integer.toString(random.nextInt(360));
+                break;
+            case "percent":
+                rule.setType("percent");
+                for (int i = 0; i < CELLS; i++) values[i] = fails(random) ? "12.5" : String.format("%.2f%%", random.nextInt(2500) / 100.0);
+                break;
+            case "currency":
+                rule.setType("currency");
+                for (int i = 0; i < CELLS; i++) values[i] = fails(random) ? "TBD" : String.format("%,.2f", random.nextInt(100_000_000) / 100.0);
+                break;
+            case "date":
+                rule.setType("date");
+                rule.setFormat("dd-MMM-yy");
+                for (int i = 0; i < CELLS; i++) values[i] = fails(random) ? "31/02/2024" : String.format("%02d-Mar-24", 1 + random.nextInt(28));
+                break;
+            case "text-regex":
+                rule.setType("text");
+                rule.setRegex("^[A-Za-z0-9]+$");
+                for (int i = 0; i < CELLS; i++) values[i] = fails(random) ? "LAN-" + i : "LAN" + (100000 + i);
+                break;
+            default:
+                rule.setType("text");
+                for (int i = 0; i < CELLS; i++) values[i] = fails(random) ? "" : "Borrower " + i;
+        }
+        validator = ColumnValidator.compile(rule);
+    }
+
+    private boolean fails(Random random) {
+        return random.nextDouble() < errorRate;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public void validate(Blackhole blackhole) {
+        for (String value : values) {
+            errors.clear();
+            validator.validate(value, errors);
+            blackhole.consume(errors.size());
+        }
+    }
+}
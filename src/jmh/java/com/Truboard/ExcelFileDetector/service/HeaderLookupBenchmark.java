@@ -0,0 +1,66 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Header to rule matching for one header row: every configured header as partners write it
+ * (as configured, and lower case with spaces) plus a couple of headers without a rule.
+ * findRuleForColumn goes through the header cache, so after the first call it measures cache hits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderLookupBenchmark {
+
+    private BenchmarkFixtures fixtures;
+    private String[] headers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkFixtures.silenceStdout();
+        fixtures = new BenchmarkFixtures();
+        List<String> variants = new ArrayList<>();
+        for (String key : fixtures.config.getValidations().keySet()) {
+            variants.add(key);
+            variants.add(key.replace('_', ' ').toLowerCase());
+        }
+        variants.add("Remarks");
+        variants.add("Column_12");
+        headers = variants.toArray(new String[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixtures.shutdown();
+    }
+
+    @Benchmark
+    public void normalizeForCompare(Blackhole blackhole) {
+        for (String header : headers) blackhole.consume(fixtures.excelService.normalizeForCompare(header));
+    }
+
+    @Benchmark
+    public void findRuleForColumn(Blackhole blackhole) {
+        for (String header : headers) blackhole.consume(fixtures.excelService.findRuleForColumn(header));
+    }
+}
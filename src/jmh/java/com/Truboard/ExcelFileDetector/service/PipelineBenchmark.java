@@ -0,0 +1,102 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ExcelInfoResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end service runs on synthetic loan tapes (see LoanTapeGenerator): the upload
+ * (extractAndProcessExcelInfo, without sheetData in the response) and the highlighted download
+ * of a file uploaded once (generateErrorHighlightedExcel, output discarded).
+ * Each run is timed on its own; run a single size with e.g. -p rows=100000, and compare
+ * reader/writer modes with -jvmArgsAppend -Dexcel.ingest.reader=dom.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PipelineBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"0.01", "0.1"})
+    public double errorRate;
+
+    @Param({"0.02"})
+    public double blankRate;
+
+    private BenchmarkFixtures fixtures;
+    private Path workbook;
+    private String uploadedFileId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkFixtures.silenceStdout();
+        fixtures = new BenchmarkFixtures();
+        workbook = fixtures.workbook(rows, errorRate, blankRate);
+        uploadedFileId = fixtures.excelService.extractAndProcessExcelInfo(spool(), "loan-tape.xlsx", false).getFileId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixtures.shutdown();
+    }
+
+    private Path spool() throws Exception {
+        return Files.copy(workbook, fixtures.fileStorageService.createTempFile(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * The upload takes ownership of its spooled file, so every run gets a fresh copy
+     * (and its stored result is removed afterwards).
+     */
+    @State(Scope.Thread)
+    public static class UploadRun {
+        Path uploadFile;
+        String fileId;
+
+        @Setup(Level.Invocation)
+        public void spool(PipelineBenchmark pipeline) throws Exception {
+            uploadFile = pipeline.spool();
+        }
+
+        @TearDown(Level.Invocation)
+        public void remove(PipelineBenchmark pipeline) throws Exception {
+            Files.deleteIfExists(uploadFile);
+            if (fileId != null) pipeline.fixtures.fileStorageService.removeFile(fileId);
+            fileId = null;
+        }
+    }
+
+    @Benchmark
+    public ExcelInfoResponse upload(UploadRun run) throws Exception {
+        ExcelInfoResponse response = fixtures.excelService.extractAndProcessExcelInfo(run.uploadFile, "loan-tape.xlsx", false);
+        run.fileId = response.getFileId();
+        return response;
+    }
+
+    @Benchmark
+    public void downloadHighlighted() throws Exception {
+        fixtures.excelService.generateErrorHighlightedExcel(uploadedFileId, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,74 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-pass sheet scan of the DOM path (trailing blank rows and column values) on a loaded
+ * workbook; loading is not measured.
+ * The 1M-row DOM needs a large heap: -p rows=1000000 -jvmArgsAppend -Xmx12g.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SheetScanBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    @Param({"0.05"})
+    public double blankRate;
+
+    private BenchmarkFixtures fixtures;
+    private XSSFWorkbook workbook;
+    private Sheet sheet;
+    private DataFormatter formatter;
+    private FormulaEvaluator evaluator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InvalidFormatException {
+        BenchmarkFixtures.silenceStdout();
+        fixtures = new BenchmarkFixtures();
+        // Opened from the file: large sheet parts exceed POI's in-memory part limit
+        workbook = new XSSFWorkbook(OPCPackage.open(
+                fixtures.workbook(rows, 0.01, blankRate).toFile(), PackageAccess.READ));
+        sheet = workbook.getSheetAt(0);
+        formatter = new DataFormatter();
+        evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        workbook.getPackage().revert();
+        fixtures.shutdown();
+    }
+
+    @Benchmark
+    public SheetScan scan() {
+        return SheetScan.scan(sheet, formatter, evaluator, colName -> TypedColumn.forValidator(null), colName -> null);
+    }
+}
@@ -0,0 +1,370 @@
+package com.Truboard.ExcelFileDetector.loadtest;
+
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import com.Truboard.ExcelFileDetector.service.LoanTapeGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.PropertiesPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of a running application: uploads synthetic loan tapes (see LoanTapeGenerator) to
+ * /api/excel/upload and downloads them again from /api/excel/download-highlighted/{fileId},
+ * for every combination of file size and concurrency level.
+ *
+ * Per phase it reports throughput, latency percentiles and failed requests, the heap high-water
+ * mark (jvm.memory.used, area=heap, sampled from /actuator/metrics while the phase runs) and,
+ * after the uploads, the bytes held by FileStorageService (excel.storage.resident.bytes and
+ * excel.storage.spilled.bytes). Uploaded files are deleted once a size/concurrency step is done.
+ * Both gauges cover the whole application, so run it against an instance nobody else is using.
+ *
+ * Start the application first, with uploads larger than the default 10MB multipart limit allowed
+ * (100,000 rows are about 25MB), e.g.
+ *   mvn spring-boot:run -Dspring-boot.run.arguments="--spring.servlet.multipart.max-file-size=1GB --spring.servlet.multipart.max-request-size=1GB"
+ * then run
+ *   mvn -Pload-test test-compile exec:exec -Dload-test.args="--rows=1000,100000 --concurrency=1,4,16"
+ *
+ * Options (all --name=value): base-url (http://localhost:8080), rows (1000,10000),
+ * concurrency (1,4), requests per step (20), error-rate (0.05), blank-rate (0.02),
+ * download (true), out (target/load-test-result.csv). The workbooks match the excel.validations
+ * rules of application.properties (overridable with -Dexcel.* system properties), which should
+ * be the rules the application runs with.
+ */
+public final class UploadLoadTest {
+
+    private static final Duration HEAP_SAMPLE_INTERVAL = Duration.ofMillis(100);
+    private static final Path WORKBOOK_DIR = Path.of("target", "load-test-workbooks");
+
+    private final String baseUrl;
+    private final int requests;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private UploadLoadTest(String baseUrl, int requests) {
+        this.baseUrl = baseUrl;
+        this.requests = requests;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String baseUrl = options.getOrDefault("base-url", "http://localhost:8080");
+        int[] rowCounts = parseInts(options.getOrDefault("rows", "1000,10000"));
+        int[] concurrencyLevels = parseInts(options.getOrDefault("concurrency", "1,4"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "20"));
+        double errorRate = Double.parseDouble(options.getOrDefault("error-rate", "0.05"));
+        double blankRate = Double.parseDouble(options.getOrDefault("blank-rate", "0.02"));
+        boolean download = Boolean.parseBoolean(options.getOrDefault("download", "true"));
+        Path out = Path.of(options.getOrDefault("out", "target/load-test-result.csv"));
+
+        UploadLoadTest loadTest = new UploadLoadTest(baseUrl, requests);
+        LoanTapeGenerator generator = new LoanTapeGenerator(loadConfig().getValidations());
+
+        List<PhaseResult> results = new ArrayList<>();
+        System.out.println(PhaseResult.HEADER);
+        for (int rows : rowCounts) {
+            Path workbook = generator.cached(WORKBOOK_DIR, rows, errorRate, blankRate);
+            byte[] body = multipartBody(workbook);
+            for (int concurrency : concurrencyLevels) {
+                results.addAll(loadTest.runStep(rows, concurrency, body, download));
+            }
+        }
+
+        Files.createDirectories(out.toAbsolutePath().getParent());
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+            writer.println(PhaseResult.CSV_HEADER);
+            for (PhaseResult result : results) writer.println(result.toCsv());
+        }
+        System.out.println("Results written to " + out);
+    }
+
+    /**
+     * One size/concurrency step: the uploads, then (optionally) a highlighted download of each
+     * uploaded file, then cleanup.
+     */
+    private List<PhaseResult> runStep(int rows, int concurrency, byte[] uploadBody, boolean download) throws Exception {
+        List<PhaseResult> results = new ArrayList<>();
+        List<String> fileIds = Collections.synchronizedList(new ArrayList<>());
+
+        PhaseResult upload = runPhase("upload", rows, concurrency, i -> {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/excel/upload?includeSheetData=false"))
+                    .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(uploadBody))
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                JsonNode fileId = objectMapper.readTree(response.body()).get("fileId");
+                if (fileId != null && !fileId.isNull()) fileIds.add(fileId.asText());
+            }
+            return response.statusCode();
+        });
+        long resident = metricValue("excel.storage.resident.bytes", null);
+        long spilled = metricValue("excel.storage.spilled.bytes", null);
+        upload.storedBytes = (resident < 0 || spilled < 0) ? -1 : resident + spilled;
+        report(upload, results);
+
+        if (download && !fileIds.isEmpty()) {
+            List<String> downloads = new ArrayList<>(fileIds);
+            PhaseResult highlighted = runPhase("download", rows, concurrency, i -> {
+                HttpRequest request = HttpRequest.newBuilder(
+                        URI.create(baseUrl + "/api/excel/download-highlighted/" + downloads.get(i % downloads.size())))
+                        .GET()
+                        .build();
+                return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            });
+            report(highlighted, results);
+        }
+
+        for (String fileId : fileIds) {
+            client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/excel/files/" + fileId)).DELETE().build(),
+                    HttpResponse.BodyHandlers.discarding());
+        }
+        return results;
+    }
+
+    private void report(PhaseResult result, List<PhaseResult> results) {
+        System.out.println(result);
+        results.add(result);
+    }
+
+    private interface Call {
+        int send(int index) throws Exception;
+    }
+
+    /**
+     * {@code requests} calls spread over {@code concurrency} threads, with the heap sampled
+     * in the background.
+     */
+    private PhaseResult runPhase(String phase, int rows, int concurrency, Call call) throws Exception {
+        long[] latenciesNanos = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        Map<Integer, AtomicInteger> statuses = new HashMap<>();
+
+        HeapSampler heapSampler = new HeapSampler();
+        Thread sampler = new Thread(heapSampler, "heap-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < concurrency; t++) {
+                workers.add(pool.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                        long callStart = System.nanoTime();
+                        int status;
+                        try {
+                            status = call.send(i);
+                        } catch (Exception e) {
+                            status = -1;
+                        }
+                        latenciesNanos[i] = System.nanoTime() - callStart;
+                        if (status != 200) failures.incrementAndGet();
+                        synchronized (statuses) {
+                            statuses.computeIfAbsent(status, s -> new AtomicInteger()).incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) worker.get();
+        } finally {
+            pool.shutdown();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        heapSampler.stop();
+        sampler.join();
+
+        PhaseResult result = new PhaseResult(phase, rows, concurrency, requests, elapsedNanos, latenciesNanos);
+        result.failures = failures.get();
+        result.statuses = statuses.toString();
+        result.heapHighWaterBytes = heapSampler.maxBytes.get();
+        return result;
+    }
+
+    /**
+     * Polls jvm.memory.used (area=heap) until stopped and keeps the highest value seen.
+     * Short spikes between two samples are missed, so this is a lower bound of the true peak.
+     */
+    private final class HeapSampler implements Runnable {
+        private final AtomicLong maxBytes = new AtomicLong(-1);
+        private volatile boolean running = true;
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    long used = metricValue("jvm.memory.used", "area:heap");
+                    maxBytes.accumulateAndGet(used, Math::max);
+                    Thread.sleep(HEAP_SAMPLE_INTERVAL.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    // keep sampling: the application may be too busy to answer in time
+                }
+            }
+        }
+
+        void stop() {
+            running = false;
+        }
+    }
+
+    /**
+     * Current value of an actuator metric, -1 when it cannot be read.
+     */
+    private long metricValue(String name, String tag) {
+        String url = baseUrl + "/actuator/metrics/" + name + (tag != null ? "?tag=" + tag : "");
+        try {
+            HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(5)).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) return -1;
+            for (JsonNode measurement : objectMapper.readTree(response.body()).path("measurements")) {
+                if ("VALUE".equals(measurement.path("statistic").asText())) {
+                    return (long) measurement.path("value").asDouble();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read metric " + name + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return -1;
+    }
+
+    private static final String BOUNDARY = "load-test-" + UUID.randomUUID();
+
+    private static byte[] multipartBody(Path workbook) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream((int) Files.size(workbook) + 512);
+        body.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + workbook.getFileName() + "\"\r\n"
+                + "Content-Type: application/vnd.openxmlformats-officedocument.spreadsheetml.sheet\r\n\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+        Files.copy(workbook, body);
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+
+    static ExcelValidationConfig loadConfig() throws IOException {
+        Properties properties = PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("excel.")) properties.setProperty(name, System.getProperty(name));
+        }
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new PropertiesPropertySource("load-test", properties));
+        return Binder.get(environment).bind("excel", ExcelValidationConfig.class).get();
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private static int[] parseInts(String list) {
+        return Arrays.stream(list.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    /**
+     * Outcome of one phase; latencies are end to end, including the response body.
+     */
+    private static final class PhaseResult {
+        static final String HEADER = String.format(Locale.ROOT, "%-8s %9s %5s %6s %6s %9s %9s %9s %9s %9s %9s %10s",
+                "phase", "rows", "conc", "reqs", "failed", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms",
+                "heap MB", "stored MB");
+        static final String CSV_HEADER = "phase,rows,concurrency,requests,failed,statuses,throughput_per_s,"
+                + "p50_ms,p90_ms,p99_ms,max_ms,heap_high_water_bytes,stored_bytes";
+
+        final String phase;
+        final int rows;
+        final int concurrency;
+        final int requests;
+        final double throughput;
+        final double p50Millis;
+        final double p90Millis;
+        final double p99Millis;
+        final double maxMillis;
+        int failures;
+        String statuses;
+        long heapHighWaterBytes = -1;
+        long storedBytes = -1;
+
+        PhaseResult(String phase, int rows, int concurrency, int requests, long elapsedNanos, long[] latenciesNanos) {
+            this.phase = phase;
+            this.rows = rows;
+            this.concurrency = concurrency;
+            this.requests = requests;
+            this.throughput = requests / (elapsedNanos / 1e9);
+            long[] sorted = latenciesNanos.clone();
+            Arrays.sort(sorted);
+            this.p50Millis = percentile(sorted, 0.50);
+            this.p90Millis = percentile(sorted, 0.90);
+            this.p99Millis = percentile(sorted, 0.99);
+            this.maxMillis = sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0;
+        }
+
+        /**
+         * Nearest-rank percentile, in milliseconds
+         */
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) return 0;
+            int rank = (int) Math.ceil(p * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+
+        private static String megabytes(long bytes) {
+            return bytes < 0 ? "-" : String.format(Locale.ROOT, "%.1f", bytes / (1024.0 * 1024.0));
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%d,%d,%d,%d,\"%s\",%.3f,%.1f,%.1f,%.1f,%.1f,%d,%d",
+                    phase, rows, concurrency, requests, failures, statuses, throughput,
+                    p50Millis, p90Millis, p99Millis, maxMillis, heapHighWaterBytes, storedBytes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-8s %9d %5d %6d %6d %9.2f %9.1f %9.1f %9.1f %9.1f %9s %10s",
+                    phase, rows, concurrency, requests, failures, throughput, p50Millis, p90Millis, p99Millis,
+                    maxMillis, megabytes(heapHighWaterBytes), megabytes(storedBytes));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.Truboard.ExcelFileDetector.DTO;
+
+public class AdmissionRejectedException extends RuntimeException {
+    private final long retryAfterSeconds; // 0 when retrying cannot help (the file alone exceeds the budget)
+
+    public AdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public boolean isRetryable() {
+        return retryAfterSeconds > 0;
+    }
+}
@@ -11,6 +11,8 @@ public class ExcelInfoResponse {
     private List<ValidationError> detailedErrors; // New field for detailed error information
     private String fileId; // New field for file tracking
     private String fileType; // "xlsx" or "json"
+    private long truncatedErrorCount; // errors left out of the lists because of excel.error-limits
+    private boolean validationStopped; // fail-fast stopped validation before the end of the data
 
     public ExcelInfoResponse(int sheetCount, List<String> sheetNames,
                               Map<String, List<String>> sheetData,
@@ -44,6 +46,12 @@ public class ExcelInfoResponse {
     public List<ValidationError> getDetailedErrors() { return detailedErrors; }
     public String getFileId() { return fileId; }
     public String getFileType() { return fileType; }
+    public long getTruncatedErrorCount() { return truncatedErrorCount; }
+    public boolean isValidationStopped() { return validationStopped; }
+
+    public void setSheetData(Map<String, List<String>> sheetData) {
+        this.sheetData = sheetData;
+    }
 
     public void setDetailedErrors(List<ValidationError> detailedErrors) {
         this.detailedErrors = detailedErrors;
@@ -56,4 +64,12 @@ public class ExcelInfoResponse {
     public void setFileType(String fileType) {
         this.fileType = fileType;
     }
+
+    public void setTruncatedErrorCount(long truncatedErrorCount) {
+        this.truncatedErrorCount = truncatedErrorCount;
+    }
+
+    public void setValidationStopped(boolean validationStopped) {
+        this.validationStopped = validationStopped;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.Truboard.ExcelFileDetector.DTO;
+
+public class JobQueueFullException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public JobQueueFullException(long retryAfterSeconds) {
+        super("Upload queue is full, retry in " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,36 @@
+package com.Truboard.ExcelFileDetector.DTO;
+
+import java.util.List;
+import java.util.Map;
+
+public class SheetRowsResponse {
+    private final String fileId;
+    private final String fileType; // "xlsx" or "json"
+    private final String sheetName;
+    private final int offset; // index of the first returned data row (0 = first row under the header)
+    private final int rowCount; // rows in this page
+    private final int firstRowNumber; // row number of the first returned row, as used in error messages
+    private final boolean hasMore; // rows exist after this page
+    private final Map<String, List<String>> sheetData; // column → values of this page
+
+    public SheetRowsResponse(String fileId, String fileType, String sheetName, int offset, int rowCount,
+                             int firstRowNumber, boolean hasMore, Map<String, List<String>> sheetData) {
+        this.fileId = fileId;
+        this.fileType = fileType;
+        this.sheetName = sheetName;
+        this.offset = offset;
+        this.rowCount = rowCount;
+        this.firstRowNumber = firstRowNumber;
+        this.hasMore = hasMore;
+        this.sheetData = sheetData;
+    }
+
+    public String getFileId() { return fileId; }
+    public String getFileType() { return fileType; }
+    public String getSheetName() { return sheetName; }
+    public int getOffset() { return offset; }
+    public int getRowCount() { return rowCount; }
+    public int getFirstRowNumber() { return firstRowNumber; }
+    public boolean isHasMore() { return hasMore; }
+    public Map<String, List<String>> getSheetData() { return sheetData; }
+}
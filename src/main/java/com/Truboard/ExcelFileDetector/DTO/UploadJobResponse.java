@@ -0,0 +1,62 @@
+package com.Truboard.ExcelFileDetector.DTO;
+
+public class UploadJobResponse {
+    private final String jobId;
+    private final String fileName;
+    private final String status; // QUEUED, RUNNING, COMPLETED, FAILED
+    private final long submittedAt;
+    private final Long startedAt;
+    private final Long finishedAt;
+    private final String error;
+    private final String statusUrl;
+    private final String resultUrl;
+
+    public UploadJobResponse(String jobId, String fileName, String status, long submittedAt, Long startedAt,
+                             Long finishedAt, String error, String statusUrl, String resultUrl) {
+        this.jobId = jobId;
+        this.fileName = fileName;
+        this.status = status;
+        this.submittedAt = submittedAt;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.error = error;
+        this.statusUrl = statusUrl;
+        this.resultUrl = resultUrl;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Long getStartedAt() {
+        return startedAt;
+    }
+
+    public Long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public String getStatusUrl() {
+        return statusUrl;
+    }
+
+    public String getResultUrl() {
+        return resultUrl;
+    }
+}
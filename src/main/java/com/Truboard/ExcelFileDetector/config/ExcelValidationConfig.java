@@ -3,7 +3,9 @@ package com.Truboard.ExcelFileDetector.config;
 import com.Truboard.ExcelFileDetector.DTO.ColumnValidationRule;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -17,6 +19,34 @@ public class ExcelValidationConfig {
     // Error highlighting configuration
     private ErrorHighlightConfig errorHighlight = new ErrorHighlightConfig();
 
+    // Upload ingestion configuration
+    private IngestConfig ingest = new IngestConfig();
+
+    // Parallel validation pool configuration
+    private ValidationPoolConfig validationPool = new ValidationPoolConfig();
+
+    // Stored file (memory / disk) configuration
+    private StorageConfig storage = new StorageConfig();
+
+    // Asynchronous upload job configuration
+    private AsyncConfig async = new AsyncConfig();
+
+    // Memory admission control for workbook processing
+    private AdmissionConfig admission = new AdmissionConfig();
+    private ResponseConfig response = new ResponseConfig();
+
+    // Caps on the errors collected per upload
+    private ErrorLimitsConfig errorLimits = new ErrorLimitsConfig();
+
+    // .csv upload format
+    private CsvConfig csv = new CsvConfig();
+
+    // Cache of resolved column headers, shared across uploads
+    private HeaderCacheConfig headerCache = new HeaderCacheConfig();
+
+    // Formula cells of workbooks loaded in memory
+    private FormulaConfig formula = new FormulaConfig();
+
     public Map<String, ColumnValidationRule> getValidations() {
         return validations;
     }
@@ -41,7 +71,111 @@ public class ExcelValidationConfig {
         this.errorHighlight = errorHighlight;
     }
 
+    public IngestConfig getIngest() {
+        return ingest;
+    }
+
+    public void setIngest(IngestConfig ingest) {
+        this.ingest = ingest;
+    }
+
+    public ValidationPoolConfig getValidationPool() {
+        return validationPool;
+    }
+
+    public void setValidationPool(ValidationPoolConfig validationPool) {
+        this.validationPool = validationPool;
+    }
+
+    public StorageConfig getStorage() {
+        return storage;
+    }
+
+    public void setStorage(StorageConfig storage) {
+        this.storage = storage;
+    }
+
+    public AsyncConfig getAsync() {
+        return async;
+    }
+
+    public void setAsync(AsyncConfig async) {
+        this.async = async;
+    }
+
+    public AdmissionConfig getAdmission() {
+        return admission;
+    }
+
+    public void setAdmission(AdmissionConfig admission) {
+        this.admission = admission;
+    }
+
+    public ResponseConfig getResponse() {
+        return response;
+    }
+
+    public void setResponse(ResponseConfig response) {
+        this.response = response;
+    }
+
+    public ErrorLimitsConfig getErrorLimits() {
+        return errorLimits;
+    }
+
+    public void setErrorLimits(ErrorLimitsConfig errorLimits) {
+        this.errorLimits = errorLimits;
+    }
+
+    public CsvConfig getCsv() {
+        return csv;
+    }
+
+    public void setCsv(CsvConfig csv) {
+        this.csv = csv;
+    }
+
+    public HeaderCacheConfig getHeaderCache() {
+        return headerCache;
+    }
+
+    public void setHeaderCache(HeaderCacheConfig headerCache) {
+        this.headerCache = headerCache;
+    }
+
+    public FormulaConfig getFormula() {
+        return formula;
+    }
+
+    public void setFormula(FormulaConfig formula) {
+        this.formula = formula;
+    }
+
     public static class ErrorHighlightConfig {
+        /**
+         * STREAMING rewrites the stored package part by part straight into the response;
+         * DOM loads it as an XSSFWorkbook (legacy).
+         */
+        public enum WriterMode { STREAMING, DOM }
+
+        /**
+         * COMMENTS puts a note on every error cell; ERRORS_SHEET lists the errors on a separate
+         * sheet with links back to the cells and only fills the cells on the data sheet;
+         * AUTO uses comments up to comment-limit error cells and the errors sheet above that.
+         */
+        public enum HighlightMode { COMMENTS, ERRORS_SHEET, AUTO }
+
+        /**
+         * RANGES coalesces error cells into runs and fills them with a few conditional-formatting
+         * ranges; CELL_STYLE restyles every error cell on its own.
+         */
+        public enum FillMode { RANGES, CELL_STYLE }
+
+        private WriterMode writer = WriterMode.STREAMING;
+        private HighlightMode mode = HighlightMode.AUTO;
+        private int commentLimit = 1000;
+        private FillMode fill = FillMode.RANGES;
+        private String errorsSheetName = "Validation Errors";
         private String backgroundColor = "RED";
         private String commentAuthor = "Excel Validator";
         private String commentPrefix = "Validation Error:\n";
@@ -49,6 +183,53 @@ public class ExcelValidationConfig {
         private int commentWidth = 3; // columns
         private int commentHeight = 3; // rows
 
+        public WriterMode getWriter() {
+            return writer;
+        }
+
+        public void setWriter(WriterMode writer) {
+            this.writer = writer;
+        }
+
+        public HighlightMode getMode() {
+            return mode;
+        }
+
+        public void setMode(HighlightMode mode) {
+            this.mode = mode;
+        }
+
+        public int getCommentLimit() {
+            return commentLimit;
+        }
+
+        public void setCommentLimit(int commentLimit) {
+            this.commentLimit = commentLimit;
+        }
+
+        public FillMode getFill() {
+            return fill;
+        }
+
+        public void setFill(FillMode fill) {
+            this.fill = fill;
+        }
+
+        public String getErrorsSheetName() {
+            return errorsSheetName;
+        }
+
+        public void setErrorsSheetName(String errorsSheetName) {
+            this.errorsSheetName = errorsSheetName;
+        }
+
+        /**
+         * Whether {@code errorCells} highlighted cells should get comments rather than an errors sheet.
+         */
+        public boolean useComments(int errorCells) {
+            return mode == HighlightMode.COMMENTS || (mode == HighlightMode.AUTO && errorCells <= commentLimit);
+        }
+
         public String getBackgroundColor() {
             return backgroundColor;                                                                                          
         }
@@ -97,4 +278,261 @@ public class ExcelValidationConfig {
             this.commentHeight = commentHeight;
         }
     }
-}
\ No newline at end of file
+
+    public static class IngestConfig {
+        /**
+         * STREAMING reads the data sheet with SAX events; DOM loads the whole workbook (legacy).
+         */
+        public enum ReaderMode { STREAMING, DOM }
+
+        private ReaderMode reader = ReaderMode.STREAMING;
+
+        public ReaderMode getReader() {
+            return reader;
+        }
+
+        public void setReader(ReaderMode reader) {
+            this.reader = reader;
+        }
+    }
+
+    public static class ValidationPoolConfig {
+        private int parallelism = 0; // 0 = number of available processors
+        private int chunkRows = 4096; // rows per task within a column
+        private long minParallelCells = 50_000; // smaller inputs are validated on the request thread
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public int getChunkRows() {
+            return chunkRows;
+        }
+
+        public void setChunkRows(int chunkRows) {
+            this.chunkRows = chunkRows;
+        }
+
+        public long getMinParallelCells() {
+            return minParallelCells;
+        }
+
+        public void setMinParallelCells(long minParallelCells) {
+            this.minParallelCells = minParallelCells;
+        }
+    }
+
+    public static class StorageConfig {
+        private DataSize memoryLimit = DataSize.ofMegabytes(256); // on-heap budget before spilling to disk
+        private String spillDirectory; // empty = <java.io.tmpdir>/excel-file-storage
+        private Duration expiry = Duration.ofHours(1);
+
+        public DataSize getMemoryLimit() {
+            return memoryLimit;
+        }
+
+        public void setMemoryLimit(DataSize memoryLimit) {
+            this.memoryLimit = memoryLimit;
+        }
+
+        public String getSpillDirectory() {
+            return spillDirectory;
+        }
+
+        public void setSpillDirectory(String spillDirectory) {
+            this.spillDirectory = spillDirectory;
+        }
+
+        public Duration getExpiry() {
+            return expiry;
+        }
+
+        public void setExpiry(Duration expiry) {
+            this.expiry = expiry;
+        }
+    }
+
+    public static class AsyncConfig {
+        private int workers = 2; // threads processing upload jobs
+        private int queueCapacity = 8; // jobs waiting for a worker before uploads get 429
+        private Duration resultRetention = Duration.ofHours(1); // finished jobs are kept this long
+        private int maxRetainedResults = 100; // finished jobs kept at most, the oldest are dropped first
+        private Duration retryAfter = Duration.ofSeconds(5); // Retry-After until job durations are known
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public Duration getResultRetention() {
+            return resultRetention;
+        }
+
+        public void setResultRetention(Duration resultRetention) {
+            this.resultRetention = resultRetention;
+        }
+
+        public int getMaxRetainedResults() {
+            return maxRetainedResults;
+        }
+
+        public void setMaxRetainedResults(int maxRetainedResults) {
+            this.maxRetainedResults = maxRetainedResults;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+
+        public void setRetryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    public static class AdmissionConfig {
+        private DataSize memoryBudget = DataSize.ofBytes(0); // 0 = half of the max heap
+        private Duration maxWait = Duration.ofSeconds(30); // how long an upload may queue for budget
+        private long bytesPerCell = 40; // heap per cell held by the streaming reader (typed storage)
+        private int domExpansionFactor = 10; // heap per byte of sheet XML when the workbook DOM is loaded
+
+        public DataSize getMemoryBudget() {
+            return memoryBudget;
+        }
+
+        public void setMemoryBudget(DataSize memoryBudget) {
+            this.memoryBudget = memoryBudget;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        public long getBytesPerCell() {
+            return bytesPerCell;
+        }
+
+        public void setBytesPerCell(long bytesPerCell) {
+            this.bytesPerCell = bytesPerCell;
+        }
+
+        public int getDomExpansionFactor() {
+            return domExpansionFactor;
+        }
+
+        public void setDomExpansionFactor(int domExpansionFactor) {
+            this.domExpansionFactor = domExpansionFactor;
+        }
+    }
+
+    public static class ResponseConfig {
+        private boolean includeSheetData = true; // default for uploads without ?includeSheetData=
+        private int maxPageRows = 10_000; // largest limit accepted by /files/{fileId}/rows
+
+        public boolean isIncludeSheetData() {
+            return includeSheetData;
+        }
+
+        public void setIncludeSheetData(boolean includeSheetData) {
+            this.includeSheetData = includeSheetData;
+        }
+
+        public int getMaxPageRows() {
+            return maxPageRows;
+        }
+
+        public void setMaxPageRows(int maxPageRows) {
+            this.maxPageRows = maxPageRows;
+        }
+    }
+
+    public static class ErrorLimitsConfig {
+        private int maxErrors = 0; // errors reported per file, 0 = no limit
+        private int maxErrorsPerColumn = 0; // errors reported per column, 0 = no limit
+        private boolean failFast = false; // stop validating once a limit is reached instead of counting on
+
+        public int getMaxErrors() {
+            return maxErrors;
+        }
+
+        public void setMaxErrors(int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+
+        public int getMaxErrorsPerColumn() {
+            return maxErrorsPerColumn;
+        }
+
+        public void setMaxErrorsPerColumn(int maxErrorsPerColumn) {
+            this.maxErrorsPerColumn = maxErrorsPerColumn;
+        }
+
+        public boolean isFailFast() {
+            return failFast;
+        }
+
+        public void setFailFast(boolean failFast) {
+            this.failFast = failFast;
+        }
+    }
+
+    public static class CsvConfig {
+        private char delimiter = ','; // field separator of .csv uploads
+
+        public char getDelimiter() {
+            return delimiter;
+        }
+
+        public void setDelimiter(char delimiter) {
+            this.delimiter = delimiter;
+        }
+    }
+
+    public static class HeaderCacheConfig {
+        private int maxEntries = 1000; // distinct raw headers remembered; least recently used are dropped
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    public static class FormulaConfig {
+        /**
+         * CACHED shows the result saved in the file and never evaluates; MISSING evaluates only
+         * formulas saved without a result; ALWAYS evaluates every formula cell.
+         */
+        public enum EvaluationMode { CACHED, MISSING, ALWAYS }
+
+        private EvaluationMode evaluation = EvaluationMode.MISSING;
+
+        public EvaluationMode getEvaluation() {
+            return evaluation;
+        }
+
+        public void setEvaluation(EvaluationMode evaluation) {
+            this.evaluation = evaluation;
+        }
+    }
+}
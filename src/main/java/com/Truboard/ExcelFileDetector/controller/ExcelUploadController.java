@@ -1,15 +1,31 @@
 package com.Truboard.ExcelFileDetector.controller;
 
+import com.Truboard.ExcelFileDetector.DTO.AdmissionRejectedException;
 import com.Truboard.ExcelFileDetector.DTO.ExcelInfoResponse;
 import com.Truboard.ExcelFileDetector.DTO.ErrorHighlightResponse;
+import com.Truboard.ExcelFileDetector.DTO.JobQueueFullException;
+import com.Truboard.ExcelFileDetector.DTO.UploadJobResponse;
 import com.Truboard.ExcelFileDetector.service.ExcelService;
 import com.Truboard.ExcelFileDetector.service.FileStorageService;
+import com.Truboard.ExcelFileDetector.service.NdjsonUpload;
+import com.Truboard.ExcelFileDetector.service.UploadJobService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 @RestController
 @CrossOrigin(origins = {"http://localhost:5173", 
@@ -24,24 +40,34 @@ public class ExcelUploadController {
     @Autowired
     private final FileStorageService fileStorageService;
 
-    public ExcelUploadController(ExcelService excelService, FileStorageService fileStorageService) {
+    @Autowired
+    private final UploadJobService uploadJobService;
+
+    public ExcelUploadController(ExcelService excelService, FileStorageService fileStorageService,
+                                 UploadJobService uploadJobService) {
         this.excelService = excelService;
         this.fileStorageService = fileStorageService;
+        this.uploadJobService = uploadJobService;
     }
 
     /**
-     * Accepts either .xlsx or .json file.
+     * Accepts an .xlsx, .json, .csv or .ndjson file.
      * - .xlsx -> validated and auto-filled (with yellow highlighting for auto-filled cells)
      * - .json -> validated using same rules (JSON can be array of objects or object-of-arrays)
+     * - .csv / .ndjson -> validated using same rules, streamed record by record
      *
      * Auto-fill functionality now happens during upload:
      * - Empty critical cells are filled with default values
      * - Auto-filled cells are highlighted in yellow with comments
      * - Modified file is stored in the system
      * - Response includes auto-fill information
+     *
+     * includeSheetData=false leaves sheetData out of the response (default: excel.response.include-sheet-data);
+     * the values can then be read page by page from /files/{fileId}/rows.
      */
     @PostMapping("/upload")
-    public ResponseEntity<?> uploadExcelOrJson(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> uploadExcelOrJson(@RequestParam("file") MultipartFile file,
+                                               @RequestParam(value = "includeSheetData", required = false) Boolean includeSheetData) {
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().body("File is empty");
         }
@@ -55,25 +81,151 @@ public class ExcelUploadController {
 
         try {
             ExcelInfoResponse response;
+            boolean withSheetData = excelService.resolveIncludeSheetData(includeSheetData);
 
             if (lower.endsWith(".xlsx")) {
                 // For Excel files: perform auto-fill during upload
-                response = excelService.extractAndProcessExcelInfo(file);
+                response = excelService.extractAndProcessExcelInfo(file, withSheetData);
             } else if (lower.endsWith(".json")) {
                 // JSON files: validation only (no auto-fill needed)
-                response = excelService.extractJsonInfo(file);
+                response = excelService.extractJsonInfo(file, withSheetData);
+            } else if (ExcelService.isCsvOrNdjson(lower)) {
+                // CSV / NDJSON files: validation only, like JSON
+                response = excelService.extractCsvOrNdjsonInfo(file, withSheetData);
             } else {
-                return ResponseEntity.badRequest().body("Only .xlsx and .json files are supported");
+                return ResponseEntity.badRequest().body("Only .xlsx, .json, .csv and .ndjson files are supported");
             }
 
             return ResponseEntity.ok(response);
 
+        } catch (AdmissionRejectedException e) {
+            return admissionRejected(e);
         } catch (Exception e) {
             // Return 500 with message; validation errors are returned in response.errors (200)
             return ResponseEntity.status(500).body("Error processing file: " + e.getMessage());
         }
     }
 
+    /**
+     * Same as /upload for clients that send Accept: application/x-ndjson. The response is streamed
+     * one JSON object per line: a {"type":"error",...} line per validation error as soon as it is
+     * found, then a {"type":"summary",...} line with the fileId and error count (or a
+     * {"type":"failure",...} line if processing fails after the response has started).
+     * The upload is admitted before the response starts, so a refused admission still gets
+     * 503 + Retry-After or 413 like /upload.
+     * sheetData is never part of this response; use /files/{fileId}/rows.
+     */
+    @PostMapping(value = "/upload", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> uploadExcelOrJsonNdjson(@RequestParam("file") MultipartFile file,
+                                                                         HttpServletRequest request) {
+        if (file.isEmpty()) {
+            return textResponse(400, "File is empty");
+        }
+
+        String filename = file.getOriginalFilename();
+        if (filename == null) {
+            return textResponse(400, "File must have a name/extension");
+        }
+
+        String lower = filename.toLowerCase();
+        if (!lower.endsWith(".xlsx") && !lower.endsWith(".json") && !ExcelService.isCsvOrNdjson(lower)) {
+            return textResponse(400, "Only .xlsx, .json, .csv and .ndjson files are supported");
+        }
+
+        try {
+            NdjsonUpload upload = excelService.prepareNdjsonValidation(file);
+
+            // The body owns the upload once it runs; when the request ends without it having run
+            // (timeout, error, client gone) the spooled file and reservation are released here
+            WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(upload, new CallableProcessingInterceptor() {
+                @Override
+                public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) throws Exception {
+                    upload.close();
+                }
+            });
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(upload::writeTo);
+
+        } catch (AdmissionRejectedException e) {
+            return textResponse(admissionRejected(e));
+        } catch (Exception e) {
+            return textResponse(500, "Error processing file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Same as /upload, but processed in the background: returns 202 with a job id straight away.
+     * Poll /jobs/{jobId} for the status and fetch /jobs/{jobId}/result once it is COMPLETED.
+     * The result never includes sheetData; read the rows through /files/{fileId}/rows.
+     * Returns 429 with Retry-After when all workers are busy and the job queue is full.
+     */
+    @PostMapping("/upload/async")
+    public ResponseEntity<?> uploadExcelOrJsonAsync(@RequestParam("file") MultipartFile file) {
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().body("File is empty");
+        }
+
+        String filename = file.getOriginalFilename();
+        if (filename == null) {
+            return ResponseEntity.badRequest().body("File must have a name/extension");
+        }
+
+        String lower = filename.toLowerCase();
+        if (!lower.endsWith(".xlsx") && !lower.endsWith(".json") && !ExcelService.isCsvOrNdjson(lower)) {
+            return ResponseEntity.badRequest().body("Only .xlsx, .json, .csv and .ndjson files are supported");
+        }
+
+        try {
+            UploadJobResponse job = uploadJobService.submit(file);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.LOCATION, job.getStatusUrl())
+                    .body(job);
+        } catch (JobQueueFullException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                    .body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error processing file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Status of an upload job
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getUploadJob(@PathVariable String jobId) {
+        UploadJobResponse job = uploadJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * Result of an upload job: the same body /upload returns once the job is COMPLETED,
+     * 202 with the job status while it is still queued or running.
+     */
+    @GetMapping("/jobs/{jobId}/result")
+    public ResponseEntity<?> getUploadJobResult(@PathVariable String jobId) {
+        UploadJobResponse job = uploadJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        switch (UploadJobService.Status.valueOf(job.getStatus())) {
+            case COMPLETED:
+                return ResponseEntity.ok(uploadJobService.getResult(jobId));
+            case FAILED:
+                return ResponseEntity.status(500).body("Error processing file: " + job.getError());
+            default:
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body(job);
+        }
+    }
+
     /**
      * Generate and download Excel file with validation errors highlighted
      *
@@ -81,7 +233,7 @@ public class ExcelUploadController {
      * Auto-fill functionality has been moved to upload phase.
      */
     @GetMapping("/download-highlighted/{fileId}")
-    public ResponseEntity<?> downloadHighlightedExcel(@PathVariable String fileId) {
+    public ResponseEntity<StreamingResponseBody> downloadHighlightedExcel(@PathVariable String fileId) {
         try {
             if (!fileStorageService.fileExists(fileId)) {
                 return ResponseEntity.notFound().build();
@@ -89,12 +241,22 @@ public class ExcelUploadController {
 
             String originalFileName = fileStorageService.getFileName(fileId);
             if (originalFileName == null || !originalFileName.toLowerCase().endsWith(".xlsx")) {
-                return ResponseEntity.badRequest()
-                        .body("Error highlighting is only supported for Excel (.xlsx) files");
+                return textResponse(400, "Error highlighting is only supported for Excel (.xlsx) files");
             }
 
-            // Generate highlighted Excel with only error highlighting (no auto-fill)
-            byte[] highlightedFileContent = excelService.generateErrorHighlightedExcel(fileId);
+            // Generate highlighted Excel with only error highlighting (no auto-fill). The stored
+            // package and errors are read first, so those failures still get an error status;
+            // only the writing is streamed straight into the response body
+            ExcelService.HighlightedExcel highlighted = excelService.prepareErrorHighlightedExcel(fileId);
+            StreamingResponseBody body = out -> {
+                try {
+                    highlighted.writeTo(out);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("Error generating highlighted file: " + e.getMessage(), e);
+                }
+            };
 
             // Generate highlighted filename
             String highlightedFileName = generateHighlightedFileName(originalFileName);
@@ -102,18 +264,37 @@ public class ExcelUploadController {
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
             headers.setContentDispositionFormData("attachment", highlightedFileName);
-            headers.setContentLength(highlightedFileContent.length);
 
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(highlightedFileContent);
+                    .body(body);
 
         } catch (Exception e) {
-            return ResponseEntity.status(500)
-                    .body("Error generating highlighted file: " + e.getMessage());
+            return textResponse(500, "Error generating highlighted file: " + e.getMessage());
         }
     }
 
+    /**
+     * Plain-text error for endpoints that stream their body. Spring only streams a
+     * ResponseEntity<StreamingResponseBody>, so the error has to be a StreamingResponseBody too.
+     */
+    private static ResponseEntity<StreamingResponseBody> textResponse(int status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Plain-text variant of an error response built for a regular endpoint, headers included.
+     */
+    private static ResponseEntity<StreamingResponseBody> textResponse(ResponseEntity<?> error) {
+        String message = String.valueOf(error.getBody());
+        return ResponseEntity.status(error.getStatusCode())
+                .headers(error.getHeaders())
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
     /**
      * Get information about highlighted file availability
      */
@@ -152,6 +333,36 @@ public class ExcelUploadController {
         }
     }
 
+    /**
+     * A page of a stored upload's data: {@code limit} rows from {@code offset} (0 = first data row),
+     * only the requested {@code columns} (comma-separated header names; all columns when omitted).
+     * Same values as the upload's sheetData, read from the stored file.
+     */
+    @GetMapping("/files/{fileId}/rows")
+    public ResponseEntity<?> getStoredFileRows(@PathVariable String fileId,
+                                               @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                               @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                               @RequestParam(value = "columns", required = false) List<String> columns) {
+        int maxPageRows = excelService.getMaxPageRows();
+        if (offset < 0 || limit < 1 || limit > maxPageRows) {
+            return ResponseEntity.badRequest()
+                    .body("offset must be >= 0 and limit between 1 and " + maxPageRows);
+        }
+
+        try {
+            if (!fileStorageService.fileExists(fileId)) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(excelService.readRows(fileId, offset, limit, columns));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(500)
+                    .body("Error reading file rows: " + e.getMessage());
+        }
+    }
+
     /**
      * Delete stored file
      */
@@ -187,6 +398,18 @@ public class ExcelUploadController {
         }
     }
 
+    /**
+     * 503 + Retry-After when the memory budget stayed taken, 413 when the workbook can never fit
+     */
+    private ResponseEntity<?> admissionRejected(AdmissionRejectedException e) {
+        if (e.isRetryable()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                    .body(e.getMessage());
+        }
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+    }
+
     /**
      * Generate filename for highlighted Excel file
      */
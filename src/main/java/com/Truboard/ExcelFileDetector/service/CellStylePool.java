@@ -0,0 +1,53 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fill-coloured variants of a workbook's cell styles, created once per
+ * (original style index, fill colour) pair and shared by every cell that needs them.
+ *
+ * Keeps styles.xml (and Excel's 64k style limit) proportional to the number of distinct
+ * styles being highlighted rather than the number of highlighted cells.
+ */
+class CellStylePool {
+
+    private final Workbook workbook;
+    private final Map<Long, CellStyle> variants = new HashMap<>();
+    // Index of every style this pool created -> its fill colour
+    private final Map<Integer, Short> fillByPooledIndex = new HashMap<>();
+
+    CellStylePool(Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    /**
+     * {@code original} (or the default style when null) with a solid {@code color} fill.
+     */
+    CellStyle withSolidFill(CellStyle original, short color) {
+        int originalIndex = (original == null) ? -1 : original.getIndex() & 0xFFFF;
+
+        // Highlighting an already highlighted cell again keeps its style
+        if (original != null && Short.valueOf(color).equals(fillByPooledIndex.get(originalIndex))) {
+            return original;
+        }
+
+        long key = ((long) originalIndex << 16) | (color & 0xFFFF);
+        CellStyle variant = variants.get(key);
+        if (variant == null) {
+            variant = workbook.createCellStyle();
+            if (original != null) {
+                variant.cloneStyleFrom(original);
+            }
+            variant.setFillForegroundColor(color);
+            variant.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            variants.put(key, variant);
+            fillByPooledIndex.put(variant.getIndex() & 0xFFFF, color);
+        }
+        return variant;
+    }
+}
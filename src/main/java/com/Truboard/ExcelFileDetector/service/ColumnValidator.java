@@ -0,0 +1,405 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ColumnValidationRule;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable, thread-safe validator compiled from one {@link ColumnValidationRule}.
+ *
+ * Everything that used to be worked out per cell (rule type, regex, date format) is resolved
+ * once here, so validating a value is only the type-specific check.
+ *
+ * Supported rule types:
+ * - number   : numeric (accepts commas), floats like 0.02, 0.2833294
+ * - percent  : requires trailing % e.g. 12.00% (validator expects % in the string)
+ * - currency : numeric with commas allowed e.g. 86,000,000.00
+ * - date     : validated with rule.format (SimpleDateFormat pattern syntax)
+ * - text     : validated with regex if provided
+ */
+public abstract class ColumnValidator {
+
+    private final boolean required;
+
+    // Distinct values whose result one upload remembers per text column (see forUpload)
+    static final int UPLOAD_CACHE_LIMIT = 4096;
+
+    ColumnValidator(ColumnValidationRule rule) {
+        this(rule.isRequired());
+    }
+
+    private ColumnValidator(boolean required) {
+        this.required = required;
+    }
+
+    /**
+     * Compile a rule. The type is matched case-insensitively; unknown types only get the required check.
+     */
+    public static ColumnValidator compile(ColumnValidationRule rule) {
+        String type = (rule.getType() == null) ? "" : rule.getType().toLowerCase(Locale.ROOT);
+        switch (type) {
+            case "number":
+                return new NumberValidator(rule);
+            case "percent":
+                return new PercentValidator(rule);
+            case "currency":
+                return new CurrencyValidator(rule);
+            case "date":
+                return new DateValidator(rule);
+            case "text":
+                return new TextValidator(rule);
+            default:
+                return new ColumnValidator(rule) {
+                    @Override
+                    void validateValue(String value, List<String> errors) {
+                    }
+                };
+        }
+    }
+
+    /**
+     * Validate a single cell value, appending one message per failed check.
+     */
+    public void validate(String value, List<String> errors) {
+        // Required check
+        if (required && (value == null || value.trim().isEmpty())) {
+            errors.add("is required");
+            return;
+        }
+
+        // Skip further checks if empty and not required
+        if (value == null || value.trim().isEmpty()) return;
+
+        validateValue(value, errors);
+    }
+
+    abstract void validateValue(String value, List<String> errors);
+
+    /**
+     * Validator to use for one upload. Text rules get a fresh instance that remembers the result
+     * of each distinct value (up to UPLOAD_CACHE_LIMIT per column), so a value repeated across
+     * the rows is matched against the regex once; the other rules are returned as they are.
+     */
+    ColumnValidator forUpload() {
+        return this;
+    }
+
+    /**
+     * Column store for the values of this rule's column (see TypedColumn); dictionary text by default.
+     */
+    TypedColumn newColumn() {
+        return new TypedColumn.Texts(this);
+    }
+
+    /**
+     * Remove thousands separators without going through the regex engine.
+     */
+    static String stripCommas(String s) {
+        return (s.indexOf(',') < 0) ? s : s.replace(",", "");
+    }
+
+    /**
+     * number / percent / currency rules: their columns store numbers (TypedColumn.Numbers).
+     */
+    abstract static class NumericValidator extends ColumnValidator {
+
+        NumericValidator(ColumnValidationRule rule) {
+            super(rule);
+        }
+
+        @Override
+        TypedColumn newColumn() {
+            return new TypedColumn.Numbers(this);
+        }
+
+        /**
+         * Validate a non-empty cell that the column store already read as a number
+         * ({@code percent}: it was written with a % sign), with the messages of validateValue.
+         */
+        abstract void validateNumber(double num, boolean percent, List<String> errors);
+    }
+
+    private static class NumberValidator extends NumericValidator {
+        private final Double min;
+        private final Double max;
+
+        NumberValidator(ColumnValidationRule rule) {
+            super(rule);
+            this.min = rule.getMin();
+            this.max = rule.getMax();
+        }
+
+        @Override
+        void validateValue(String value, List<String> errors) {
+            String normalized = stripCommas(value.trim());
+            if (normalized.endsWith("%")) {
+                errors.add("must be a numeric value (no % sign)");
+                return;
+            }
+            try {
+                checkRange(Double.parseDouble(normalized), errors);
+            } catch (NumberFormatException e) {
+                errors.add("must be a number");
+            }
+        }
+
+        @Override
+        void validateNumber(double num, boolean percent, List<String> errors) {
+            if (percent) {
+                errors.add("must be a numeric value (no % sign)");
+                return;
+            }
+            checkRange(num, errors);
+        }
+
+        private void checkRange(double num, List<String> errors) {
+            if (min != null && num < min) {
+                errors.add("must be >= " + min);
+            }
+            if (max != null && num > max) {
+                errors.add("must be <= " + max);
+            }
+        }
+    }
+
+    private static class PercentValidator extends NumericValidator {
+        private final Double min;
+        private final Double max;
+
+        PercentValidator(ColumnValidationRule rule) {
+            super(rule);
+            this.min = rule.getMin();
+            this.max = rule.getMax();
+        }
+
+        @Override
+        void validateValue(String value, List<String> errors) {
+            String v = value.trim();
+            if (!v.endsWith("%")) {
+                errors.add("must be a percentage string ending with % (e.g. 12.00%)");
+                return;
+            }
+            String numericPart = stripCommas(v.substring(0, v.length() - 1).trim());
+            try {
+                checkRange(Double.parseDouble(numericPart), errors);
+            } catch (NumberFormatException e) {
+                errors.add("must be a percentage number like 12.00%");
+            }
+        }
+
+        @Override
+        void validateNumber(double num, boolean percent, List<String> errors) {
+            if (!percent) {
+                errors.add("must be a percentage string ending with % (e.g. 12.00%)");
+                return;
+            }
+            checkRange(num, errors);
+        }
+
+        private void checkRange(double num, List<String> errors) {
+            if (min != null && num < min) {
+                errors.add("must be >= " + min + "%");
+            }
+            if (max != null && num > max) {
+                errors.add("must be <= " + max + "%");
+            }
+        }
+    }
+
+    private static class CurrencyValidator extends NumericValidator {
+        private final Double min;
+        private final Double max;
+
+        CurrencyValidator(ColumnValidationRule rule) {
+            super(rule);
+            this.min = rule.getMin();
+            this.max = rule.getMax();
+        }
+
+        @Override
+        void validateValue(String value, List<String> errors) {
+            String normalized = stripCommas(value.trim());
+            try {
+                checkRange(Double.parseDouble(normalized), errors);
+            } catch (NumberFormatException e) {
+                errors.add("must be a currency numeric value (e.g. 86,000,000.00)");
+            }
+        }
+
+        @Override
+        void validateNumber(double num, boolean percent, List<String> errors) {
+            if (percent) {
+                // "12.00%" is not a number to Double.parseDouble
+                errors.add("must be a currency numeric value (e.g. 86,000,000.00)");
+                return;
+            }
+            checkRange(num, errors);
+        }
+
+        private void checkRange(double num, List<String> errors) {
+            if (min != null && num < min) {
+                errors.add("must be >= " + min);
+            }
+            if (max != null && num > max) {
+                errors.add("must be <= " + max);
+            }
+        }
+    }
+
+    private static class DateValidator extends ColumnValidator {
+        private final String format;
+        private final DateTimeFormatter formatter; // null when the format is missing or invalid
+
+        DateValidator(ColumnValidationRule rule) {
+            super(rule);
+            this.format = rule.getFormat();
+            this.formatter = buildFormatter(format);
+        }
+
+        @Override
+        void validateValue(String value, List<String> errors) {
+            if (format == null || format.trim().isEmpty()) {
+                errors.add("date format not specified in configuration");
+                return;
+            }
+
+            try {
+                if (formatter == null) throw new IllegalArgumentException("Invalid date format " + format);
+                formatter.parse(value.trim(), new ParsePosition(0));
+            } catch (Exception e) {
+                errors.add("must match date format " + format + " (current value: '" + value + "')");
+            }
+        }
+
+        /**
+         * Epoch days only hold a date: formats with time fields (e.g. dd/MM/yyyy HH:mm) keep their text.
+         */
+        @Override
+        TypedColumn newColumn() {
+            return (formatter != null && formatsDates(formatter)) ? new TypedColumn.Dates(this, formatter) : super.newColumn();
+        }
+
+        private static boolean formatsDates(DateTimeFormatter formatter) {
+            try {
+                formatter.format(LocalDate.of(2000, 1, 1));
+                return true;
+            } catch (DateTimeException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Build a formatter that accepts what a non-lenient SimpleDateFormat accepts:
+         * case-insensitive month names in any text style, flexible digit counts (so "yy"
+         * also takes a 4-digit year), trailing text ignored, but impossible dates rejected.
+         */
+        private static DateTimeFormatter buildFormatter(String format) {
+            if (format == null || format.trim().isEmpty()) return null;
+            try {
+                return new DateTimeFormatterBuilder()
+                        .parseCaseInsensitive()
+                        .parseLenient()
+                        .appendPattern(toProlepticYear(format))
+                        .toFormatter(Locale.getDefault())
+                        .withResolverStyle(ResolverStyle.STRICT);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        /**
+         * 'y' (year-of-era) cannot be resolved strictly without an era; 'u' is the same for AD years.
+         */
+        private static String toProlepticYear(String pattern) {
+            StringBuilder sb = new StringBuilder(pattern.length());
+            boolean quoted = false;
+            for (int i = 0; i < pattern.length(); i++) {
+                char ch = pattern.charAt(i);
+                if (ch == '\'') quoted = !quoted;
+                sb.append(!quoted && ch == 'y' ? 'u' : ch);
+            }
+            return sb.toString();
+        }
+    }
+
+    private static class TextValidator extends ColumnValidator {
+        private final Pattern pattern;
+        private final PatternSyntaxException patternError;
+
+        TextValidator(ColumnValidationRule rule) {
+            super(rule);
+            Pattern compiled = null;
+            PatternSyntaxException error = null;
+            if (rule.getRegex() != null && !rule.getRegex().isEmpty()) {
+                try {
+                    compiled = Pattern.compile(rule.getRegex());
+                } catch (PatternSyntaxException e) {
+                    error = e;
+                }
+            }
+            this.pattern = compiled;
+            this.patternError = error;
+        }
+
+        @Override
+        void validateValue(String value, List<String> errors) {
+            // A broken regex fails the upload the same way String.matches would
+            if (patternError != null) throw patternError;
+            if (pattern != null && !pattern.matcher(value).matches()) {
+                errors.add("format is invalid");
+            }
+        }
+
+        @Override
+        ColumnValidator forUpload() {
+            return new CachingValidator(this);
+        }
+    }
+
+    /**
+     * Per-upload memo of a validator's messages per cell value; safe for the parallel chunk
+     * validation of one column. Failures such as a broken regex are not cached.
+     */
+    private static final class CachingValidator extends ColumnValidator {
+        private final ColumnValidator delegate;
+        private final Map<String, List<String>> results = new ConcurrentHashMap<>();
+
+        CachingValidator(ColumnValidator delegate) {
+            super(delegate.required);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void validate(String value, List<String> errors) {
+            if (value == null) {
+                delegate.validate(null, errors);
+                return;
+            }
+            List<String> messages = results.get(value);
+            if (messages == null) {
+                List<String> found = new ArrayList<>(1);
+                delegate.validate(value, found);
+                messages = List.copyOf(found);
+                if (results.size() < UPLOAD_CACHE_LIMIT) results.putIfAbsent(value, messages);
+            }
+            errors.addAll(messages);
+        }
+
+        @Override
+        void validateValue(String value, List<String> errors) {
+            delegate.validateValue(value, errors);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader for .csv uploads (RFC 4180: quoted fields may contain the delimiter, line
+ * breaks and doubled quotes; CRLF, LF or CR line ends; UTF-8 with or without BOM).
+ *
+ * Records are pushed to a {@link StreamingSheetReader.RowHandler} exactly like sheet rows: the
+ * first record is the header, record n is row index n, values are trimmed and padded/cut to the
+ * header width. Only the current record is held in memory.
+ *
+ * An empty line is a record of blank values, read like an empty sheet row: inside the data it
+ * stays a row (so row numbers keep matching line numbers, and required columns report it),
+ * trailing ones are dropped by the ingest session.
+ */
+class CsvSheetReader {
+
+    static final String SHEET_NAME = "CSV";
+
+    private static final int BUFFER_CHARS = 64 * 1024;
+
+    private final char delimiter;
+
+    CsvSheetReader(char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    void read(InputStream in, StreamingSheetReader.RowHandler handler) throws Exception {
+        Tokenizer tokenizer = new Tokenizer(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> record = new ArrayList<>();
+
+        handler.startSheet(1, SHEET_NAME);
+        if (!tokenizer.next(record)) {
+            throw new Exception("No header row found in file");
+        }
+        String[] headers = new String[record.size()];
+        for (int i = 0; i < headers.length; i++) headers[i] = record.get(i).trim();
+        handler.header(headers);
+
+        String[] values = new String[headers.length];
+        int rowIndex = 0;
+        while (handler.wantsMoreRows() && tokenizer.next(record)) {
+            rowIndex++;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (i < record.size()) ? record.get(i).trim() : "";
+            }
+            handler.row(rowIndex, values);
+        }
+        handler.endSheet();
+    }
+
+    private final class Tokenizer {
+        private final Reader reader;
+        private final char[] buffer = new char[BUFFER_CHARS];
+        private int pos;
+        private int len;
+        private final StringBuilder field = new StringBuilder();
+        private int recordNumber;
+
+        Tokenizer(Reader reader) throws IOException {
+            this.reader = reader;
+            if (peek() == '\uFEFF') read();
+        }
+
+        /**
+         * Read the next record into {@code fields}; false at the end of the input.
+         */
+        boolean next(List<String> fields) throws IOException {
+            fields.clear();
+            int c = read();
+            if (c < 0) return false;
+            recordNumber++;
+
+            field.setLength(0);
+            boolean atFieldStart = true;
+            for (; ; c = read()) {
+                if (c < 0 || c == '\n' || c == '\r') {
+                    if (c == '\r' && peek() == '\n') read();
+                    fields.add(field.toString());
+                    return true;
+                }
+                if (c == delimiter) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    atFieldStart = true;
+                    continue;
+                }
+                if (c == '"' && atFieldStart) {
+                    readQuoted();
+                } else {
+                    // Quotes inside an unquoted field are taken literally
+                    field.append((char) c);
+                }
+                atFieldStart = false;
+            }
+        }
+
+        /**
+         * Rest of a quoted field, up to and including its closing quote; text after the
+         * closing quote (before the next delimiter) is kept as-is.
+         */
+        private void readQuoted() throws IOException {
+            while (true) {
+                int c = read();
+                if (c < 0) {
+                    throw new IOException("Unterminated quoted field in CSV record " + recordNumber);
+                }
+                if (c == '"') {
+                    if (peek() != '"') return;
+                    read();
+                }
+                field.append((char) c);
+            }
+        }
+
+        private int read() throws IOException {
+            if (pos == len && !fill()) return -1;
+            return buffer[pos++];
+        }
+
+        private int peek() throws IOException {
+            if (pos == len && !fill()) return -1;
+            return buffer[pos];
+        }
+
+        private boolean fill() throws IOException {
+            int n;
+            do {
+                n = reader.read(buffer, 0, buffer.length);
+            } while (n == 0);
+            if (n < 0) return false;
+            pos = 0;
+            len = n;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Error limits of one upload (excel.error-limits), applied while errors are merged in report
+ * order: the first max-errors errors of the file, and the first max-errors-per-column of each
+ * column, are kept; the rest are only counted as truncated.
+ *
+ * Validation itself never builds more than {@link #sliceLimit()} errors per column range, so a
+ * file where every cell fails costs counting, not message building. With fail-fast a range stops
+ * at that limit and the caller stops reading once {@link #isFileLimitReached(long)}.
+ * Not thread-safe: used by the thread that merges the results.
+ */
+final class ErrorBudget {
+
+    private final int maxErrors;
+    private final int maxErrorsPerColumn;
+    private final boolean failFast;
+
+    private int kept;
+    private final Map<String, Integer> keptPerColumn = new HashMap<>();
+    private long truncated;
+    private boolean stopped;
+
+    private ErrorBudget(int maxErrors, int maxErrorsPerColumn, boolean failFast) {
+        this.maxErrors = (maxErrors > 0) ? maxErrors : Integer.MAX_VALUE;
+        this.maxErrorsPerColumn = (maxErrorsPerColumn > 0) ? maxErrorsPerColumn : Integer.MAX_VALUE;
+        this.failFast = failFast;
+    }
+
+    static ErrorBudget of(ExcelValidationConfig.ErrorLimitsConfig limits) {
+        return new ErrorBudget(limits.getMaxErrors(), limits.getMaxErrorsPerColumn(), limits.isFailFast());
+    }
+
+    /**
+     * No limits: every error is kept (used when the highlighted download re-validates a file).
+     */
+    static ErrorBudget unlimited() {
+        return new ErrorBudget(0, 0, false);
+    }
+
+    /**
+     * Most errors a single column can contribute, i.e. how many a validation range has to build.
+     */
+    int sliceLimit() {
+        return Math.min(maxErrors, maxErrorsPerColumn);
+    }
+
+    boolean hasFileLimit() {
+        return maxErrors != Integer.MAX_VALUE;
+    }
+
+    int getMaxErrorsPerColumn() {
+        return maxErrorsPerColumn;
+    }
+
+    boolean isFailFast() {
+        return failFast;
+    }
+
+    /**
+     * True when {@code found} errors are enough to fill the file limit, so fail-fast can stop.
+     */
+    boolean isFileLimitReached(long found) {
+        return failFast && found >= maxErrors;
+    }
+
+    /**
+     * Keep the error if neither its column's nor the file's limit is used up; count it otherwise.
+     */
+    boolean admit(ValidationError error) {
+        int keptInColumn = keptPerColumn.getOrDefault(error.getColumnName(), 0);
+        if (kept >= maxErrors || keptInColumn >= maxErrorsPerColumn) {
+            truncated++;
+            return false;
+        }
+        kept++;
+        keptPerColumn.put(error.getColumnName(), keptInColumn + 1);
+        return true;
+    }
+
+    /**
+     * Count errors that validation found past its limit without building them.
+     */
+    void truncate(long count) {
+        truncated += count;
+    }
+
+    /**
+     * Merge one column result into the report lists, keeping what the limits allow.
+     */
+    void addAll(ValidationExecutor.ColumnResult result, List<String> errors, List<ValidationError> detailedErrors) {
+        List<ValidationError> resultErrors = result.getDetailedErrors();
+        for (int i = 0; i < resultErrors.size(); i++) {
+            if (admit(resultErrors.get(i))) {
+                errors.add(result.getErrors().get(i));
+                detailedErrors.add(resultErrors.get(i));
+            }
+        }
+        truncate(result.getTruncatedCount());
+    }
+
+    /**
+     * Record that validation was stopped before the end of the data (fail-fast).
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    long getTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Errors kept so far, per column name.
+     */
+    Map<String, Integer> getKeptPerColumn() {
+        return keptPerColumn;
+    }
+}
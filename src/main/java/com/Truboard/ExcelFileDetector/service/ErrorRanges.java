@@ -0,0 +1,73 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Coalesces error cells into rectangular blocks so a highlight costs one range per run of
+ * errors instead of one edit per cell.
+ *
+ * Consecutive error rows in a column become one vertical run; runs covering the same rows in
+ * adjacent columns are then merged side by side. A whole column in the wrong format ends up as
+ * a single range.
+ */
+final class ErrorRanges {
+
+    private ErrorRanges() {
+    }
+
+    /**
+     * Blocks covering exactly the error cells, ordered by first row, then first column.
+     */
+    static List<CellRangeAddress> coalesce(List<ValidationError> errors) {
+        Map<Integer, TreeSet<Integer>> rowsByColumn = new TreeMap<>();
+        if (errors != null) {
+            for (ValidationError error : errors) {
+                if (!StreamingHighlightWriter.hasCell(error)) continue;
+                rowsByColumn.computeIfAbsent(error.getColumnIndex(), c -> new TreeSet<>()).add(error.getRowNumber() - 1);
+            }
+        }
+
+        // Vertical runs per column
+        List<CellRangeAddress> runs = new ArrayList<>();
+        for (Map.Entry<Integer, TreeSet<Integer>> column : rowsByColumn.entrySet()) {
+            int col = column.getKey();
+            int first = -1;
+            int last = -1;
+            for (int row : column.getValue()) {
+                if (first >= 0 && row == last + 1) {
+                    last = row;
+                    continue;
+                }
+                if (first >= 0) runs.add(new CellRangeAddress(first, last, col, col));
+                first = row;
+                last = row;
+            }
+            if (first >= 0) runs.add(new CellRangeAddress(first, last, col, col));
+        }
+
+        // Runs over the same rows in neighbouring columns become one block
+        runs.sort(Comparator.comparingInt(CellRangeAddress::getFirstRow)
+                .thenComparingInt(CellRangeAddress::getLastRow)
+                .thenComparingInt(CellRangeAddress::getFirstColumn));
+        List<CellRangeAddress> blocks = new ArrayList<>();
+        CellRangeAddress current = null;
+        for (CellRangeAddress run : runs) {
+            if (current != null && current.getFirstRow() == run.getFirstRow() && current.getLastRow() == run.getLastRow()
+                    && current.getLastColumn() + 1 == run.getFirstColumn()) {
+                current.setLastColumn(run.getFirstColumn());
+                continue;
+            }
+            current = run;
+            blocks.add(current);
+        }
+        return blocks;
+    }
+}
@@ -2,20 +2,30 @@ package com.Truboard.ExcelFileDetector.service;
 
 import com.Truboard.ExcelFileDetector.DTO.ColumnValidationRule;
 import com.Truboard.ExcelFileDetector.DTO.ExcelInfoResponse;
+import com.Truboard.ExcelFileDetector.DTO.SheetRowsResponse;
 import com.Truboard.ExcelFileDetector.DTO.ValidationError;
 import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.poi.common.usermodel.HyperlinkType;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.text.SimpleDateFormat;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
@@ -39,45 +49,472 @@ public class ExcelService {
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final FileStorageService fileStorageService;
 
-    // Normalized map for rule lookup: normalizedHeader -> ColumnValidationRule
-    private final Map<String, ColumnValidationRule> normalizedRules = new HashMap<>();
+    // Column header -> rule, cached across uploads
+    private final HeaderResolver headerResolver;
 
-    public ExcelService(ExcelValidationConfig validationConfig, FileStorageService fileStorageService) {
+    // Rules compiled once into thread-safe validators
+    private final ValidationPlan validationPlan;
+
+    private final StreamingSheetReader streamingSheetReader = new StreamingSheetReader();
+    private final CsvSheetReader csvSheetReader;
+    private final NdjsonSheetReader ndjsonSheetReader = new NdjsonSheetReader(objectMapper);
+    private final StreamingHighlightWriter streamingHighlightWriter;
+    private final ValidationExecutor validationExecutor;
+    private final MemoryAdmissionService memoryAdmissionService;
+    private final UploadMetrics uploadMetrics;
+
+    // Columns auto-filled during upload (normalized names)
+    private static final String OPENING_PRINCIPAL = "opening principal";
+    private static final Set<String> AUTO_FILL_COLUMNS = Set.of(
+            "interest rate", "penal rate", "penal charge rate", OPENING_PRINCIPAL);
+
+    public ExcelService(ExcelValidationConfig validationConfig, FileStorageService fileStorageService,
+                        ValidationExecutor validationExecutor, MemoryAdmissionService memoryAdmissionService,
+                        MeterRegistry meterRegistry) {
         this.validationConfig = validationConfig;
         this.fileStorageService = fileStorageService;
+        this.validationExecutor = validationExecutor;
+        this.memoryAdmissionService = memoryAdmissionService;
+        this.streamingHighlightWriter = new StreamingHighlightWriter(validationConfig.getErrorHighlight());
+        this.csvSheetReader = new CsvSheetReader(validationConfig.getCsv().getDelimiter());
 
-        // Build normalized rules map for robust lookup (normalize keys like "Joining_Date" -> "joining date")
         Map<String, ColumnValidationRule> rules = validationConfig.getValidations();
-        if (rules != null) {
-            for (Map.Entry<String, ColumnValidationRule> e : rules.entrySet()) {
-                String configuredKey = e.getKey(); // e.g. "ACQUISITION_DATE" or "PENAL_RATE"
-                ColumnValidationRule rule = e.getValue();
-
-                // Store multiple normalized versions of the same rule
-                String norm1 = normalizeForCompare(configuredKey); // normalized
-                String norm2 = normalizeForCompare(configuredKey.replace('_', ' ')); // spaces
-                String norm3 = normalizeForCompare(configuredKey).replace(' ', '_'); // underscores
-
-                normalizedRules.put(norm1, rule);
-                normalizedRules.put(norm2, rule);
-                normalizedRules.put(norm3, rule);
-
-                System.out.println("Registered rule '" + configuredKey + "' with variants: " +
-                        norm1 + ", " + norm2 + ", " + norm3);
-            }
-            System.out.println("Total normalized rules registered: " + normalizedRules.size());
-        }
+        this.headerResolver = new HeaderResolver(rules, validationConfig.getHeaderCache().getMaxEntries(), meterRegistry);
+        this.validationPlan = new ValidationPlan(rules);
+        this.uploadMetrics = new UploadMetrics(meterRegistry, rules);
     }
 
     /**
      * Process an uploaded .xlsx file: extract column-wise data, auto-fill, and validate.
      * This method now also handles auto-filling and yellow highlighting.
+     *
+     * The data sheet is read with SAX events (see StreamingSheetReader) and every row is
+     * auto-filled and validated as it is parsed. The workbook DOM is only opened afterwards,
+     * and only when some cells actually had to be auto-filled. The upload is never held as
+     * a byte[]: it is transferred to a temp file that the storage takes over.
      */
     public ExcelInfoResponse extractAndProcessExcelInfo(MultipartFile file) throws Exception {
-        byte[] originalContent = file.getBytes();
+        return extractAndProcessExcelInfo(file, validationConfig.getResponse().isIncludeSheetData());
+    }
+
+    /**
+     * Same as {@link #extractAndProcessExcelInfo(MultipartFile)}; without {@code includeSheetData}
+     * the cell values are not collected and the response carries no sheetData
+     * (read it page by page with {@link #readRows}).
+     */
+    public ExcelInfoResponse extractAndProcessExcelInfo(MultipartFile file, boolean includeSheetData) throws Exception {
+        return extractAndProcessExcelInfo(spoolUpload(file), file.getOriginalFilename(), includeSheetData);
+    }
+
+    /**
+     * The includeSheetData to use for a request: the requested value, else excel.response.include-sheet-data.
+     */
+    public boolean resolveIncludeSheetData(Boolean requested) {
+        return (requested != null) ? requested : validationConfig.getResponse().isIncludeSheetData();
+    }
+
+    /**
+     * Move a multipart upload into a temp file in the storage directory. The File overload of
+     * transferTo goes through Part.write, which renames the part the container already wrote
+     * to disk (a copy only across file systems); the Path overload always copies the stream.
+     * The file outlives the request, so it can also be processed later by an upload job.
+     */
+    public Path spoolUpload(MultipartFile file) throws IOException {
+        Path uploadFile = fileStorageService.createTempFile();
+        try {
+            file.transferTo(uploadFile.toFile());
+            return uploadFile;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(uploadFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Same as {@link #extractAndProcessExcelInfo(MultipartFile)} for an upload already spooled
+     * with {@link #spoolUpload(MultipartFile)}. Takes ownership of {@code uploadFile}: it is
+     * either handed to the file storage or deleted.
+     */
+    public ExcelInfoResponse extractAndProcessExcelInfo(Path uploadFile, String originalFilename,
+                                                        boolean includeSheetData) throws Exception {
+        return ingestExcel(uploadFile, originalFilename, includeSheetData, null);
+    }
+
+    /**
+     * Spool (or, for .json, read) an upload for the NDJSON response and admit it, so that
+     * admission rejections ({@link AdmissionRejectedException}) and unreadable workbooks are
+     * thrown here, before the caller commits a response. The returned NdjsonUpload then
+     * streams the validation, see {@link #streamExcelValidation}.
+     */
+    public NdjsonUpload prepareNdjsonValidation(MultipartFile file) throws Exception {
+        String fileName = file.getOriginalFilename();
+        String lower = (fileName == null) ? "" : fileName.toLowerCase();
+        if (lower.endsWith(".json")) {
+            byte[] content = file.getBytes();
+            String contentType = file.getContentType();
+            return new NdjsonUpload(out -> streamJsonValidation(fileName, contentType, content, out), () -> {});
+        }
+        if (!lower.endsWith(".xlsx") && !isCsvOrNdjson(lower)) {
+            throw new IllegalArgumentException("Only .xlsx, .json, .csv and .ndjson files are supported");
+        }
+
+        // Spooled now: the multipart may be gone by the time the body is written
+        Path uploadFile = spoolUpload(file);
+        if (isCsvOrNdjson(lower)) {
+            return new NdjsonUpload(out -> streamCsvOrNdjsonValidation(uploadFile, fileName, out),
+                    () -> Files.deleteIfExists(uploadFile));
+        }
+        ExcelAdmission admission;
+        try {
+            admission = admitExcel(uploadFile, false);
+        } catch (Exception e) {
+            Files.deleteIfExists(uploadFile);
+            throw e;
+        }
+        return new NdjsonUpload(out -> streamExcelValidation(uploadFile, fileName, admission, out), () -> {
+            try {
+                admission.reservation.close();
+            } finally {
+                Files.deleteIfExists(uploadFile);
+            }
+        });
+    }
+
+    /**
+     * NDJSON variant of the .xlsx upload (see NdjsonValidationWriter): every error is written to
+     * {@code out} as soon as its row chunk has been validated and a summary line with the file id
+     * follows at the end. Neither error list is built: cell errors come out chunk by chunk
+     * (column order, then row order within a chunk), missing-column errors after them, and the
+     * file is stored without errors (the highlighted download re-validates it).
+     * Takes ownership of {@code uploadFile} and {@code admission}.
+     */
+    private void streamExcelValidation(Path uploadFile, String originalFilename, ExcelAdmission admission,
+                                       OutputStream out) throws IOException {
+        NdjsonValidationWriter writer = new NdjsonValidationWriter(objectMapper.getFactory(), out);
+        try {
+            ExcelInfoResponse response = ingestExcel(uploadFile, originalFilename, false, writer, admission);
+            writer.summary(response.getFileId(), originalFilename, "xlsx", response.getSheetCount(), response.getSheetNames(),
+                    response.getTruncatedErrorCount(), response.isValidationStopped());
+        } catch (Exception e) {
+            writer.failure("Error processing file: " + e.getMessage());
+        }
+        writer.flush();
+    }
+
+    /**
+     * A profiled .xlsx upload holding the heap reservation for the reader it will be read with.
+     */
+    private static final class ExcelAdmission {
+        private final MemoryAdmissionService.Reservation reservation;
+        private final StreamingSheetReader.SheetProfile profile;
+        private final boolean dom;
+
+        private ExcelAdmission(MemoryAdmissionService.Reservation reservation,
+                               StreamingSheetReader.SheetProfile profile, boolean dom) {
+            this.reservation = reservation;
+            this.profile = profile;
+            this.dom = dom;
+        }
+    }
+
+    /**
+     * Profile the upload and reserve its estimated heap before a single cell is parsed: the DOM
+     * estimate for the DOM reader and for workbooks whose formulas must be evaluated
+     * (excel.formula.evaluation), the streaming estimate otherwise.
+     */
+    private ExcelAdmission admitExcel(Path uploadFile, boolean includeSheetData) throws Exception {
+        MemoryAdmissionService.Reservation reservation = memoryAdmissionService.newReservation();
+        try {
+            Timer.Sample phase = uploadMetrics.start();
+            StreamingSheetReader.SheetProfile profile;
+            boolean dom = validationConfig.getIngest().getReader() == ExcelValidationConfig.IngestConfig.ReaderMode.DOM;
+            OPCPackage pkg = OPCPackage.open(uploadFile.toFile(), PackageAccess.READ);
+            try {
+                profile = streamingSheetReader.profile(pkg);
+                // Only a loaded workbook can evaluate formulas
+                if (!dom) dom = needsFormulaEvaluation(pkg, profile);
+            } finally {
+                pkg.revert();
+            }
+            uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "xlsx", "profile");
+            reservation.growTo(dom ? memoryAdmissionService.estimateDom(profile)
+                    : memoryAdmissionService.estimateStreaming(profile, includeSheetData));
+            return new ExcelAdmission(reservation, profile, dom);
+        } catch (Exception | Error e) {
+            reservation.close();
+            throw e;
+        }
+    }
+
+    /**
+     * With an {@code errorSink} the errors go to the sink and the response carries none.
+     */
+    private ExcelInfoResponse ingestExcel(Path uploadFile, String originalFilename, boolean includeSheetData,
+                                          ValidationErrorSink errorSink) throws Exception {
+        ExcelAdmission admission;
+        try {
+            admission = admitExcel(uploadFile, includeSheetData);
+        } catch (Exception e) {
+            Files.deleteIfExists(uploadFile);
+            throw e;
+        }
+        return ingestExcel(uploadFile, originalFilename, includeSheetData, errorSink, admission);
+    }
+
+    /**
+     * Takes ownership of {@code uploadFile} and {@code admission}.
+     */
+    private ExcelInfoResponse ingestExcel(Path uploadFile, String originalFilename, boolean includeSheetData,
+                                          ValidationErrorSink errorSink, ExcelAdmission admission) throws Exception {
+        // POI reads the spooled upload with random access, and the same file becomes
+        // the stored copy when nothing is auto-filled
+        Path autoFilledFile = null;
+        try (MemoryAdmissionService.Reservation reservation = admission.reservation) {
+            if (admission.dom) {
+                return ingestExcelDom(uploadFile, originalFilename, includeSheetData, errorSink);
+            }
+
+            SheetIngestSession session = new SheetIngestSession(this::getValidatorsForHeaders,
+                    this::autoFillDefaultFor, validationExecutor, includeSheetData);
+            ErrorBudget errorBudget = ErrorBudget.of(validationConfig.getErrorLimits());
+            session.limitErrors(errorBudget);
+            if (errorSink != null) session.streamErrorsTo(errorSink);
+
+            Timer.Sample phase = uploadMetrics.start();
+            OPCPackage pkg = OPCPackage.open(uploadFile.toFile(), PackageAccess.READ);
+            try {
+                streamingSheetReader.read(pkg, session);
+            } finally {
+                pkg.revert();
+            }
+            // Validation overlaps parsing: "parse" includes the chunks validated meanwhile
+            phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "xlsx", "parse");
+
+            // Only the auto-filled cells need the DOM; untouched uploads are stored as-is
+            Path storedFile = uploadFile;
+            if (!session.getAutoFilledCells().isEmpty()) {
+                // The workbook DOM is loaded on top of the values collected so far
+                reservation.growTo(memoryAdmissionService.estimateStreaming(admission.profile, includeSheetData)
+                        + memoryAdmissionService.estimateDom(admission.profile));
+                autoFilledFile = fileStorageService.createTempFile();
+                applyAutoFill(uploadFile, autoFilledFile, session.getSheetName(), session.getAutoFilledCells());
+                storedFile = autoFilledFile;
+                phase = uploadMetrics.start();
+            }
+
+            ExcelInfoResponse response = sessionResponse(session, errorBudget, errorSink, "xlsx");
+            phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "xlsx", "validate");
+
+            // Keep the errors with the file so the highlighted download can reuse them
+            // (unless some were left out: the download then re-validates the whole file)
+            String fileId = fileStorageService.storeFile(originalFilename, storedFile,
+                    session.getSheetName(), isComplete(errorBudget) ? response.getDetailedErrors() : null);
+            // The stored file now belongs to the storage
+            if (storedFile == uploadFile) {
+                uploadFile = null;
+            } else {
+                autoFilledFile = null;
+            }
+            uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "xlsx", "store");
+            uploadMetrics.recordSize("xlsx", session.getRowCount(), session.getColumnIndexMap().size());
+            uploadMetrics.recordErrors(errorBudget, this::getRuleForColumnName);
+            response.setFileId(fileId);
+            return response;
+        } finally {
+            // Whatever was not handed over to the storage is removed
+            if (uploadFile != null) Files.deleteIfExists(uploadFile);
+            if (autoFilledFile != null) Files.deleteIfExists(autoFilledFile);
+        }
+    }
+
+    /**
+     * Ingest an .xlsx upload admitted for the DOM reader; the caller removes {@code uploadFile}.
+     */
+    private ExcelInfoResponse ingestExcelDom(Path uploadFile, String originalFilename, boolean includeSheetData,
+                                             ValidationErrorSink errorSink) throws Exception {
+        ExcelInfoResponse response = extractAndProcessExcelInfoDom(Files.readAllBytes(uploadFile), originalFilename);
+        if (!includeSheetData) response.setSheetData(null);
+        if (errorSink != null) {
+            for (ValidationError error : response.getDetailedErrors()) errorSink.accept(error);
+        }
+        return response;
+    }
+
+    /**
+     * Whether the data sheet has formula cells the excel.formula.evaluation policy wants
+     * evaluated: formulas saved without a result (missing) or any formula (always). The
+     * streaming reader only sees saved results, so such uploads are read with the DOM reader.
+     */
+    private boolean needsFormulaEvaluation(OPCPackage pkg, StreamingSheetReader.SheetProfile profile) throws Exception {
+        ExcelValidationConfig.FormulaConfig.EvaluationMode mode = validationConfig.getFormula().getEvaluation();
+        if (mode == ExcelValidationConfig.FormulaConfig.EvaluationMode.CACHED) return false;
+        return streamingSheetReader.hasFormulas(pkg, profile.getSheetName(),
+                mode != ExcelValidationConfig.FormulaConfig.EvaluationMode.ALWAYS);
+    }
+
+    /**
+     * Missing-column errors, then the session's cell errors, as far as the budget allows.
+     * With an {@code errorSink} the cell errors have already been streamed; the missing-column
+     * errors follow them and the response carries no error lists.
+     */
+    private ExcelInfoResponse sessionResponse(SheetIngestSession session, ErrorBudget errorBudget,
+                                              ValidationErrorSink errorSink, String fileType) throws IOException {
+        List<String> errors = new ArrayList<>();
+        List<ValidationError> detailedErrors = new ArrayList<>();
+        checkRequiredColumns(session.getColumnIndexMap().keySet(), errors, detailedErrors, errorBudget);
+        if (errorSink != null) {
+            for (ValidationError error : detailedErrors) errorSink.accept(error);
+            errors = null;
+            detailedErrors = null;
+        } else {
+            session.drainErrors(errors, detailedErrors);
+        }
+
+        ExcelInfoResponse response = new ExcelInfoResponse(session.getSheetCount(),
+                Collections.singletonList(session.getSheetName()),
+                session.getColumnData(), errors, detailedErrors, null, fileType);
+        response.setTruncatedErrorCount(errorBudget.getTruncated());
+        response.setValidationStopped(errorBudget.isStopped());
+        return response;
+    }
+
+    /**
+     * True for the record formats read by CsvSheetReader / NdjsonSheetReader.
+     */
+    public static boolean isCsvOrNdjson(String fileName) {
+        String lower = (fileName == null) ? "" : fileName.toLowerCase();
+        return lower.endsWith(".csv") || lower.endsWith(".ndjson");
+    }
+
+    /**
+     * Process an uploaded .csv or .ndjson file: validation only, like .json (no auto-fill).
+     * Records are streamed through the same ingest session as .xlsx rows, with the same header
+     * matching, rules and error reporting; without sheetData memory stays flat whatever the size.
+     * Errors are numbered like the source: .csv rows as spreadsheet rows (header = row 1),
+     * .ndjson objects from 1 like a .json array.
+     */
+    public ExcelInfoResponse extractCsvOrNdjsonInfo(MultipartFile file, boolean includeSheetData) throws Exception {
+        return extractCsvOrNdjsonInfo(spoolUpload(file), file.getOriginalFilename(), includeSheetData);
+    }
+
+    /**
+     * Same as {@link #extractCsvOrNdjsonInfo(MultipartFile, boolean)} for a spooled upload;
+     * takes ownership of {@code uploadFile} like {@link #extractAndProcessExcelInfo(Path, String, boolean)}.
+     */
+    public ExcelInfoResponse extractCsvOrNdjsonInfo(Path uploadFile, String originalFilename,
+                                                    boolean includeSheetData) throws Exception {
+        return ingestCsvOrNdjson(uploadFile, originalFilename, includeSheetData, null);
+    }
+
+    /**
+     * NDJSON response variant of the .csv/.ndjson upload, see {@link #streamExcelValidation}.
+     */
+    private void streamCsvOrNdjsonValidation(Path uploadFile, String originalFilename, OutputStream out) throws IOException {
+        NdjsonValidationWriter writer = new NdjsonValidationWriter(objectMapper.getFactory(), out);
+        try {
+            ExcelInfoResponse response = ingestCsvOrNdjson(uploadFile, originalFilename, false, writer);
+            writer.summary(response.getFileId(), originalFilename, response.getFileType(), response.getSheetCount(),
+                    response.getSheetNames(), response.getTruncatedErrorCount(), response.isValidationStopped());
+        } catch (Exception e) {
+            writer.failure("Error processing file: " + e.getMessage());
+        }
+        writer.flush();
+    }
+
+    private ExcelInfoResponse ingestCsvOrNdjson(Path uploadFile, String originalFilename, boolean includeSheetData,
+                                                ValidationErrorSink errorSink) throws Exception {
+        try {
+            boolean ndjson = originalFilename.toLowerCase().endsWith(".ndjson");
+            SheetIngestSession session = new SheetIngestSession(this::getValidatorsForHeaders,
+                    colName -> null, validationExecutor, includeSheetData);
+            if (ndjson) session.numberRowsFrom(1);
+            ErrorBudget errorBudget = ErrorBudget.of(validationConfig.getErrorLimits());
+            session.limitErrors(errorBudget);
+            if (errorSink != null) session.streamErrorsTo(errorSink);
+
+            String format = ndjson ? "ndjson" : "csv";
+            Timer.Sample phase = uploadMetrics.start();
+            Path source = uploadFile;
+            readCsvOrNdjson(originalFilename, () -> Files.newInputStream(source), session);
+            phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, format, "parse");
+
+            ExcelInfoResponse response = sessionResponse(session, errorBudget, errorSink, format);
+            phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, format, "validate");
+            String fileId = fileStorageService.storeFile(originalFilename, uploadFile,
+                    ndjson ? "application/x-ndjson" : "text/csv", session.getSheetName(), null);
+            uploadFile = null; // now owned by the storage
+            uploadMetrics.stop(phase, UploadMetrics.UPLOAD, format, "store");
+            uploadMetrics.recordSize(format, session.getRowCount(), session.getColumnIndexMap().size());
+            uploadMetrics.recordErrors(errorBudget, this::getRuleForColumnName);
+            response.setFileId(fileId);
+            return response;
+        } finally {
+            if (uploadFile != null) Files.deleteIfExists(uploadFile);
+        }
+    }
+
+    private void readCsvOrNdjson(String fileName, StreamingHighlightWriter.ContentSource content,
+                                 StreamingSheetReader.RowHandler handler) throws Exception {
+        if (fileName.toLowerCase().endsWith(".ndjson")) {
+            ndjsonSheetReader.read(content, handler);
+            return;
+        }
+        try (InputStream in = content.open()) {
+            csvSheetReader.read(in, handler);
+        }
+    }
+
+
+    /**
+     * Write default values (yellow fill + comment) into the given cells of an uploaded workbook,
+     * saving the result to {@code target}.
+     */
+    private void applyAutoFill(Path source, Path target, String sheetName, List<int[]> cells) throws Exception {
+        Timer.Sample phase = uploadMetrics.start();
+        // Opened read-write only so POI lets us save a copy; revert() leaves the source untouched
+        OPCPackage pkg = OPCPackage.open(source.toFile(), PackageAccess.READ_WRITE);
+        try {
+            Workbook workbook = new XSSFWorkbook(pkg);
+            Sheet sheet = workbook.getSheet(sheetName);
+            Row headerRow = sheet.getRow(0);
+            CreationHelper creationHelper = workbook.getCreationHelper();
+            Drawing<?> drawing = sheet.createDrawingPatriarch();
+            CellStyle yellowStyle = createAutoFillStyle(workbook);
+            CellStylePool stylePool = new CellStylePool(workbook);
+
+            for (int[] position : cells) {
+                int rowIndex = position[0];
+                int colIndex = position[1];
+                String colName = headerRow.getCell(colIndex, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK).toString().trim();
+                if (colName.isEmpty()) {
+                    colName = "Column_" + (colIndex + 1);
+                }
+                Row row = sheet.getRow(rowIndex);
+                if (row == null) {
+                    row = sheet.createRow(rowIndex);
+                }
+                autoFillCell(stylePool, row, colIndex, colName, autoFillDefaultFor(colName), yellowStyle, drawing, creationHelper);
+            }
+            phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "xlsx", "autofill");
+
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+                workbook.write(out);
+            }
+            uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "xlsx", "write");
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    /**
+     * Legacy DOM ingestion: loads the whole workbook into memory (excel.ingest.reader=dom).
+     */
+    private ExcelInfoResponse extractAndProcessExcelInfoDom(byte[] originalContent, String originalFilename) throws Exception {
+        Timer.Sample phase = uploadMetrics.start();
         Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(originalContent));
+        phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "xlsx", "load");
 
-        FormulaEvaluator evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+        FormulaEvaluator evaluator = newFormulaEvaluator(workbook, UploadMetrics.UPLOAD);
         DataFormatter dataFormatter = new DataFormatter();
         CreationHelper creationHelper = workbook.getCreationHelper();
 
@@ -93,215 +530,332 @@ public class ExcelService {
             throw new Exception("No header row found in sheet");
         }
 
-        int maxColumns = headerRow.getLastCellNum();
-        int lastDataRow = findLastNonEmptyRow(sheetToProcess, maxColumns, dataFormatter, evaluator);
-
-        // --- AUTO-FILL PASS: Modify the workbook directly ---
-        // Normalized names for the columns to auto-fill
-        Set<String> autoFillNormalized = new HashSet<>(Arrays.asList(
-                normalizeForCompare("INTEREST RATE"),
-                normalizeForCompare("PENAL RATE"),
-                normalizeForCompare("PENAL CHARGE RATE"),
-                normalizeForCompare("OPENING PRINCIPAL")
-        ));
+        // One row-major pass: trailing blank rows, auto-fill defaults and the column values
+        SheetScan scan = SheetScan.scan(sheetToProcess, dataFormatter, evaluator, this::newColumn, this::autoFillDefaultFor);
+        phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "xlsx", "scan");
 
+        // --- AUTO-FILL: write the defaults the scan put in the blank cells into the workbook ---
         // Prepare drawing & yellow style for auto-filled cells
         Drawing<?> drawing = sheetToProcess.createDrawingPatriarch();
-        CellStyle yellowStyle = workbook.createCellStyle();
-        yellowStyle.setFillForegroundColor(IndexedColors.YELLOW.getIndex());
-        yellowStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        CellStyle yellowStyle = createAutoFillStyle(workbook);
+        CellStylePool stylePool = new CellStylePool(workbook);
 
-        Map<String, Integer> columnIndexMap = new LinkedHashMap<>();
-
-        for (int colIndex = 0; colIndex < maxColumns; colIndex++) {
-            Cell headerCell = headerRow.getCell(colIndex, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-            String colName = headerCell.toString().trim();
-            if (colName.isEmpty()) {
-                colName = "Column_" + (colIndex + 1);
-            }
-            columnIndexMap.put(colName, colIndex);
-
-            String colNorm = normalizeForCompare(colName);
-            boolean isAutoFillColumn = autoFillNormalized.contains(colNorm);
-
-            if (isAutoFillColumn) {
-                boolean isOpeningPrincipal = normalizeForCompare("OPENING PRINCIPAL").equals(colNorm);
-                String defaultValue = isOpeningPrincipal ? "0.00" : "0%";
-
-                for (int rowIndex = 1; rowIndex <= lastDataRow; rowIndex++) {
-                    Row row = sheetToProcess.getRow(rowIndex);
-                    if (row == null) {
-                        row = sheetToProcess.createRow(rowIndex);
-                    }
-                    Cell cell = row.getCell(colIndex);
-                    if (cell == null || dataFormatter.formatCellValue(cell, evaluator).trim().isEmpty()) {
-                        cell = row.createCell(colIndex);
-                        cell.setCellValue(defaultValue);
-
-                        try {
-                            CellStyle newStyle = workbook.createCellStyle();
-                            if (cell.getCellType() != CellType.BLANK && cell.getCellStyle() != null) {
-                                newStyle.cloneStyleFrom(cell.getCellStyle());
-                            }
-                            newStyle.setFillForegroundColor(IndexedColors.YELLOW.getIndex());
-                            newStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-                            cell.setCellStyle(newStyle);
-                        } catch (Exception ex) {
-                            cell.setCellStyle(yellowStyle);
-                        }
-
-                        ClientAnchor anchor = creationHelper.createClientAnchor();
-                        anchor.setCol1(colIndex);
-                        anchor.setCol2(colIndex + 3);
-                        anchor.setRow1(rowIndex);
-                        anchor.setRow2(rowIndex + 3);
-
-                        Comment comment = drawing.createCellComment(anchor);
-                        comment.setString(creationHelper.createRichTextString("The cell was empty. Filled with default value 0"));
-                        comment.setAuthor("Excel Validator");
-                        cell.setCellComment(comment);
-
-                        System.out.println("Auto-filled column '" + colName + "' row " + (rowIndex + 1) + " with '" + defaultValue + "'");
-                    }
-                }
+        for (int[] position : scan.autoFillCells) {
+            int rowIndex = position[0];
+            int colIndex = position[1];
+            Row row = sheetToProcess.getRow(rowIndex);
+            if (row == null) {
+                row = sheetToProcess.createRow(rowIndex);
             }
+            String colName = scan.columnNames[colIndex];
+            autoFillCell(stylePool, row, colIndex, colName, autoFillDefaultFor(colName), yellowStyle, drawing, creationHelper);
         }
 
-        // --- END AUTO-FILL PASS ---
-
-        // Re-read the modified workbook data into memory for validation
-        Map<String, List<String>> columnData = new LinkedHashMap<>();
-        for (int colIndex = 0; colIndex < maxColumns; colIndex++) {
-            Cell headerCell = headerRow.getCell(colIndex, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-            String colName = headerCell.toString().trim();
-            if (colName.isEmpty()) {
-                colName = "Column_" + (colIndex + 1);
-            }
+        // --- END AUTO-FILL ---
+        phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "xlsx", "autofill");
 
-            List<String> colValues = new ArrayList<>();
-            for (int rowIndex = 1; rowIndex <= lastDataRow; rowIndex++) {
-                Row row = sheetToProcess.getRow(rowIndex);
-                Cell cell = (row == null) ? null : row.getCell(colIndex, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-                String value = (cell == null) ? "" : dataFormatter.formatCellValue(cell, evaluator).trim();
-                colValues.add(value);
-            }
-            columnData.put(colName, colValues);
-        }
+        // Validate the scanned data
+        ExcelInfoResponse response = processDataAndValidate(scan.columnData, sheetCount,
+                Collections.singletonList(sheetToProcess.getSheetName()), scan.columnIndexMap, "xlsx");
+        phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "xlsx", "validate");
 
-        // Save the modified workbook content to the file storage service
+        // Save the modified workbook content (and its validation result) to the file storage service
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         workbook.write(outputStream);
-        String fileId = fileStorageService.storeFile(file.getOriginalFilename(), outputStream.toByteArray());
-
-        // Validate the re-read data
-        ExcelInfoResponse response = processDataAndValidate(columnData, sheetCount,
-                Collections.singletonList(sheetToProcess.getSheetName()), columnIndexMap, "xlsx");
+        phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "xlsx", "write");
+        String fileId = fileStorageService.storeFile(originalFilename, outputStream.toByteArray(),
+                sheetToProcess.getSheetName(), isComplete(response) ? response.getDetailedErrors() : null);
+        uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "xlsx", "store");
         response.setFileId(fileId);
         response.setFileType("xlsx");
         return response;
     }
 
+    /**
+     * Evaluator for the formula cells of a loaded workbook, following excel.formula.evaluation
+     */
+    private FormulaEvaluator newFormulaEvaluator(Workbook workbook, String operation) {
+        return new FormulaPolicyEvaluator(workbook, validationConfig.getFormula().getEvaluation(),
+                uploadMetrics.formulaEvaluations(operation));
+    }
+
+    /**
+     * Default value for auto-filled columns, or null if the column is not auto-filled.
+     */
+    private String autoFillDefaultFor(String colName) {
+        String colNorm = normalizeForCompare(colName);
+        if (!AUTO_FILL_COLUMNS.contains(colNorm)) return null;
+        return OPENING_PRINCIPAL.equals(colNorm) ? "0.00" : "0%";
+    }
+
+    private CellStyle createAutoFillStyle(Workbook workbook) {
+        CellStyle yellowStyle = workbook.createCellStyle();
+        yellowStyle.setFillForegroundColor(IndexedColors.YELLOW.getIndex());
+        yellowStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        return yellowStyle;
+    }
+
+    /**
+     * Replace the cell with the default value, color it yellow and attach an explanatory comment.
+     */
+    private void autoFillCell(CellStylePool stylePool, Row row, int colIndex, String colName, String defaultValue,
+                              CellStyle yellowStyle, Drawing<?> drawing, CreationHelper creationHelper) {
+        int rowIndex = row.getRowNum();
+        Cell cell = row.createCell(colIndex);
+        cell.setCellValue(defaultValue);
+
+        try {
+            // Yellow variant of the cell's style, shared with every other cell using that style
+            CellStyle original = (cell.getCellType() != CellType.BLANK) ? cell.getCellStyle() : null;
+            cell.setCellStyle(stylePool.withSolidFill(original, IndexedColors.YELLOW.getIndex()));
+        } catch (Exception ex) {
+            cell.setCellStyle(yellowStyle);
+        }
+
+        ClientAnchor anchor = creationHelper.createClientAnchor();
+        anchor.setCol1(colIndex);
+        anchor.setCol2(colIndex + 3);
+        anchor.setRow1(rowIndex);
+        anchor.setRow2(rowIndex + 3);
+
+        Comment comment = drawing.createCellComment(anchor);
+        comment.setString(creationHelper.createRichTextString("The cell was empty. Filled with default value 0"));
+        comment.setAuthor("Excel Validator");
+        cell.setCellComment(comment);
+
+        System.out.println("Auto-filled column '" + colName + "' row " + (rowIndex + 1) + " with '" + defaultValue + "'");
+    }
+
     /**
      * Process an uploaded .json file. Accepts either:
      * - array of objects: [ {"Name":"John","Age":25}, ... ]
      * - object of arrays: { "Name": ["John","Alice"], "Age":[25,30] }
      */
     public ExcelInfoResponse extractJsonInfo(MultipartFile file) throws Exception {
-        String fileId = fileStorageService.storeFile(file);
-
-        // Try JSON array-of-objects first
-        try (InputStream in = file.getInputStream()) {
-            try {
-                List<Map<String, Object>> rows = objectMapper.readValue(in, new TypeReference<List<Map<String, Object>>>() {});
-                if (rows == null) rows = Collections.emptyList();
-
-                LinkedHashMap<String, List<String>> columnData = new LinkedHashMap<>();
-                LinkedHashMap<String, Integer> columnIndexMap = new LinkedHashMap<>();
-                LinkedHashSet<String> keysOrder = new LinkedHashSet<>();
+        return extractJsonInfo(file, validationConfig.getResponse().isIncludeSheetData());
+    }
 
-                for (Map<String, Object> row : rows) {
-                    if (row == null) continue;
-                    keysOrder.addAll(row.keySet());
-                }
+    public ExcelInfoResponse extractJsonInfo(MultipartFile file, boolean includeSheetData) throws Exception {
+        return extractJsonInfo(file.getOriginalFilename(), file.getContentType(), file.getBytes(), includeSheetData);
+    }
 
-                int colIndex = 0;
-                for (String key : keysOrder) {
-                    columnData.put(key, new ArrayList<>());
-                    columnIndexMap.put(key, colIndex++);
-                }
+    /**
+     * Same as {@link #extractJsonInfo(MultipartFile, boolean)} for content that is already in memory.
+     */
+    public ExcelInfoResponse extractJsonInfo(String fileName, String contentType, byte[] content,
+                                             boolean includeSheetData) throws Exception {
+        Timer.Sample phase = uploadMetrics.start();
+        String fileId = fileStorageService.storeFile(fileName, content, contentType);
+        phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "json", "store");
+
+        JsonColumns json = parseJsonColumns(content);
+        phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "json", "parse");
+        ExcelInfoResponse response = processDataAndValidate(json.columnData, 1, Collections.singletonList("JSON"), json.columnIndexMap, "json");
+        uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "json", "validate");
+        response.setFileId(fileId);
+        response.setFileType("json");
+        if (!includeSheetData) response.setSheetData(null);
+        return response;
+    }
 
-                for (Map<String, Object> row : rows) {
-                    for (String key : keysOrder) {
-                        Object val = (row == null) ? null : row.get(key);
-                        columnData.get(key).add(val == null ? "" : String.valueOf(val));
-                    }
+    /**
+     * NDJSON variant of the .json upload, same line format as
+     * {@link #streamExcelValidation}; errors come out in the order
+     * of the regular response and are not kept with the stored file.
+     */
+    private void streamJsonValidation(String fileName, String contentType, byte[] content, OutputStream out) throws IOException {
+        NdjsonValidationWriter writer = new NdjsonValidationWriter(objectMapper.getFactory(), out);
+        try {
+            Timer.Sample phase = uploadMetrics.start();
+            String fileId = fileStorageService.storeFile(fileName, content, contentType);
+            phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "json", "store");
+            JsonColumns json = parseJsonColumns(content);
+            phase = uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "json", "parse");
+
+            ErrorBudget errorBudget = ErrorBudget.of(validationConfig.getErrorLimits());
+            List<ValidationError> missingColumns = new ArrayList<>();
+            checkRequiredColumns(json.columnData.keySet(), new ArrayList<>(), missingColumns, errorBudget);
+            for (ValidationError error : missingColumns) writer.accept(error);
+            for (ValidationExecutor.ColumnResult result : validateColumns(json.columnData, json.columnIndexMap, 1, errorBudget)) {
+                for (ValidationError error : result.getDetailedErrors()) {
+                    if (errorBudget.admit(error)) writer.accept(error);
                 }
-
-                ExcelInfoResponse response = processDataAndValidate(columnData, 1, Collections.singletonList("JSON"), columnIndexMap, "json");
-                response.setFileId(fileId);
-                response.setFileType("json");
-                return response;
-            } catch (Exception eArray) {
-                // fall through to try object-of-arrays
+                errorBudget.truncate(result.getTruncatedCount());
             }
+            uploadMetrics.stop(phase, UploadMetrics.UPLOAD, "json", "validate");
+            uploadMetrics.recordSize("json", rowCount(json.columnData), json.columnData.size());
+            uploadMetrics.recordErrors(errorBudget, this::getRuleForColumnName);
+            writer.summary(fileId, fileName, "json", 1, Collections.singletonList("JSON"),
+                    errorBudget.getTruncated(), errorBudget.isStopped());
+        } catch (Exception e) {
+            writer.failure("Error processing file: " + e.getMessage());
         }
+        writer.flush();
+    }
 
-        // Try object-of-arrays
-        try (InputStream in2 = file.getInputStream()) {
-            Map<String, List<Object>> cols = objectMapper.readValue(in2, new TypeReference<Map<String, List<Object>>>() {});
-            if (cols == null) cols = Collections.emptyMap();
+    /**
+     * Read a .json upload in one pass (see JsonColumns for the accepted layouts).
+     */
+    private JsonColumns parseJsonColumns(byte[] content) throws Exception {
+        try {
+            return JsonColumns.read(objectMapper, content, this::newColumn);
+        } catch (IOException ex) {
+            throw new Exception("JSON parsing failed: " + ex.getMessage(), ex);
+        }
+    }
 
-            LinkedHashMap<String, List<String>> columnData = new LinkedHashMap<>();
-            LinkedHashMap<String, Integer> columnIndexMap = new LinkedHashMap<>();
+    public int getMaxPageRows() {
+        return validationConfig.getResponse().getMaxPageRows();
+    }
 
-            int maxRows = 0;
-            for (Map.Entry<String, List<Object>> e : cols.entrySet()) {
-                maxRows = Math.max(maxRows, (e.getValue() == null) ? 0 : e.getValue().size());
-            }
+    /**
+     * A page of a stored upload: {@code limit} data rows from {@code offset} (0 = first row under
+     * the header), restricted to {@code columns} (all columns when empty). Values are the ones the
+     * upload response would have carried in sheetData, auto-fills included.
+     *
+     * Stored .xlsx files are read with the event reader straight from the stored copy (spilled
+     * files from disk, with random access) and parsing stops right after the page.
+     */
+    public SheetRowsResponse readRows(String fileId, int offset, int limit, List<String> columns) throws Exception {
+        String fileName = fileStorageService.getFileName(fileId);
+        if (fileName == null) {
+            throw new Exception("File not found or expired");
+        }
 
-            int colIndex = 0;
-            for (Map.Entry<String, List<Object>> e : cols.entrySet()) {
-                String key = e.getKey();
-                columnIndexMap.put(key, colIndex++);
-                List<Object> objList = e.getValue();
-                List<String> stringList = new ArrayList<>();
-                if (objList != null) {
-                    for (Object o : objList) stringList.add(o == null ? "" : String.valueOf(o));
+        if (fileName.toLowerCase().endsWith(".json")) {
+            JsonColumns json = parseJsonColumns(fileStorageService.getFileContent(fileId));
+            List<String> names = (columns == null || columns.isEmpty()) ? new ArrayList<>(json.columnData.keySet()) : columns;
+            int rowCount = json.columnData.isEmpty() ? 0 : json.columnData.values().iterator().next().size();
+            int from = Math.min(offset, rowCount);
+            int to = (int) Math.min(rowCount, (long) offset + limit);
+
+            Map<String, List<String>> page = new LinkedHashMap<>();
+            for (String name : names) {
+                List<String> values = json.columnData.get(name);
+                if (values == null) {
+                    throw new IllegalArgumentException("Unknown column: " + name);
                 }
-                while (stringList.size() < maxRows) stringList.add("");
-                columnData.put(key, stringList);
+                page.put(name, new ArrayList<>(values.subList(from, to)));
             }
+            return new SheetRowsResponse(fileId, "json", "JSON", offset, to - from, offset + 1, to < rowCount, page);
+        }
 
-            ExcelInfoResponse response = processDataAndValidate(columnData, 1, Collections.singletonList("JSON"), columnIndexMap, "json");
-            response.setFileId(fileId);
-            response.setFileType("json");
-            return response;
-        } catch (Exception ex) {
-            throw new Exception("JSON parsing failed: " + ex.getMessage(), ex);
+        SheetWindow window = new SheetWindow(offset, limit, columns);
+        if (isCsvOrNdjson(fileName)) {
+            readCsvOrNdjson(fileName, () -> fileStorageService.openFileContent(fileId), window);
+            boolean ndjson = fileName.toLowerCase().endsWith(".ndjson");
+            Map<String, List<String>> page = window.getColumnData();
+            int rowCount = page.isEmpty() ? 0 : page.values().iterator().next().size();
+            return new SheetRowsResponse(fileId, ndjson ? "ndjson" : "csv", window.getSheetName(), offset, rowCount,
+                    offset + (ndjson ? 1 : 2), window.hasMore(), page);
+        }
+
+        Path spilled = fileStorageService.getSpilledFile(fileId);
+        OPCPackage pkg;
+        if (spilled != null) {
+            pkg = OPCPackage.open(spilled.toFile(), PackageAccess.READ);
+        } else {
+            try (InputStream in = fileStorageService.openFileContent(fileId)) {
+                pkg = OPCPackage.open(in);
+            }
+        }
+        try {
+            streamingSheetReader.read(pkg, window);
+        } finally {
+            pkg.revert();
         }
+
+        Map<String, List<String>> page = window.getColumnData();
+        int rowCount = page.isEmpty() ? 0 : page.values().iterator().next().size();
+        return new SheetRowsResponse(fileId, "xlsx", window.getSheetName(), offset, rowCount, offset + 2,
+                window.hasMore(), page);
+    }
+
+    /**
+     * Writes a highlighted download prepared by {@link #prepareErrorHighlightedExcel(String)}.
+     */
+    public interface HighlightedExcel {
+        void writeTo(OutputStream out) throws Exception;
     }
 
     /**
      * Generate Excel file with validation errors highlighted in red.
      * This method does NOT perform auto-fill or yellow highlighting anymore.
+     * The errors stored with the file at upload are applied as-is; the file is only
+     * re-validated when it was stored without them.
+     *
+     * Everything that can fail short of writing (missing file or sheet, unreadable package or
+     * stored errors, re-validation) happens here, before the caller commits a response; the
+     * returned HighlightedExcel only writes the result.
+     *
+     * With excel.error-highlight.writer=streaming the stored package is rewritten part by part
+     * (see StreamingHighlightWriter) so neither a workbook DOM nor a byte[] of the output is built.
      */
-    public byte[] generateErrorHighlightedExcel(String fileId) throws Exception {
+    public HighlightedExcel prepareErrorHighlightedExcel(String fileId) throws Exception {
         if (!fileStorageService.fileExists(fileId)) {
             throw new Exception("File not found or expired");
         }
 
-        byte[] originalContent = fileStorageService.getFileContent(fileId);
+        // Spilled files are read straight from disk rather than loaded back onto the heap
+        StreamingHighlightWriter.ContentSource storedContent = () -> fileStorageService.openFileContent(fileId);
         String fileName = fileStorageService.getFileName(fileId);
 
         if (fileName == null || !fileName.toLowerCase().endsWith(".xlsx")) {
             throw new Exception("Error highlighting is only supported for Excel files");
         }
 
+        // Errors recorded at upload; only files stored without them are re-validated here
+        List<ValidationError> storedErrors = fileStorageService.getValidationErrors(fileId);
+        String storedSheetName = fileStorageService.getSheetName(fileId);
+
+        Timer.Sample phase = uploadMetrics.start();
+        if (validationConfig.getErrorHighlight().getWriter() == ExcelValidationConfig.ErrorHighlightConfig.WriterMode.STREAMING) {
+            if (storedErrors != null) {
+                StreamingHighlightWriter.StoredPackage stored = streamingHighlightWriter.readPackage(storedContent, storedSheetName);
+                return streamingDownload(stored, storedErrors);
+            }
+
+            // Re-validate the stored file with the event reader (the stored copy is already auto-filled)
+            SheetIngestSession session = new SheetIngestSession(this::getValidatorsForHeaders,
+                    colName -> null, validationExecutor, false);
+            OPCPackage pkg;
+            try (InputStream inputStream = storedContent.open()) {
+                pkg = OPCPackage.open(inputStream);
+            }
+            try {
+                streamingSheetReader.read(pkg, session);
+            } finally {
+                pkg.revert();
+            }
+            phase = uploadMetrics.stop(phase, UploadMetrics.DOWNLOAD, "xlsx", "parse");
+
+            List<ValidationError> detailedErrors = new ArrayList<>();
+            session.drainErrors(new ArrayList<>(), detailedErrors);
+            uploadMetrics.stop(phase, UploadMetrics.DOWNLOAD, "xlsx", "validate");
+
+            StreamingHighlightWriter.StoredPackage stored = streamingHighlightWriter.readPackage(storedContent, session.getSheetName());
+            return streamingDownload(stored, detailedErrors);
+        }
+
         // Re-process the file to get validation errors
-        try (InputStream inputStream = new ByteArrayInputStream(originalContent);
-             Workbook workbook = new XSSFWorkbook(inputStream)) {
+        Workbook workbook;
+        try (InputStream inputStream = storedContent.open()) {
+            workbook = new XSSFWorkbook(inputStream);
+        }
+        try {
+            phase = uploadMetrics.stop(phase, UploadMetrics.DOWNLOAD, "xlsx", "load");
 
-            FormulaEvaluator evaluator = workbook.getCreationHelper().createFormulaEvaluator();
+            if (storedErrors != null) {
+                Sheet storedSheet = workbook.getSheet(storedSheetName);
+                if (storedSheet == null) {
+                    throw new Exception("Sheet '" + storedSheetName + "' not found in the workbook");
+                }
+                applyErrorHighlighting(workbook, storedSheet, storedErrors);
+                uploadMetrics.stop(phase, UploadMetrics.DOWNLOAD, "xlsx", "highlight");
+                return domDownload(workbook);
+            }
+
+            FormulaEvaluator evaluator = newFormulaEvaluator(workbook, UploadMetrics.DOWNLOAD);
             DataFormatter dataFormatter = new DataFormatter();
 
             int sheetCount = workbook.getNumberOfSheets();
@@ -316,56 +870,72 @@ public class ExcelService {
                 throw new Exception("No header row found in sheet");
             }
 
-            // Build column data and get validation errors
-            Map<String, List<String>> columnData = new LinkedHashMap<>();
-            Map<String, Integer> columnIndexMap = new LinkedHashMap<>();
-
-            int maxColumns = headerRow.getLastCellNum();
-            int lastDataRow = findLastNonEmptyRow(sheetToRead, maxColumns, dataFormatter, evaluator);
-
-            for (int colIndex = 0; colIndex < maxColumns; colIndex++) {
-                Cell headerCell = headerRow.getCell(colIndex, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-                String colName = headerCell.toString().trim();
-                if (colName.isEmpty()) {
-                    colName = "Column_" + (colIndex + 1);
-                }
-                columnIndexMap.put(colName, colIndex);
-                List<String> colValues = new ArrayList<>();
-                for (int rowIndex = 1; rowIndex <= lastDataRow; rowIndex++) {
-                    Row row = sheetToRead.getRow(rowIndex);
-                    Cell cell = (row == null) ? null : row.getCell(colIndex, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-                    String value = (cell == null) ? "" : dataFormatter.formatCellValue(cell, evaluator).trim();
-                    colValues.add(value);
-                }
-                columnData.put(colName, colValues);
-            }
+            // Build column data in one pass over the rows
+            SheetScan scan = SheetScan.scan(sheetToRead, dataFormatter, evaluator, this::newColumn, colName -> null);
+            phase = uploadMetrics.stop(phase, UploadMetrics.DOWNLOAD, "xlsx", "scan");
 
             // Get detailed validation errors (no auto-fill happens here)
-            List<ValidationError> detailedErrors = getDetailedValidationErrors(columnData, columnIndexMap);
+            List<ValidationError> detailedErrors = getDetailedValidationErrors(scan.columnData, scan.columnIndexMap);
+            phase = uploadMetrics.stop(phase, UploadMetrics.DOWNLOAD, "xlsx", "validate");
 
             // Apply highlighting and comments for only validation errors (red)
             applyErrorHighlighting(workbook, sheetToRead, detailedErrors);
-
-            // Write modified workbook to byte array
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            workbook.write(outputStream);
-            return outputStream.toByteArray();
+            uploadMetrics.stop(phase, UploadMetrics.DOWNLOAD, "xlsx", "highlight");
+            return domDownload(workbook);
+        } catch (Exception e) {
+            workbook.close();
+            throw e;
         }
     }
 
+    /**
+     * {@link #prepareErrorHighlightedExcel(String)} and write the result to {@code out} in one go.
+     */
+    public void generateErrorHighlightedExcel(String fileId, OutputStream out) throws Exception {
+        prepareErrorHighlightedExcel(fileId).writeTo(out);
+    }
+
+    private HighlightedExcel streamingDownload(StreamingHighlightWriter.StoredPackage stored, List<ValidationError> errors) {
+        return out -> {
+            Timer.Sample phase = uploadMetrics.start();
+            streamingHighlightWriter.write(stored, errors, out);
+            uploadMetrics.stop(phase, UploadMetrics.DOWNLOAD, "xlsx", "write");
+        };
+    }
+
+    private HighlightedExcel domDownload(Workbook workbook) {
+        // Write modified workbook straight to the caller's stream
+        return out -> {
+            try (workbook) {
+                Timer.Sample phase = uploadMetrics.start();
+                workbook.write(out);
+                uploadMetrics.stop(phase, UploadMetrics.DOWNLOAD, "xlsx", "write");
+            }
+        };
+    }
+
     /**
      * Apply error highlighting and comments to Excel cells - FIXED VERSION
+     * In errors-sheet mode (excel.error-highlight.mode) the cells are only filled and the
+     * errors are listed on a separate sheet instead of in comments. In ranges fill mode
+     * (excel.error-highlight.fill) the fill is a few conditional formats over coalesced runs
+     * of error cells instead of a style change per cell.
      */
     private void applyErrorHighlighting(Workbook workbook, Sheet sheet, List<ValidationError> errors) {
         if (errors == null || errors.isEmpty()) return;
 
-        // Create ONE red background style and reuse it
-        CellStyle errorStyle = workbook.createCellStyle();
-        errorStyle.setFillForegroundColor(IndexedColors.RED.getIndex());
-        errorStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        // Styles are pooled per (original style, fill colour)
+        CellStylePool stylePool = new CellStylePool(workbook);
+
+        int errorCells = 0;
+        for (ValidationError error : errors) {
+            if (StreamingHighlightWriter.hasCell(error)) errorCells++;
+        }
+        boolean comments = validationConfig.getErrorHighlight().useComments(errorCells);
+        boolean fillRanges = validationConfig.getErrorHighlight().getFill() == ExcelValidationConfig.ErrorHighlightConfig.FillMode.RANGES;
 
         // Create drawing patriarch for comments
-        Drawing<?> drawing = sheet.createDrawingPatriarch();
+        Drawing<?> drawing = comments ? sheet.createDrawingPatriarch() : null;
         CreationHelper creationHelper = workbook.getCreationHelper();
 
         System.out.println("Applying highlighting for " + errors.size() + " errors");
@@ -377,6 +947,7 @@ public class ExcelService {
                 System.out.println("Skipping error for missing column or invalid position: " + error.getMessage());
                 continue;
             }
+            if (fillRanges && !comments) continue; // nothing to do per cell
 
             int rowIndex = error.getRowNumber(); // 1-based Excel row number
             int zeroBasedRowIndex = rowIndex - 1;
@@ -397,17 +968,12 @@ public class ExcelService {
             }
 
             try {
-                // Clone the existing cell style and add red background
-                CellStyle newStyle = workbook.createCellStyle();
-                if (cell.getCellStyle() != null) {
-                    newStyle.cloneStyleFrom(cell.getCellStyle());
+                // Red variant of the existing cell style, cloned once per distinct style
+                if (!fillRanges) {
+                    cell.setCellStyle(stylePool.withSolidFill(cell.getCellStyle(), IndexedColors.RED.getIndex()));
+                    System.out.println("Applied red background to cell at column " + colIndex + ", row " + zeroBasedRowIndex);
                 }
-                newStyle.setFillForegroundColor(IndexedColors.RED.getIndex());
-                newStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-                // Apply the style
-                cell.setCellStyle(newStyle);
-                System.out.println("Applied red background to cell at column " + colIndex + ", row " + zeroBasedRowIndex);
+                if (!comments) continue;
 
                 // Add comment with error message
                 ClientAnchor anchor = creationHelper.createClientAnchor();
@@ -431,6 +997,73 @@ public class ExcelService {
                 e.printStackTrace();
             }
         }
+
+        if (fillRanges) {
+            highlightRanges(sheet, errors);
+        }
+        if (!comments) {
+            addErrorsSheet(workbook, sheet.getSheetName(), errors);
+        }
+    }
+
+    /**
+     * Fill the error cells red with always-true conditional formats over runs of adjacent error cells.
+     */
+    private void highlightRanges(Sheet sheet, List<ValidationError> errors) {
+        List<CellRangeAddress> ranges = ErrorRanges.coalesce(errors);
+        if (ranges.isEmpty()) return;
+
+        SheetConditionalFormatting formatting = sheet.getSheetConditionalFormatting();
+        ConditionalFormattingRule rule = formatting.createConditionalFormattingRule("TRUE");
+        PatternFormatting fill = rule.createPatternFormatting();
+        fill.setFillBackgroundColor(IndexedColors.RED.getIndex());
+        fill.setFillPattern(PatternFormatting.SOLID_FOREGROUND);
+
+        int chunk = StreamingHighlightWriter.RANGES_PER_CONDITIONAL_FORMAT;
+        for (int from = 0; from < ranges.size(); from += chunk) {
+            List<CellRangeAddress> block = ranges.subList(from, Math.min(ranges.size(), from + chunk));
+            formatting.addConditionalFormatting(block.toArray(new CellRangeAddress[0]), rule);
+        }
+    }
+
+    /**
+     * List the errors on a new sheet, one row each, with a link from the cell reference to the failing cell.
+     */
+    private void addErrorsSheet(Workbook workbook, String dataSheetName, List<ValidationError> errors) {
+        List<String> sheetNames = new ArrayList<>();
+        for (Sheet existing : workbook) sheetNames.add(existing.getSheetName());
+        Sheet errorsSheet = workbook.createSheet(StreamingHighlightWriter.uniqueSheetName(
+                sheetNames, validationConfig.getErrorHighlight().getErrorsSheetName()));
+        CreationHelper creationHelper = workbook.getCreationHelper();
+
+        Row headerRow = errorsSheet.createRow(0);
+        for (int i = 0; i < StreamingHighlightWriter.ERRORS_SHEET_HEADERS.length; i++) {
+            headerRow.createCell(i).setCellValue(StreamingHighlightWriter.ERRORS_SHEET_HEADERS[i]);
+            errorsSheet.setColumnWidth(i, StreamingHighlightWriter.ERRORS_SHEET_WIDTHS[i] * 256);
+        }
+        errorsSheet.createFreezePane(0, 1);
+
+        int listed = Math.min(errors.size(), StreamingHighlightWriter.MAX_ERRORS_SHEET_ROWS - 1);
+        for (int i = 0; i < listed; i++) {
+            ValidationError error = errors.get(i);
+            Row row = errorsSheet.createRow(i + 1);
+            if (StreamingHighlightWriter.hasCell(error)) {
+                String ref = StreamingHighlightWriter.cellRef(error);
+                Cell refCell = row.createCell(0);
+                refCell.setCellValue(ref);
+                Hyperlink link = creationHelper.createHyperlink(HyperlinkType.DOCUMENT);
+                link.setAddress(StreamingHighlightWriter.cellLocation(dataSheetName, ref));
+                refCell.setHyperlink(link);
+                row.createCell(1).setCellValue(error.getRowNumber());
+            }
+            row.createCell(2).setCellValue(error.getColumnName());
+            row.createCell(3).setCellValue(error.getCellValue());
+            row.createCell(4).setCellValue(error.getMessage());
+        }
+        if (listed < errors.size()) {
+            errorsSheet.createRow(listed + 1).createCell(4)
+                    .setCellValue("... and " + (errors.size() - listed) + " more errors");
+        }
     }
 
     /**
@@ -439,51 +1072,69 @@ public class ExcelService {
     private List<ValidationError> getDetailedValidationErrors(Map<String, List<String>> columnData,
                                                               Map<String, Integer> columnIndexMap) {
         List<ValidationError> detailedErrors = new ArrayList<>();
-        Map<String, ColumnValidationRule> rules = validationConfig.getValidations();
-
-        if (rules == null) rules = Collections.emptyMap();
 
         System.out.println("Getting detailed validation errors for " + columnData.size() + " columns");
 
+        // Excel row number (1-based + header)
+        for (ValidationExecutor.ColumnResult result : validateColumns(columnData, columnIndexMap, 2, ErrorBudget.unlimited())) {
+            detailedErrors.addAll(result.getDetailedErrors());
+        }
+
+        System.out.println("Total detailed errors found: " + detailedErrors.size());
+        return detailedErrors;
+    }
+
+    /**
+     * Validate every column that has a rule on the validation pool.
+     * Results come back in column order, each in row order. No column builds more errors than
+     * the budget can report; with fail-fast and a file limit the columns are validated one after
+     * the other and the rest are skipped once the limit is reached.
+     */
+    private List<ValidationExecutor.ColumnResult> validateColumns(Map<String, List<String>> columnData,
+                                                                   Map<String, Integer> columnIndexMap,
+                                                                   int firstRowNumber,
+                                                                   ErrorBudget errorBudget) {
+        List<ValidationExecutor.ColumnSlice> slices = new ArrayList<>();
         for (Map.Entry<String, List<String>> entry : columnData.entrySet()) {
             String colName = entry.getKey();
-            List<String> values = entry.getValue();
             Integer colIndex = columnIndexMap.get(colName);
 
             if (colIndex == null) colIndex = -1;
 
-            // Use normalized lookup
-            ColumnValidationRule rule = getRuleForColumnName(colName);
-            System.out.println("Column: " + colName + ", Rule: " + (rule != null ? rule.getType() : "none"));
-
-            if (rule != null) {
-                for (int i = 0; i < values.size(); i++) {
-                    String value = values.get(i);
-                    int displayRowNum = i + 2; // Excel row number (1-based + header)
-
-                    List<String> cellErrors = new ArrayList<>();
-                    validateCellDetailed(value, rule, cellErrors);
-
-                    if (!cellErrors.isEmpty()) {
-                        System.out.println("Found errors in column " + colName + ", row " + displayRowNum + ", value: '" + value + "'");
-                        System.out.println("Errors: " + cellErrors);
-                    }
-
-                    for (String errorMsg : cellErrors) {
-                        detailedErrors.add(new ValidationError(
-                                colName,
-                                displayRowNum,
-                                colIndex,
-                                "Row " + displayRowNum + ": " + colName + " " + errorMsg,
-                                value
-                        ));
-                    }
-                }
+            // Use normalized rule lookup, resolved once per column
+            ColumnValidator validator = getValidatorForColumnName(colName);
+            if (validator != null) {
+                slices.add(new ValidationExecutor.ColumnSlice(colName, colIndex, validator, entry.getValue(), firstRowNumber,
+                        errorBudget.sliceLimit(), errorBudget.isFailFast()));
             }
         }
+        if (!errorBudget.isFailFast() || !errorBudget.hasFileLimit()) {
+            return validationExecutor.validateColumns(slices);
+        }
 
-        System.out.println("Total detailed errors found: " + detailedErrors.size());
-        return detailedErrors;
+        List<ValidationExecutor.ColumnResult> results = new ArrayList<>(slices.size());
+        long found = 0;
+        for (ValidationExecutor.ColumnSlice slice : slices) {
+            ValidationExecutor.ColumnResult result = validationExecutor.validateColumns(Collections.singletonList(slice)).get(0);
+            results.add(result);
+            found += result.getFoundCount();
+            if (errorBudget.isFileLimitReached(found)) {
+                errorBudget.stop();
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * True when the upload's errors were all reported, i.e. they can be stored for the highlighted download.
+     */
+    private static boolean isComplete(ErrorBudget errorBudget) {
+        return errorBudget.getTruncated() == 0 && !errorBudget.isStopped();
+    }
+
+    private static boolean isComplete(ExcelInfoResponse response) {
+        return response.getTruncatedErrorCount() == 0 && !response.isValidationStopped();
     }
 
     /**
@@ -497,58 +1148,56 @@ public class ExcelService {
                                                      String fileType) {
         List<String> errors = new ArrayList<>();
         List<ValidationError> detailedErrors = new ArrayList<>();
-        Map<String, ColumnValidationRule> rules = validationConfig.getValidations();
-        List<String> requiredColsFromConfig = validationConfig.getRequiredColumns();
-
-        // Build normalized header set from provided columnData keys
-        Set<String> normalizedHeaders = new HashSet<>();
-        for (String header : columnData.keySet()) {
-            normalizedHeaders.add(normalizeForCompare(header));
-        }
+        ErrorBudget errorBudget = ErrorBudget.of(validationConfig.getErrorLimits());
 
         // 1) Check required columns presence (configurable)
-        if (requiredColsFromConfig != null) {
-            for (String required : requiredColsFromConfig) {
-                if (required == null || required.trim().isEmpty()) continue;
-                String reqNorm = normalizeForCompare(required);
-                if (!normalizedHeaders.contains(reqNorm)) {
-                    String missingError = "Missing required column: " + required;
-                    errors.add(missingError);
-                    detailedErrors.add(new ValidationError(required, 0, -1, missingError, null));
-                }
-            }
-        }
+        checkRequiredColumns(columnData.keySet(), errors, detailedErrors, errorBudget);
 
         // 2) Validate each column by rule (if rule exists)
-        if (rules == null) rules = Collections.emptyMap();
-        for (Map.Entry<String, List<String>> entry : columnData.entrySet()) {
-            String colName = entry.getKey();
-            List<String> values = entry.getValue();
-            Integer colIndex = columnIndexMap.get(colName);
+        int firstRowNumber = ("json".equals(fileType)) ? 1 : 2;
+        for (ValidationExecutor.ColumnResult result : validateColumns(columnData, columnIndexMap, firstRowNumber, errorBudget)) {
+            errorBudget.addAll(result, errors, detailedErrors);
+        }
 
-            if (colIndex == null) colIndex = -1;
+        uploadMetrics.recordSize(fileType, rowCount(columnData), columnData.size());
+        uploadMetrics.recordErrors(errorBudget, this::getRuleForColumnName);
 
-            // Use normalized rule lookup
-            ColumnValidationRule rule = getRuleForColumnName(colName);
+        ExcelInfoResponse response = new ExcelInfoResponse(sheetCount, sheetNames, columnData, errors, detailedErrors, null, fileType);
+        response.setTruncatedErrorCount(errorBudget.getTruncated());
+        response.setValidationStopped(errorBudget.isStopped());
+        return response;
+    }
 
-            if (rule != null) {
-                for (int i = 0; i < values.size(); i++) {
-                    String value = values.get(i);
-                    int displayRowNum = ("json".equals(fileType)) ? (i + 1) : (i + 2);
+    private static int rowCount(Map<String, List<String>> columnData) {
+        return columnData.isEmpty() ? 0 : columnData.values().iterator().next().size();
+    }
 
-                    List<String> cellErrors = new ArrayList<>();
-                    validateCellDetailed(value, rule, cellErrors);
+    /**
+     * Report configured required columns that are absent from the given headers.
+     */
+    private void checkRequiredColumns(Collection<String> headers, List<String> errors, List<ValidationError> detailedErrors,
+                                      ErrorBudget errorBudget) {
+        List<String> requiredColsFromConfig = validationConfig.getRequiredColumns();
+        if (requiredColsFromConfig == null) return;
 
-                    for (String errorMsg : cellErrors) {
-                        String fullErrorMsg = "Row " + displayRowNum + ": " + colName + " " + errorMsg;
-                        errors.add(fullErrorMsg);
-                        detailedErrors.add(new ValidationError(colName, displayRowNum, colIndex, fullErrorMsg, value));
-                    }
+        // Build normalized header set from provided headers
+        Set<String> normalizedHeaders = new HashSet<>();
+        for (String header : headers) {
+            normalizedHeaders.add(normalizeForCompare(header));
+        }
+
+        for (String required : requiredColsFromConfig) {
+            if (required == null || required.trim().isEmpty()) continue;
+            String reqNorm = normalizeForCompare(required);
+            if (!normalizedHeaders.contains(reqNorm)) {
+                String missingError = "Missing required column: " + required;
+                ValidationError error = new ValidationError(required, 0, -1, missingError, null);
+                if (errorBudget.admit(error)) {
+                    errors.add(missingError);
+                    detailedErrors.add(error);
                 }
             }
         }
-
-        return new ExcelInfoResponse(sheetCount, sheetNames, columnData, errors, detailedErrors, null, fileType);
     }
 
     /**
@@ -559,198 +1208,44 @@ public class ExcelService {
     }
 
     /**
-     * Normalization for header/rule matching:
-     * - replace underscores with spaces and spaces with underscores for bidirectional matching
-     * - remove punctuation (non alnum/space/underscore)
-     * - collapse multiple spaces and lowercase
+     * Return the compiled validator for a column header, or null when no rule applies.
      */
-    private String normalizeForCompare(String s) {
-        if (s == null) return "";
-        String cleaned = s.replaceAll("[^A-Za-z0-9 _]+", "") // Keep only alphanumeric, spaces, and underscores
-                .trim()
-                .replaceAll("\\s{2,}", " ") // Collapse multiple spaces
-                .toLowerCase(Locale.ROOT);
-        return cleaned;
+    private ColumnValidator getValidatorForColumnName(String columnHeader) {
+        return validationPlan.validatorFor(findRuleForColumn(columnHeader));
     }
 
     /**
-     * Enhanced rule lookup that tries multiple normalization strategies
+     * Normalization for header/rule matching (see HeaderResolver.normalize)
      */
-    private ColumnValidationRule findRuleForColumn(String columnHeader) {
-        if (columnHeader == null) return null;
-
-        String normalized = normalizeForCompare(columnHeader);
-
-        // Strategy 1: Direct normalized lookup
-        ColumnValidationRule rule = normalizedRules.get(normalized);
-        if (rule != null) {
-            System.out.println("Found rule for '" + columnHeader + "' using direct lookup: " + normalized);
-            return rule;
-        }
-
-        // Strategy 2: Try with spaces replaced by underscores
-        String withUnderscores = normalized.replace(' ', '_');
-        rule = normalizedRules.get(withUnderscores);
-        if (rule != null) {
-            System.out.println("Found rule for '" + columnHeader + "' using underscore replacement: " + withUnderscores);
-            return rule;
-        }
-
-        // Strategy 3: Try with underscores replaced by spaces
-        String withSpaces = normalized.replace('_', ' ');
-        rule = normalizedRules.get(withSpaces);
-        if (rule != null) {
-            System.out.println("Found rule for '" + columnHeader + "' using space replacement: " + withSpaces);
-            return rule;
-        }
-
-        // Strategy 4: Try exact match with original keys (case insensitive)
-        for (Map.Entry<String, ColumnValidationRule> entry : normalizedRules.entrySet()) {
-            if (entry.getKey().equalsIgnoreCase(columnHeader)) {
-                System.out.println("Found rule for '" + columnHeader + "' using case-insensitive exact match");
-                return entry.getValue();
-            }
-        }
-
-        System.out.println("No rule found for column: '" + columnHeader + "' (normalized: '" + normalized + "')");
-        System.out.println("Available rules: " + normalizedRules.keySet());
-        return null;
+    String normalizeForCompare(String s) {
+        return HeaderResolver.normalize(s);
     }
 
     /**
-     * Helper that finds the last non-empty row index (1-based row index values) for data.
-     * Returns 0 if no data rows found (i.e., only header exists).
-     *
-     * We inspect displayed cell text using DataFormatter + FormulaEvaluator to match what the user sees.
-     */
-    private int findLastNonEmptyRow(Sheet sheet, int maxColumns, DataFormatter formatter, FormulaEvaluator evaluator) {
-        int lastRowNum = sheet.getLastRowNum();
-        for (int r = lastRowNum; r >= 1; r--) { // start from bottom, ignore header row (0)
-            Row row = sheet.getRow(r);
-            if (row == null) continue;
-            boolean anyNonEmpty = false;
-            for (int c = 0; c < maxColumns; c++) {
-                Cell cell = row.getCell(c, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-                String text = formatter.formatCellValue(cell, evaluator);
-                if (text != null && !text.trim().isEmpty()) {
-                    anyNonEmpty = true;
-                    break;
-                }
-            }
-            if (anyNonEmpty) {
-                return r; // r is 0-based index; we use it in loops as 1..r
-            }
-        }
-        return 0;
+     * Rule lookup through the shared header cache (see HeaderResolver)
+     */
+    ColumnValidationRule findRuleForColumn(String columnHeader) {
+        return headerResolver.resolve(columnHeader);
     }
 
     /**
-     * Enhanced cell validation that collects all errors for a single cell
-     *
-     * Supported rule types:
-     * - number   : numeric (accepts commas), floats like 0.02, 0.2833294
-     * - percent  : requires trailing % e.g. 12.00% (validator expects % in the string)
-     * - currency : numeric with commas allowed e.g. 86,000,000.00
-     * - date     : validated with rule.format (SimpleDateFormat)
-     * - text     : validated with regex if provided
-     */
-    private void validateCellDetailed(String value, ColumnValidationRule rule, List<String> errors) {
-        // Required check
-        if (rule.isRequired() && (value == null || value.trim().isEmpty())) {
-            errors.add("is required");
-            return;
-        }
-
-        // Skip further checks if empty and not required
-        if (value == null || value.trim().isEmpty()) return;
-
-        String type = (rule.getType() == null) ? "" : rule.getType().toLowerCase(Locale.ROOT);
-        switch (type) {
-            case "number": {
-                String normalized = value.trim().replaceAll(",", "");
-                if (normalized.endsWith("%")) {
-                    errors.add("must be a numeric value (no % sign)");
-                    return;
-                }
-                try {
-                    double num = Double.parseDouble(normalized);
-                    if (rule.getMin() != null && num < rule.getMin()) {
-                        errors.add("must be >= " + rule.getMin());
-                    }
-                    if (rule.getMax() != null && num > rule.getMax()) {
-                        errors.add("must be <= " + rule.getMax());
-                    }
-                } catch (NumberFormatException e) {
-                    errors.add("must be a number");
-                }
-                break;
-            }
-
-            case "percent": {
-                String v = value.trim();
-                if (!v.endsWith("%")) {
-                    errors.add("must be a percentage string ending with % (e.g. 12.00%)");
-                    break;
-                }
-                String numericPart = v.substring(0, v.length() - 1).trim().replaceAll(",", "");
-                try {
-                    double num = Double.parseDouble(numericPart);
-                    if (rule.getMin() != null && num < rule.getMin()) {
-                        errors.add("must be >= " + rule.getMin() + "%");
-                    }
-                    if (rule.getMax() != null && num > rule.getMax()) {
-                        errors.add("must be <= " + rule.getMax() + "%");
-                    }
-                } catch (NumberFormatException e) {
-                    errors.add("must be a percentage number like 12.00%");
-                }
-                break;
-            }
-
-            case "currency": {
-                String normalized = value.trim().replaceAll(",", "");
-                try {
-                    double num = Double.parseDouble(normalized);
-                    if (rule.getMin() != null && num < rule.getMin()) {
-                        errors.add("must be >= " + rule.getMin());
-                    }
-                    if (rule.getMax() != null && num > rule.getMax()) {
-                        errors.add("must be <= " + rule.getMax());
-                    }
-                } catch (NumberFormatException e) {
-                    errors.add("must be a currency numeric value (e.g. 86,000,000.00)");
-                }
-                break;
-            }
-
-            case "date": {
-                String format = rule.getFormat();
-                if (format == null || format.trim().isEmpty()) {
-                    errors.add("date format not specified in configuration");
-                    return;
-                }
-
-                try {
-                    SimpleDateFormat sdf = new SimpleDateFormat(format);
-                    sdf.setLenient(false);
-                    sdf.parse(value.trim());
-                } catch (Exception e) {
-                    errors.add("must match date format " + format + " (current value: '" + value + "')");
-                }
-                break;
-            }
-
-            case "text": {
-                if (rule.getRegex() != null && !rule.getRegex().isEmpty()) {
-                    if (!value.matches(rule.getRegex())) {
-                        errors.add("format is invalid");
-                    }
-                }
-                break;
-            }
+     * Empty value list for a column, stored by the type of its rule (see TypedColumn)
+     */
+    private List<String> newColumn(String columnHeader) {
+        return TypedColumn.forValidator(getValidatorForColumnName(columnHeader));
+    }
 
-            default:
-                break;
+    /**
+     * Validator of every column of a header row for one upload (null where no rule applies);
+     * text columns remember the result of each distinct value (see ColumnValidator.forUpload)
+     */
+    private ColumnValidator[] getValidatorsForHeaders(String[] columnNames) {
+        ColumnValidationRule[] rules = headerResolver.resolve(columnNames);
+        ColumnValidator[] validators = new ColumnValidator[rules.length];
+        for (int colIndex = 0; colIndex < rules.length; colIndex++) {
+            ColumnValidator validator = validationPlan.validatorFor(rules[colIndex]);
+            validators[colIndex] = (validator != null) ? validator.forUpload() : null;
         }
+        return validators;
     }
-}
\ No newline at end of file
+}
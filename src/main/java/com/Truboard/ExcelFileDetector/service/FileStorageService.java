@@ -1,86 +1,306 @@
 package com.Truboard.ExcelFileDetector.service;
 
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
+/**
+ * Two-tier file store: uploads are kept on-heap until the configured memory limit
+ * (excel.storage.memory-limit) is exceeded, then the least recently used entries are
+ * spilled to excel.storage.spill-directory and served from disk from then on. Uploads that
+ * were streamed to a file (see createTempFile) are stored in the disk tier directly.
+ * The validation errors kept with a file (see StoredErrors) count towards the memory limit too
+ * and are spilled along with the content, also for files that are already on disk.
+ * Every entry expires exactly excel.storage.expiry after it was stored.
+ *
+ * Each instance works in its own storage-<pid>-* subdirectory of the spill directory, so
+ * processes sharing it never touch each other's files. Subdirectories left behind by a
+ * process that is gone (a crash skips shutdown) are removed when the next instance starts.
+ */
 @Service
 public class FileStorageService {
 
+    private static final Logger log = LoggerFactory.getLogger(FileStorageService.class);
+
+    private static final String PROCESS_DIRECTORY_PREFIX = "storage-";
+
     private static class FileData {
-        private final byte[] content;
+        private final String fileId;
         private final String originalFileName;
         private final String contentType;
         private final long timestamp;
+        private final long size;
+        // Validation result from upload (null when the file was stored without one)
+        private final String sheetName;
+        private final long errorsBytes;
 
-        public FileData(byte[] content, String originalFileName, String contentType) {
+        // Exactly one of content / spillFile is set once the entry is settled,
+        // and at most one of errors / errorsFile
+        private volatile byte[] content;
+        private volatile Path spillFile;
+        private volatile StoredErrors errors;
+        private volatile Path errorsFile;
+        private volatile long errorsFileBytes;
+        private volatile long lastAccess;
+        private boolean spilling; // guarded by evictionLock
+        private ScheduledFuture<?> expiryTask;
+
+        public FileData(String fileId, byte[] content, Path spillFile, long size, String originalFileName,
+                        String contentType, String sheetName, StoredErrors errors) {
+            this.fileId = fileId;
             this.content = content;
+            this.spillFile = spillFile;
+            this.size = size;
             this.originalFileName = originalFileName;
             this.contentType = contentType;
             this.timestamp = System.currentTimeMillis();
+            this.lastAccess = timestamp;
+            this.sheetName = sheetName;
+            this.errors = errors;
+            this.errorsBytes = (errors != null) ? errors.heapBytes() : 0;
+        }
+
+        public byte[] getContent() {
+            byte[] bytes = content;
+            if (bytes != null) return bytes;
+            try {
+                return Files.readAllBytes(spillFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Stored file " + fileId + " could not be read from disk", e);
+            }
+        }
+
+        public InputStream openContent() throws IOException {
+            byte[] bytes = content;
+            return (bytes != null) ? new ByteArrayInputStream(bytes) : Files.newInputStream(spillFile);
         }
 
-        public byte[] getContent() { return content; }
+        /**
+         * Errors are rebuilt from their compact form (read back from disk if they were spilled).
+         */
+        public List<ValidationError> getValidationErrors() {
+            StoredErrors stored = errors;
+            if (stored != null) return stored.toList();
+            Path file = errorsFile;
+            if (file == null) return null;
+            try {
+                return StoredErrors.read(file).toList();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Validation errors of stored file " + fileId + " could not be read from disk", e);
+            }
+        }
+
+        public boolean isResident() { return content != null; }
+
+        /**
+         * Heap held by the entry: its content and its errors, as far as they are not spilled.
+         */
+        private long residentSize() {
+            return ((content != null) ? size : 0) + ((errors != null) ? errorsBytes : 0);
+        }
         public String getOriginalFileName() { return originalFileName; }
         public String getContentType() { return contentType; }
         public long getTimestamp() { return timestamp; }
+        public String getSheetName() { return sheetName; }
     }
 
     private final ConcurrentHashMap<String, FileData> fileStorage = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private final long memoryLimitBytes;
+    private final long expiryMillis;
+    private final Path spillDirectory;
+
+    private final Object evictionLock = new Object();
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public FileStorageService(ExcelValidationConfig config, MeterRegistry meterRegistry) throws IOException {
+        ExcelValidationConfig.StorageConfig storageConfig = config.getStorage();
+        this.memoryLimitBytes = storageConfig.getMemoryLimit().toBytes();
+        this.expiryMillis = storageConfig.getExpiry().toMillis();
+        Path baseDirectory = (storageConfig.getSpillDirectory() == null || storageConfig.getSpillDirectory().isBlank())
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "excel-file-storage")
+                : Paths.get(storageConfig.getSpillDirectory());
+        Files.createDirectories(baseDirectory);
+        removeAbandonedDirectories(baseDirectory);
+        this.spillDirectory = Files.createTempDirectory(baseDirectory,
+                PROCESS_DIRECTORY_PREFIX + ProcessHandle.current().pid() + "-");
 
-    // Clean up files older than 1 hour
-    private static final long FILE_EXPIRY_TIME = 60 * 60 * 1000; // 1 hour in milliseconds
+        // One timer per entry; cancelled timers are dropped right away
+        this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "file-storage-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
 
-    public FileStorageService() {
-        // Schedule cleanup task to run every 30 minutes
-        scheduler.scheduleAtFixedRate(this::cleanupExpiredFiles, 30, 30, TimeUnit.MINUTES);
+        Gauge.builder("excel.storage.resident.bytes", residentBytes, AtomicLong::get)
+                .description("Bytes of stored files held on-heap").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("excel.storage.spilled.bytes", spilledBytes, AtomicLong::get)
+                .description("Bytes of stored files kept on disk").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("excel.storage.files", fileStorage, ConcurrentHashMap::size)
+                .description("Number of stored files").register(meterRegistry);
+        FunctionCounter.builder("excel.storage.evictions", evictionCount, AtomicLong::get)
+                .description("Stored files moved from memory to disk").register(meterRegistry);
     }
 
     /**
      * Store uploaded file and return unique file ID
      */
     public String storeFile(MultipartFile file) throws IOException {
-        String fileId = UUID.randomUUID().toString();
-        byte[] content = file.getBytes();
-        String originalFileName = file.getOriginalFilename();
-        String contentType = file.getContentType();
+        return store(file.getBytes(), file.getOriginalFilename(), file.getContentType(), null, null);
+    }
 
-        fileStorage.put(fileId, new FileData(content, originalFileName, contentType));
-        return fileId;
+    /**
+     * Store file content that is already in memory under its own content type
+     */
+    public String storeFile(String fileName, byte[] fileContent, String contentType) {
+        return store(fileContent, fileName, contentType, null, null);
     }
 
     /**
      * Store processed file content (for modified Excel files)
      */
     public String storeFile(String fileName, byte[] fileContent) {
+        return storeFile(fileName, fileContent, null, null);
+    }
+
+    /**
+     * Store processed file content together with the validation result computed at upload,
+     * so downloads can highlight the errors without re-parsing and re-validating the file.
+     */
+    public String storeFile(String fileName, byte[] fileContent, String sheetName, List<ValidationError> validationErrors) {
+        StoredErrors errors = (validationErrors == null) ? null : StoredErrors.of(validationErrors);
+        return store(fileContent, fileName, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+                sheetName, errors);
+    }
+
+    /**
+     * Store a file that is already on disk (see createTempFile) without reading it into memory.
+     * The storage takes ownership of the file: it is moved into the spill directory and deleted
+     * when the entry is removed or expires.
+     */
+    public String storeFile(String fileName, Path file, String sheetName, List<ValidationError> validationErrors) throws IOException {
+        return storeFile(fileName, file, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+                sheetName, validationErrors);
+    }
+
+    /**
+     * Same as {@link #storeFile(String, Path, String, List)} for a file of any content type.
+     */
+    public String storeFile(String fileName, Path file, String contentType, String sheetName,
+                            List<ValidationError> validationErrors) throws IOException {
         String fileId = UUID.randomUUID().toString();
-        fileStorage.put(fileId, new FileData(fileContent, fileName, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+        Path spillFile = file.toAbsolutePath().getParent().equals(spillDirectory.toAbsolutePath())
+                ? file
+                : Files.move(file, Files.createTempFile(spillDirectory, "upload-", ".bin"), StandardCopyOption.REPLACE_EXISTING);
+        StoredErrors errors = (validationErrors == null) ? null : StoredErrors.of(validationErrors);
+        FileData fileData = new FileData(fileId, null, spillFile, Files.size(spillFile), fileName,
+                contentType, sheetName, errors);
+
+        spilledBytes.addAndGet(fileData.size);
+        residentBytes.addAndGet(fileData.errorsBytes);
+        register(fileData);
+
+        if (residentBytes.get() > memoryLimitBytes) {
+            spillLeastRecentlyUsed();
+        }
         return fileId;
     }
 
+    /**
+     * Create an empty file in the storage directory, e.g. to receive an upload that is later
+     * handed over with storeFile(String, Path, ...). The caller deletes it if it is not stored.
+     */
+    public Path createTempFile() throws IOException {
+        return Files.createTempFile(spillDirectory, "upload-", ".bin");
+    }
+
+    private String store(byte[] content, String fileName, String contentType,
+                         String sheetName, StoredErrors errors) {
+        String fileId = UUID.randomUUID().toString();
+        FileData fileData = new FileData(fileId, content, null, content.length, fileName, contentType,
+                sheetName, errors);
+
+        residentBytes.addAndGet(fileData.residentSize());
+        register(fileData);
+
+        if (residentBytes.get() > memoryLimitBytes) {
+            spillLeastRecentlyUsed();
+        }
+        return fileId;
+    }
+
+    private void register(FileData fileData) {
+        fileStorage.put(fileData.fileId, fileData);
+        fileData.expiryTask = scheduler.schedule(() -> expire(fileData.fileId, fileData), expiryMillis, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Retrieve stored file by ID
      */
     public FileData getFile(String fileId) {
-        return fileStorage.get(fileId);
+        return touch(fileStorage.get(fileId));
     }
 
     /**
-     * Get file content as byte array
+     * Get file content as byte array (read back from disk if the file was spilled)
      */
     public byte[] getFileContent(String fileId) {
-        FileData fileData = fileStorage.get(fileId);
+        FileData fileData = touch(fileStorage.get(fileId));
         return fileData != null ? fileData.getContent() : null;
     }
 
+    /**
+     * Open the file content as a stream without materializing spilled files on the heap
+     */
+    public InputStream openFileContent(String fileId) throws IOException {
+        FileData fileData = touch(fileStorage.get(fileId));
+        if (fileData == null) {
+            throw new IOException("File not found or expired");
+        }
+        return fileData.openContent();
+    }
+
+    /**
+     * Disk copy of a spilled (or disk-tier) file, for readers that need random access;
+     * null when the file is held in memory or unknown.
+     */
+    public Path getSpilledFile(String fileId) {
+        FileData fileData = touch(fileStorage.get(fileId));
+        return (fileData != null && !fileData.isResident()) ? fileData.spillFile : null;
+    }
+
     /**
      * Get original file name
      */
@@ -97,11 +317,31 @@ public class FileStorageService {
         return fileData != null ? fileData.getContentType() : "application/octet-stream";
     }
 
+    /**
+     * Get the name of the validated sheet (null if the file was stored without a validation result)
+     */
+    public String getSheetName(String fileId) {
+        FileData fileData = fileStorage.get(fileId);
+        return fileData != null ? fileData.getSheetName() : null;
+    }
+
+    /**
+     * Get the detailed validation errors recorded at upload (null if none were recorded)
+     */
+    public List<ValidationError> getValidationErrors(String fileId) {
+        FileData fileData = fileStorage.get(fileId);
+        return fileData != null ? fileData.getValidationErrors() : null;
+    }
+
     /**
      * Remove file from storage
      */
     public void removeFile(String fileId) {
-        fileStorage.remove(fileId);
+        FileData fileData = fileStorage.remove(fileId);
+        if (fileData != null) {
+            if (fileData.expiryTask != null) fileData.expiryTask.cancel(false);
+            release(fileData);
+        }
     }
 
     /**
@@ -112,13 +352,132 @@ public class FileStorageService {
     }
 
     /**
-     * Clean up expired files
+     * Drop an entry once its own expiry time is reached
      */
-    private void cleanupExpiredFiles() {
-        long currentTime = System.currentTimeMillis();
-        fileStorage.entrySet().removeIf(entry ->
-                (currentTime - entry.getValue().getTimestamp()) > FILE_EXPIRY_TIME
-        );
+    private void expire(String fileId, FileData fileData) {
+        if (fileStorage.remove(fileId, fileData)) {
+            release(fileData);
+        }
+    }
+
+    private FileData touch(FileData fileData) {
+        if (fileData != null) fileData.lastAccess = System.currentTimeMillis();
+        return fileData;
+    }
+
+    /**
+     * Give back the memory or disk space of an entry that has left the map
+     */
+    private void release(FileData fileData) {
+        synchronized (evictionLock) {
+            if (fileData.content != null) {
+                residentBytes.addAndGet(-fileData.size);
+                fileData.content = null;
+            }
+            if (fileData.spillFile != null) {
+                spilledBytes.addAndGet(-fileData.size);
+                deleteQuietly(fileData.spillFile);
+            }
+            if (fileData.errors != null) {
+                residentBytes.addAndGet(-fileData.errorsBytes);
+                fileData.errors = null;
+            }
+            if (fileData.errorsFile != null) {
+                spilledBytes.addAndGet(-fileData.errorsFileBytes);
+                deleteQuietly(fileData.errorsFile);
+            }
+        }
+    }
+
+    /**
+     * Move least recently used in-memory entries to disk until resident bytes fit the limit.
+     * Victims are picked under the lock; the disk writes happen outside it.
+     */
+    private void spillLeastRecentlyUsed() {
+        List<FileData> victims = new ArrayList<>();
+        synchronized (evictionLock) {
+            long excess = residentBytes.get() - memoryLimitBytes;
+            if (excess <= 0) return;
+
+            List<FileData> candidates = new ArrayList<>();
+            for (FileData fileData : fileStorage.values()) {
+                if (fileData.residentSize() > 0 && !fileData.spilling) candidates.add(fileData);
+            }
+            candidates.sort(Comparator.comparingLong(f -> f.lastAccess));
+
+            for (FileData fileData : candidates) {
+                if (excess <= 0) break;
+                fileData.spilling = true;
+                victims.add(fileData);
+                excess -= fileData.residentSize();
+            }
+        }
+
+        for (FileData fileData : victims) {
+            spill(fileData);
+        }
+    }
+
+    private void spill(FileData fileData) {
+        byte[] bytes = fileData.content;
+        StoredErrors errors = fileData.errors;
+        Path spillFile = null;
+        Path errorsFile = null;
+        boolean written = false;
+        try {
+            if (bytes != null) {
+                spillFile = Files.createTempFile(spillDirectory, "upload-", ".bin");
+                Files.write(spillFile, bytes);
+            }
+            if (errors != null) {
+                errorsFile = Files.createTempFile(spillDirectory, "upload-", ".errors");
+                errors.write(errorsFile);
+            }
+            written = true;
+        } catch (IOException e) {
+            log.warn("Could not spill stored file {} to disk", fileData.fileId, e);
+        }
+
+        synchronized (evictionLock) {
+            fileData.spilling = false;
+            boolean current = written && fileStorage.get(fileData.fileId) == fileData;
+            // Readers see the files before the heap copies go away
+            if (current && spillFile != null && fileData.content != null) {
+                fileData.spillFile = spillFile;
+                fileData.content = null;
+                residentBytes.addAndGet(-fileData.size);
+                spilledBytes.addAndGet(fileData.size);
+                spillFile = null;
+            }
+            if (current && errorsFile != null && fileData.errors != null) {
+                fileData.errorsFile = errorsFile;
+                fileData.errorsFileBytes = sizeQuietly(errorsFile);
+                fileData.errors = null;
+                residentBytes.addAndGet(-fileData.errorsBytes);
+                spilledBytes.addAndGet(fileData.errorsFileBytes);
+                errorsFile = null;
+            }
+            if (current) evictionCount.incrementAndGet();
+        }
+        // Not written completely, or removed or expired while we were writing
+        if (spillFile != null) deleteQuietly(spillFile);
+        if (errorsFile != null) deleteQuietly(errorsFile);
+    }
+
+    private static long sizeQuietly(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete spilled file {}", path, e);
+        }
     }
 
     /**
@@ -127,4 +486,60 @@ public class FileStorageService {
     public int getStoredFileCount() {
         return fileStorage.size();
     }
-}
\ No newline at end of file
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        for (String fileId : new ArrayList<>(fileStorage.keySet())) {
+            removeFile(fileId);
+        }
+        try {
+            Files.deleteIfExists(spillDirectory);
+        } catch (IOException e) {
+            // Spooled uploads of requests still running; removed with the directory on a later start
+            log.debug("Spill directory {} not removed", spillDirectory, e);
+        }
+    }
+
+    /**
+     * Remove the storage-<pid>-* subdirectories of processes that are no longer running. A pid
+     * that has been reused since (a restarted container is pid 1 again) is recognised by its
+     * process having started after the directory was last written to.
+     */
+    private static void removeAbandonedDirectories(Path baseDirectory) throws IOException {
+        List<Path> abandoned = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(baseDirectory)) {
+            entries.filter(Files::isDirectory).forEach(directory -> {
+                String name = directory.getFileName().toString();
+                if (!name.startsWith(PROCESS_DIRECTORY_PREFIX)) return;
+                int end = name.indexOf('-', PROCESS_DIRECTORY_PREFIX.length());
+                if (end < 0) return;
+                long pid;
+                try {
+                    pid = Long.parseLong(name.substring(PROCESS_DIRECTORY_PREFIX.length(), end));
+                } catch (NumberFormatException e) {
+                    return;
+                }
+                if (!isOwnerRunning(pid, directory)) abandoned.add(directory);
+            });
+        }
+        for (Path directory : abandoned) {
+            log.info("Removing spill directory {} left by a process that is gone", directory);
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(FileStorageService::deleteQuietly);
+            }
+        }
+    }
+
+    private static boolean isOwnerRunning(long pid, Path directory) {
+        Optional<ProcessHandle> process = ProcessHandle.of(pid);
+        if (process.isEmpty()) return false;
+        Optional<Instant> started = process.get().info().startInstant();
+        if (started.isEmpty()) return true;
+        try {
+            return !Files.getLastModifiedTime(directory).toInstant().isBefore(started.get());
+        } catch (IOException e) {
+            return true;
+        }
+    }
+}
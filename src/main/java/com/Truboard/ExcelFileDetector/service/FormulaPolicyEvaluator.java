@@ -0,0 +1,133 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig.FormulaConfig.EvaluationMode;
+import io.micrometer.core.instrument.Counter;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * FormulaEvaluator for one loaded workbook that applies excel.formula.evaluation before
+ * recomputing anything:
+ * - CACHED: formula cells show the result Excel saved in the file (empty without one), nothing
+ *   is evaluated
+ * - MISSING: only formula cells saved without a result are evaluated (the result is then written
+ *   into the cell, so it is not evaluated again)
+ * - ALWAYS: every formula cell is evaluated, once per workbook
+ * DataFormatter only calls {@link #evaluateFormulaCell} and then formats the cell's (cached)
+ * result, so passing this instead of the workbook's evaluator is enough. Evaluations share the
+ * workbook evaluator and its cache of intermediate results; each cell actually evaluated is
+ * counted in excel.formula.evaluations.
+ */
+final class FormulaPolicyEvaluator implements FormulaEvaluator {
+
+    private final FormulaEvaluator delegate;
+    private final EvaluationMode mode;
+    private final Counter evaluations;
+    private final Set<Cell> evaluated = new HashSet<>(); // ALWAYS: cells already evaluated
+
+    FormulaPolicyEvaluator(Workbook workbook, EvaluationMode mode, Counter evaluations) {
+        this.delegate = workbook.getCreationHelper().createFormulaEvaluator();
+        this.mode = (mode != null) ? mode : EvaluationMode.MISSING;
+        this.evaluations = evaluations;
+    }
+
+    @Override
+    public CellType evaluateFormulaCell(Cell cell) {
+        if (cell == null || cell.getCellType() != CellType.FORMULA) {
+            return delegate.evaluateFormulaCell(cell);
+        }
+        boolean evaluate;
+        switch (mode) {
+            case CACHED:
+                evaluate = false;
+                break;
+            case ALWAYS:
+                evaluate = evaluated.add(cell);
+                break;
+            default:
+                evaluate = !hasCachedResult(cell);
+        }
+        if (!evaluate) {
+            // No saved result shows as an empty cell, as on the streaming path
+            return hasCachedResult(cell) ? cell.getCachedFormulaResultType() : CellType.BLANK;
+        }
+        evaluations.increment();
+        return delegate.evaluateFormulaCell(cell);
+    }
+
+    /**
+     * Whether the file holds a result for the formula cell ({@code <v>} of the cell XML).
+     */
+    private static boolean hasCachedResult(Cell cell) {
+        return !(cell instanceof XSSFCell) || ((XSSFCell) cell).getCTCell().isSetV();
+    }
+
+    /**
+     * A formula cell that has no result, neither saved in the file nor evaluated since.
+     */
+    static boolean isWithoutResult(Cell cell) {
+        return cell.getCellType() == CellType.FORMULA && !hasCachedResult(cell);
+    }
+
+    @Override
+    public CellValue evaluate(Cell cell) {
+        return delegate.evaluate(cell);
+    }
+
+    @Override
+    public Cell evaluateInCell(Cell cell) {
+        return delegate.evaluateInCell(cell);
+    }
+
+    @Override
+    public void evaluateAll() {
+        delegate.evaluateAll();
+    }
+
+    @Override
+    public void clearAllCachedResultValues() {
+        evaluated.clear();
+        delegate.clearAllCachedResultValues();
+    }
+
+    @Override
+    public void notifySetFormula(Cell cell) {
+        evaluated.remove(cell);
+        delegate.notifySetFormula(cell);
+    }
+
+    @Override
+    public void notifyDeleteCell(Cell cell) {
+        evaluated.remove(cell);
+        delegate.notifyDeleteCell(cell);
+    }
+
+    @Override
+    public void notifyUpdateCell(Cell cell) {
+        evaluated.remove(cell);
+        delegate.notifyUpdateCell(cell);
+    }
+
+    @Override
+    public void setupReferencedWorkbooks(Map<String, FormulaEvaluator> workbooks) {
+        delegate.setupReferencedWorkbooks(workbooks);
+    }
+
+    @Override
+    public void setIgnoreMissingWorkbooks(boolean ignore) {
+        delegate.setIgnoreMissingWorkbooks(ignore);
+    }
+
+    @Override
+    public void setDebugEvaluationOutputForNextEval(boolean value) {
+        delegate.setDebugEvaluationOutputForNextEval(value);
+    }
+}
@@ -0,0 +1,210 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ColumnValidationRule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maps column headers to the configured validation rules.
+ *
+ * Headers are matched after normalization (see {@link #normalize}) against several spellings of
+ * every configured key, e.g. "Joining_Date", "joining date" and "JOINING DATE" all find the
+ * JOINING_DATE rule. The outcome for each raw header, rule or no rule, is kept in a bounded
+ * cache shared by all uploads, so a header seen before costs one map probe. When the cache holds
+ * more than excel.header-cache.max-entries headers, the least recently used tenth is dropped.
+ */
+class HeaderResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(HeaderResolver.class);
+
+    // Normalized map for rule lookup: normalizedHeader -> ColumnValidationRule
+    private final Map<String, ColumnValidationRule> normalizedRules = new HashMap<>();
+
+    private final Map<String, Resolution> cache = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final AtomicLong clock = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * Outcome for one raw header; rule is null when no rule applies.
+     */
+    private static final class Resolution {
+        final ColumnValidationRule rule;
+        volatile long lastUse;
+
+        Resolution(ColumnValidationRule rule, long lastUse) {
+            this.rule = rule;
+            this.lastUse = lastUse;
+        }
+    }
+
+    HeaderResolver(Map<String, ColumnValidationRule> rules, int maxEntries, MeterRegistry meterRegistry) {
+        this.maxEntries = Math.max(1, maxEntries);
+
+        // Build normalized rules map for robust lookup (normalize keys like "Joining_Date" -> "joining date")
+        if (rules != null) {
+            for (Map.Entry<String, ColumnValidationRule> e : rules.entrySet()) {
+                String configuredKey = e.getKey(); // e.g. "ACQUISITION_DATE" or "PENAL_RATE"
+                ColumnValidationRule rule = e.getValue();
+
+                // Store multiple normalized versions of the same rule
+                String norm1 = normalize(configuredKey); // normalized
+                String norm2 = normalize(configuredKey.replace('_', ' ')); // spaces
+                String norm3 = normalize(configuredKey).replace(' ', '_'); // underscores
+
+                normalizedRules.put(norm1, rule);
+                normalizedRules.put(norm2, rule);
+                normalizedRules.put(norm3, rule);
+
+                log.debug("Registered rule '{}' with variants: {}, {}, {}", configuredKey, norm1, norm2, norm3);
+            }
+            log.debug("Total normalized rules registered: {}", normalizedRules.size());
+        }
+
+        Gauge.builder("excel.header.cache.size", cache, Map::size)
+                .description("Distinct raw column headers in the header resolution cache")
+                .register(meterRegistry);
+        this.hits = Counter.builder("excel.header.cache.requests")
+                .description("Column header resolutions, answered from the cache (hit) or not (miss)")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("excel.header.cache.requests")
+                .description("Column header resolutions, answered from the cache (hit) or not (miss)")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Rule of every column of a header row (null where no rule applies), resolved once per sheet.
+     */
+    ColumnValidationRule[] resolve(String[] headers) {
+        ColumnValidationRule[] slots = new ColumnValidationRule[headers.length];
+        for (int colIndex = 0; colIndex < headers.length; colIndex++) {
+            slots[colIndex] = resolve(headers[colIndex]);
+        }
+        return slots;
+    }
+
+    /**
+     * Rule for a column header, or null when no rule applies.
+     */
+    ColumnValidationRule resolve(String columnHeader) {
+        if (columnHeader == null) return null;
+
+        Resolution resolution = cache.get(columnHeader);
+        if (resolution != null) {
+            resolution.lastUse = clock.incrementAndGet();
+            hits.increment();
+            return resolution.rule;
+        }
+
+        misses.increment();
+        ColumnValidationRule rule = lookup(columnHeader);
+        cache.put(columnHeader, new Resolution(rule, clock.incrementAndGet()));
+        if (cache.size() > maxEntries) {
+            evictLeastRecentlyUsed();
+        }
+        return rule;
+    }
+
+    /**
+     * Drop least recently used headers until the cache is back to 90% of its limit, so that
+     * the sort is not repeated on every new header once the cache is full.
+     */
+    private void evictLeastRecentlyUsed() {
+        synchronized (evictionLock) {
+            int excess = cache.size() - maxEntries * 9 / 10;
+            if (cache.size() <= maxEntries || excess <= 0) return;
+
+            List<Map.Entry<String, Resolution>> entries = new ArrayList<>(cache.entrySet());
+            entries.sort(Comparator.comparingLong(e -> e.getValue().lastUse));
+            for (int i = 0; i < excess && i < entries.size(); i++) {
+                Map.Entry<String, Resolution> entry = entries.get(i);
+                cache.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Enhanced rule lookup that tries multiple normalization strategies
+     */
+    private ColumnValidationRule lookup(String columnHeader) {
+        String normalized = normalize(columnHeader);
+
+        // Strategy 1: Direct normalized lookup
+        ColumnValidationRule rule = normalizedRules.get(normalized);
+        if (rule != null) {
+            log.debug("Found rule for '{}' using direct lookup: {}", columnHeader, normalized);
+            return rule;
+        }
+
+        // Strategy 2: Try with spaces replaced by underscores
+        String withUnderscores = normalized.replace(' ', '_');
+        rule = normalizedRules.get(withUnderscores);
+        if (rule != null) {
+            log.debug("Found rule for '{}' using underscore replacement: {}", columnHeader, withUnderscores);
+            return rule;
+        }
+
+        // Strategy 3: Try with underscores replaced by spaces
+        String withSpaces = normalized.replace('_', ' ');
+        rule = normalizedRules.get(withSpaces);
+        if (rule != null) {
+            log.debug("Found rule for '{}' using space replacement: {}", columnHeader, withSpaces);
+            return rule;
+        }
+
+        // Strategy 4: Try exact match with original keys (case insensitive)
+        for (Map.Entry<String, ColumnValidationRule> entry : normalizedRules.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(columnHeader)) {
+                log.debug("Found rule for '{}' using case-insensitive exact match", columnHeader);
+                return entry.getValue();
+            }
+        }
+
+        log.debug("No rule found for column: '{}' (normalized: '{}')", columnHeader, normalized);
+        return null;
+    }
+
+    /**
+     * Normalization for header/rule matching:
+     * - remove punctuation (non alnum/space/underscore)
+     * - trim, collapse multiple spaces and lowercase
+     * One pass over the characters, same result as the regex replacements it replaces.
+     */
+    static String normalize(String s) {
+        if (s == null) return "";
+        StringBuilder cleaned = new StringBuilder(s.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ' ') {
+                pendingSpace = cleaned.length() > 0; // leading spaces are trimmed
+            } else if (c == '_' || (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z')) {
+                if (pendingSpace) cleaned.append(' ');
+                pendingSpace = false;
+                cleaned.append(c);
+            } else if (c >= 'A' && c <= 'Z') {
+                if (pendingSpace) cleaned.append(' ');
+                pendingSpace = false;
+                cleaned.append((char) (c + ('a' - 'A')));
+            }
+            // anything else is dropped without breaking a run of spaces
+        }
+        return cleaned.toString(); // trailing spaces are never appended
+    }
+}
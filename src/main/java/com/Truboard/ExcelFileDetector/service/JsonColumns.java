@@ -0,0 +1,137 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Columns of a .json upload, in key order.
+ *
+ * The document is read once, token by token: the first token picks the layout and every value
+ * is appended straight to its column as text, without building a Map per row.
+ * - array of objects: [ {"Name":"John","Age":25}, ... ] - columns in order of first appearance,
+ *   missing keys (and null rows) are blank
+ * - object of arrays: { "Name": ["John","Alice"], "Age":[25,30] } - shorter columns are padded
+ * Values read the way the former Map-based parsing printed them: null is blank, numbers and
+ * booleans in Java notation, nested objects/arrays as Map/List text.
+ * Each column's list comes from {@code newColumn} (column name -> empty list).
+ */
+final class JsonColumns {
+
+    final LinkedHashMap<String, List<String>> columnData = new LinkedHashMap<>();
+    final LinkedHashMap<String, Integer> columnIndexMap = new LinkedHashMap<>();
+    private final Function<String, List<String>> newColumn;
+
+    private JsonColumns(Function<String, List<String>> newColumn) {
+        this.newColumn = newColumn;
+    }
+
+    static JsonColumns read(ObjectMapper objectMapper, byte[] content, Function<String, List<String>> newColumn)
+            throws IOException {
+        JsonColumns json = new JsonColumns(newColumn);
+        try (JsonParser parser = objectMapper.getFactory().createParser(content)) {
+            JsonToken first = parser.nextToken();
+            if (first == JsonToken.START_ARRAY) {
+                json.readRows(objectMapper, parser);
+            } else if (first == JsonToken.START_OBJECT) {
+                json.readColumns(objectMapper, parser);
+            } else if (first != JsonToken.VALUE_NULL) {
+                throw new JsonParseException(parser, (first == null)
+                        ? "No content to map due to end-of-input"
+                        : "Expected an array of objects or an object of arrays, found " + first);
+            }
+        }
+        return json;
+    }
+
+    /**
+     * [ {...}, null, {...} ]: one row per element.
+     */
+    private void readRows(ObjectMapper objectMapper, JsonParser parser) throws IOException {
+        int rowCount = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    List<String> values = column(parser.currentName());
+                    parser.nextToken();
+                    String value = text(objectMapper, parser);
+                    if (values.size() > rowCount) {
+                        values.set(rowCount, value); // duplicate key: the last value wins
+                        continue;
+                    }
+                    while (values.size() < rowCount) values.add("");
+                    values.add(value);
+                }
+            } else if (token != JsonToken.VALUE_NULL) {
+                throw new JsonParseException(parser, "Expected an object for every array element, found " + token);
+            }
+            rowCount++;
+        }
+        for (List<String> values : columnData.values()) {
+            while (values.size() < rowCount) values.add("");
+        }
+    }
+
+    /**
+     * { "col": [...], "other": null }: one column per field.
+     */
+    private void readColumns(ObjectMapper objectMapper, JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            List<String> values = column(parser.currentName());
+            values.clear(); // duplicate key: the last array wins
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    values.add(text(objectMapper, parser));
+                }
+            } else if (token != JsonToken.VALUE_NULL) {
+                throw new JsonParseException(parser, "Expected an array for field '" + parser.currentName() + "', found " + token);
+            }
+        }
+        int maxRows = 0;
+        for (List<String> values : columnData.values()) maxRows = Math.max(maxRows, values.size());
+        for (List<String> values : columnData.values()) {
+            while (values.size() < maxRows) values.add("");
+        }
+    }
+
+    private List<String> column(String key) {
+        List<String> values = columnData.get(key);
+        if (values == null) {
+            values = newColumn.apply(key);
+            columnIndexMap.put(key, columnData.size());
+            columnData.put(key, values);
+        }
+        return values;
+    }
+
+    /**
+     * Text of the value at the current token (consumes nested structures).
+     */
+    static String text(ObjectMapper objectMapper, JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return String.valueOf(parser.getNumberValue());
+            case VALUE_TRUE:
+                return "true";
+            case VALUE_FALSE:
+                return "false";
+            case VALUE_NULL:
+                return "";
+            default:
+                // Nested object/array: rare, bound untyped so it prints as before
+                Object nested = objectMapper.readValue(parser, Object.class);
+                return (nested == null) ? "" : String.valueOf(nested);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ColumnValidationRule;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Synthetic loan tapes matching the configured excel.validations rules, for benchmarks and
+ * load tests (see the jmh and load-test Maven profiles).
+ *
+ * One column per rule, in configuration order, on a sheet named "Data". A share
+ * {@code errorRate} of the cells fails its rule and a share {@code blankRate} is left empty
+ * (an error only for required columns). Values look like the real templates: numbers,
+ * percentages and amounts are numeric cells with the usual number formats, dates are text in
+ * the rule's format and text columns repeat a small vocabulary. Like exported templates, the
+ * data is followed by rows / 100 rows of empty-text cells that trailing blank row detection
+ * has to skip. The same arguments and seed always give the same file. Rows are streamed with
+ * SXSSF, so memory stays flat whatever the row count.
+ */
+public final class LoanTapeGenerator {
+
+    private static final String[] WORDS = {"Alpha", "Bravo", "Charlie", "Delta", "Echo", "Foxtrot", "Golf", "Hotel"};
+    private static final long DEFAULT_SEED = 42;
+
+    private final Map<String, ColumnValidationRule> rules;
+
+    public LoanTapeGenerator(Map<String, ColumnValidationRule> rules) {
+        this.rules = (rules != null) ? new LinkedHashMap<>(rules) : new LinkedHashMap<>();
+    }
+
+    /**
+     * Path of the workbook of this shape under {@code dir}, generated on first use with the
+     * default seed. Files are named by shape only, so use one directory per rule set.
+     */
+    public Path cached(Path dir, int rows, double errorRate, double blankRate) throws IOException {
+        Path file = dir.resolve(String.format(Locale.ROOT, "loan-tape-%d-%.3f-%.3f.xlsx", rows, errorRate, blankRate));
+        if (Files.exists(file)) return file;
+
+        Files.createDirectories(dir);
+        Path partial = Files.createTempFile(dir, "loan-tape", ".part");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial))) {
+                write(rows, errorRate, blankRate, DEFAULT_SEED, out);
+            }
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+        return file;
+    }
+
+    public void write(int rows, double errorRate, double blankRate, long seed, OutputStream out) throws IOException {
+        List<String> columns = new ArrayList<>(rules.keySet());
+        Random random = new Random(seed);
+        LocalDate baseDate = LocalDate.of(2020, 1, 1);
+
+        // Shared strings, as Excel writes them
+        SXSSFWorkbook workbook = new SXSSFWorkbook(null, 100, true, true);
+        try {
+            CellStyle percentStyle = workbook.createCellStyle();
+            percentStyle.setDataFormat(workbook.createDataFormat().getFormat("0.00%"));
+            CellStyle currencyStyle = workbook.createCellStyle();
+            currencyStyle.setDataFormat(workbook.createDataFormat().getFormat("#,##0.00"));
+
+            Sheet sheet = workbook.createSheet("Data");
+            Row header = sheet.createRow(0);
+            for (int c = 0; c < columns.size(); c++) header.createCell(c).setCellValue(columns.get(c));
+
+            for (int r = 1; r <= rows; r++) {
+                Row row = sheet.createRow(r);
+                for (int c = 0; c < columns.size(); c++) {
+                    double roll = random.nextDouble();
+                    if (roll < blankRate) continue;
+                    boolean invalid = roll < blankRate + errorRate;
+                    ColumnValidationRule rule = rules.get(columns.get(c));
+                    Cell cell = row.createCell(c);
+                    switch (type(rule)) {
+                        case "number":
+                            if (invalid) cell.setCellValue("n/a");
+                            else cell.setCellValue(1 + random.nextInt(360));
+                            break;
+                        case "percent":
+                            cell.setCellValue(random.nextInt(2500) / 10000.0);
+                            if (!invalid) cell.setCellStyle(percentStyle); // without % the value is rejected
+                            break;
+                        case "currency":
+                            if (invalid) {
+                                cell.setCellValue("TBD");
+                            } else {
+                                cell.setCellValue(random.nextInt(100_000_000) / 100.0);
+                                cell.setCellStyle(currencyStyle);
+                            }
+                            break;
+                        case "date":
+                            cell.setCellValue(invalid ? "31/02/2024" : dateText(rule, baseDate.plusDays(random.nextInt(2000))));
+                            break;
+                        default:
+                            cell.setCellValue(invalid ? "#" + r + "-?" : text(rule, c, random));
+                    }
+                }
+            }
+            for (int r = rows + 1; r <= rows + Math.max(10, rows / 100); r++) {
+                Row row = sheet.createRow(r);
+                for (int c = 0; c < columns.size(); c++) row.createCell(c).setCellValue("");
+            }
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private static String type(ColumnValidationRule rule) {
+        return (rule == null || rule.getType() == null) ? "text" : rule.getType().trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String dateText(ColumnValidationRule rule, LocalDate date) {
+        String format = (rule.getFormat() == null || rule.getFormat().isEmpty()) ? "dd-MMM-yy" : rule.getFormat();
+        return DateTimeFormatter.ofPattern(format, Locale.ENGLISH).format(date);
+    }
+
+    /**
+     * A word of the column's vocabulary, with an id suffix when the rule allows digits.
+     */
+    private static String text(ColumnValidationRule rule, int column, Random random) {
+        String word = WORDS[(column + random.nextInt(4)) % WORDS.length];
+        String withId = word + (10000 + random.nextInt(90000));
+        if (rule == null || rule.getRegex() == null || rule.getRegex().isEmpty()) return withId;
+        return Pattern.matches(rule.getRegex(), withId) ? withId : word;
+    }
+}
@@ -0,0 +1,152 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.AdmissionRejectedException;
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Global memory budget for workbook processing.
+ *
+ * Before a workbook is parsed its heap cost is estimated from the uncompressed part sizes and
+ * the sheet's dimension tag (see StreamingSheetReader.profile) and reserved from a fair,
+ * weighted semaphore (1 permit = 1 KB). Uploads queue for up to excel.admission.max-wait when
+ * the budget is taken and are rejected after that, so the node slows down instead of running
+ * out of heap. A workbook that would need more than the whole budget is rejected right away.
+ */
+@Service
+public class MemoryAdmissionService {
+
+    private static final long BYTES_PER_PERMIT = 1024;
+
+    /**
+     * Budget held by one workbook; grows as processing needs more and is returned on close().
+     */
+    public final class Reservation implements AutoCloseable {
+        private int permits;
+
+        private Reservation() {
+        }
+
+        /**
+         * Make sure at least {@code bytes} are reserved, waiting for budget if needed.
+         *
+         * A reservation never waits while it holds permits: on the fair semaphore it would queue
+         * behind a larger upload that in turn waits for those very permits, and both would time
+         * out. If the extra budget is not free right away, what is held is released and the whole
+         * amount is waited for at once.
+         */
+        public void growTo(long bytes) throws InterruptedException {
+            int total = toPermits(bytes);
+            if (total <= permits) return;
+            if (permits > 0) {
+                if (total <= totalPermits && budget.tryAcquire(total - permits, 0, TimeUnit.MILLISECONDS)) {
+                    permits = total;
+                    return;
+                }
+                close();
+            }
+            acquire(total, bytes);
+            permits = total;
+        }
+
+        @Override
+        public void close() {
+            if (permits > 0) {
+                budget.release(permits);
+                permits = 0;
+            }
+        }
+    }
+
+    private final Semaphore budget;
+    private final int totalPermits;
+    private final long maxWaitMillis;
+    private final long bytesPerCell;
+    private final int domExpansionFactor;
+    private final int chunkRows;
+    private final int chunksInFlight;
+    private final Counter rejections;
+
+    public MemoryAdmissionService(ExcelValidationConfig config, MeterRegistry meterRegistry) {
+        ExcelValidationConfig.AdmissionConfig admissionConfig = config.getAdmission();
+        long budgetBytes = admissionConfig.getMemoryBudget().toBytes();
+        if (budgetBytes <= 0) {
+            budgetBytes = Runtime.getRuntime().maxMemory() / 2;
+        }
+        this.totalPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, budgetBytes / BYTES_PER_PERMIT));
+        this.budget = new Semaphore(totalPermits, true);
+        this.maxWaitMillis = admissionConfig.getMaxWait().toMillis();
+        this.bytesPerCell = admissionConfig.getBytesPerCell();
+        this.domExpansionFactor = admissionConfig.getDomExpansionFactor();
+        ExcelValidationConfig.ValidationPoolConfig poolConfig = config.getValidationPool();
+        this.chunkRows = Math.max(1, poolConfig.getChunkRows());
+        this.chunksInFlight = 1 + (poolConfig.getParallelism() > 0
+                ? poolConfig.getParallelism()
+                : Runtime.getRuntime().availableProcessors());
+
+        Gauge.builder("excel.admission.budget.bytes", () -> (double) totalPermits * BYTES_PER_PERMIT)
+                .description("Memory budget for workbook processing").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("excel.admission.reserved.bytes", budget,
+                        b -> (double) (totalPermits - b.availablePermits()) * BYTES_PER_PERMIT)
+                .description("Memory currently reserved by workbooks being processed").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("excel.admission.waiting", budget, Semaphore::getQueueLength)
+                .description("Workbooks waiting for memory budget").register(meterRegistry);
+        this.rejections = Counter.builder("excel.admission.rejected")
+                .description("Workbooks rejected for lack of memory budget").register(meterRegistry);
+    }
+
+    /**
+     * Start an empty reservation; use with try-with-resources.
+     */
+    public Reservation newReservation() {
+        return new Reservation();
+    }
+
+    /**
+     * Heap needed to read the sheet with the streaming reader: the cell values it holds plus the
+     * shared strings table. With {@code keepValues} every value is kept (typed, see TypedColumn);
+     * otherwise only the row chunks being validated are, one per validation thread plus the one
+     * being filled.
+     */
+    public long estimateStreaming(StreamingSheetReader.SheetProfile profile, boolean keepValues) {
+        long rows = keepValues ? profile.getRows() : Math.min(profile.getRows(), (long) chunksInFlight * chunkRows);
+        long cellBytes = (profile.getRows() > 0 && profile.getColumns() > 0)
+                ? rows * profile.getColumns() * bytesPerCell
+                : Math.max(0, profile.getSheetXmlBytes()); // no dimension tag: assume the XML size
+        return cellBytes + 2 * profile.getSharedStringsBytes();
+    }
+
+    /**
+     * Heap needed to load the workbook as an XSSFWorkbook DOM.
+     */
+    public long estimateDom(StreamingSheetReader.SheetProfile profile) {
+        return (Math.max(0, profile.getSheetXmlBytes()) + profile.getSharedStringsBytes()) * domExpansionFactor;
+    }
+
+    private void acquire(int permits, long bytes) throws InterruptedException {
+        if (toPermits(bytes) > totalPermits) {
+            rejections.increment();
+            throw new AdmissionRejectedException("Workbook needs an estimated " + formatBytes(bytes)
+                    + " of memory, more than the processing budget of " + formatBytes((long) totalPermits * BYTES_PER_PERMIT), 0);
+        }
+        if (!budget.tryAcquire(permits, maxWaitMillis, TimeUnit.MILLISECONDS)) {
+            rejections.increment();
+            throw new AdmissionRejectedException("Server is busy processing other workbooks, please retry later",
+                    Math.max(1, TimeUnit.MILLISECONDS.toSeconds(maxWaitMillis)));
+        }
+    }
+
+    private static int toPermits(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bytes + BYTES_PER_PERMIT - 1) / BYTES_PER_PERMIT));
+    }
+
+    private static String formatBytes(long bytes) {
+        return (bytes >= (1 << 20)) ? (bytes >> 20) + " MB" : (bytes >> 10) + " KB";
+    }
+}
@@ -0,0 +1,86 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streaming reader for .ndjson uploads: one JSON object per line (blank lines are skipped,
+ * a null line is a blank row).
+ *
+ * The columns are the keys in order of first appearance, as for a .json array of objects, so
+ * the file is read twice: the first pass only collects the keys (values are skipped), the second
+ * pushes every object to the {@link StreamingSheetReader.RowHandler} as row index 1, 2, ...
+ * with the same value text as JsonColumns. Only the current object is held in memory.
+ */
+class NdjsonSheetReader {
+
+    static final String SHEET_NAME = "NDJSON";
+
+    private final ObjectMapper objectMapper;
+
+    NdjsonSheetReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    void read(StreamingHighlightWriter.ContentSource source, StreamingSheetReader.RowHandler handler) throws Exception {
+        Map<String, Integer> columnIndexMap = new LinkedHashMap<>();
+        try (InputStream in = source.open();
+             JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            while (nextRecord(parser)) {
+                if (parser.currentToken() == JsonToken.VALUE_NULL) continue;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    columnIndexMap.putIfAbsent(parser.currentName(), columnIndexMap.size());
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        handler.startSheet(1, SHEET_NAME);
+        handler.header(columnIndexMap.keySet().toArray(new String[0]));
+
+        String[] values = new String[columnIndexMap.size()];
+        try (InputStream in = source.open();
+             JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            int rowIndex = 0;
+            while (handler.wantsMoreRows() && nextRecord(parser)) {
+                rowIndex++;
+                Arrays.fill(values, "");
+                if (parser.currentToken() == JsonToken.START_OBJECT) {
+                    readFields(parser, columnIndexMap, values);
+                }
+                handler.row(rowIndex, values);
+            }
+        }
+        handler.endSheet();
+    }
+
+    private void readFields(JsonParser parser, Map<String, Integer> columnIndexMap, String[] values) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            int colIndex = columnIndexMap.get(parser.currentName());
+            parser.nextToken();
+            values[colIndex] = JsonColumns.text(objectMapper, parser); // duplicate key: the last value wins
+        }
+    }
+
+    /**
+     * Move to the next record; true when it is an object (positioned on its START_OBJECT) and
+     * also for a null record (positioned on VALUE_NULL, so it reads as a row without fields).
+     */
+    private static boolean nextRecord(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) return false;
+        if (token != JsonToken.START_OBJECT && token != JsonToken.VALUE_NULL) {
+            throw new JsonParseException(parser, "Expected a JSON object on every line, found " + token);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,41 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An upload accepted for the NDJSON response (see ExcelService#prepareNdjsonValidation): spooled
+ * and, for .xlsx, holding its memory reservation. Whichever of {@link #writeTo} and
+ * {@link #close} comes first gets the upload: writing takes ownership of the spooled file and
+ * the reservation, closing gives both back. Closing after writing has started does nothing, so
+ * a request can always be closed when it ends, also if its body never ran.
+ */
+public final class NdjsonUpload implements Closeable {
+
+    interface Body {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private final Body body;
+    private final Closeable release;
+    private final AtomicBoolean taken = new AtomicBoolean();
+
+    NdjsonUpload(Body body, Closeable release) {
+        this.body = body;
+        this.release = release;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        if (!taken.compareAndSet(false, true)) {
+            throw new IOException("Upload was already released");
+        }
+        body.write(out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (taken.compareAndSet(false, true)) release.close();
+    }
+}
@@ -0,0 +1,73 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes the application/x-ndjson upload response: one JSON object per line, told apart by "type".
+ *
+ * - {"type":"error", ...ValidationError fields} for every error, written as soon as it is known
+ * - {"type":"summary","fileId":...,"errorCount":...,"truncatedErrorCount":...,"validationStopped":...}
+ *   once the file has been processed and stored
+ * - {"type":"failure","message":...} instead of the summary when processing fails half way
+ *   (the status line has already been sent by then)
+ */
+class NdjsonValidationWriter implements ValidationErrorSink {
+
+    private final JsonGenerator generator;
+    private long errorCount;
+
+    NdjsonValidationWriter(JsonFactory jsonFactory, OutputStream out) throws IOException {
+        this.generator = jsonFactory.createGenerator(out);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public void accept(ValidationError error) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "error");
+        generator.writeStringField("columnName", error.getColumnName());
+        generator.writeNumberField("rowNumber", error.getRowNumber());
+        generator.writeNumberField("columnIndex", error.getColumnIndex());
+        generator.writeStringField("message", error.getMessage());
+        generator.writeStringField("cellValue", error.getCellValue());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        errorCount++;
+    }
+
+    void summary(String fileId, String fileName, String fileType, int sheetCount, List<String> sheetNames,
+                 long truncatedErrorCount, boolean validationStopped) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "summary");
+        generator.writeStringField("fileId", fileId);
+        generator.writeStringField("fileName", fileName);
+        generator.writeStringField("fileType", fileType);
+        generator.writeNumberField("sheetCount", sheetCount);
+        generator.writeArrayFieldStart("sheetNames");
+        for (String sheetName : sheetNames) generator.writeString(sheetName);
+        generator.writeEndArray();
+        generator.writeNumberField("errorCount", errorCount);
+        generator.writeNumberField("truncatedErrorCount", truncatedErrorCount);
+        generator.writeBooleanField("validationStopped", validationStopped);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    void failure(String message) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "failure");
+        generator.writeStringField("message", message);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    void flush() throws IOException {
+        generator.flush();
+    }
+}
@@ -0,0 +1,323 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Per-upload state for the streaming xlsx path.
+ *
+ * Rows coming from {@link StreamingSheetReader} are auto-filled as they arrive and buffered in
+ * row chunks; each full chunk is handed to the {@link ValidationExecutor} so validation runs
+ * while the parser keeps reading. Errors are merged back in column order, then row order.
+ * Blank rows (and rows missing from the sheet XML) are held back as a pending count and only
+ * materialized once a later non-blank row shows up, so trailing blank rows are dropped exactly
+ * like SheetScan does on the DOM path. A formula saved without a result reads as "" but still
+ * counts as content and is never auto-filled (it would be overwritten in the stored file).
+ * Cell values are only kept for the response when {@code keepColumnValues} is set (stored by
+ * type, see TypedColumn); validation needs no more than the current chunk, and validated chunks
+ * are joined as reading goes on so that only their errors are kept.
+ * With an error sink (see {@link #streamErrorsTo}) errors are not collected at all: every chunk
+ * is passed on as soon as it has been validated, so errors come out chunk by chunk (row
+ * ranges), in column order, then row order within a chunk.
+ * Error limits (see {@link #limitErrors}) are applied as the errors are merged; with fail-fast,
+ * completed chunks are counted in row order while reading goes on, a column that has used up its
+ * limit is no longer validated and reading stops after the chunk that fills the file limit.
+ */
+class SheetIngestSession implements StreamingSheetReader.RowHandler {
+
+    private final Function<String[], ColumnValidator[]> validatorLookup;
+    private final Function<String, String> autoFillDefaults;
+    private final ValidationExecutor validationExecutor;
+    private final boolean keepColumnValues;
+
+    private int sheetCount;
+    private String sheetName;
+
+    private String[] columnNames;
+    private String[] autoFillValues;
+    private ColumnValidator[] validators;
+    private final Map<String, Integer> columnIndexMap = new LinkedHashMap<>();
+
+    private List<String>[] columnValues;
+
+    // Columns with a validator, in report order, and the current (not yet submitted) chunk
+    private int[] validatedColumns;
+    private int[] chunkSlots; // colIndex -> row of chunk, or -1 when the column is not validated
+    private String[][] chunk;
+    private int chunkSize;
+    private int chunkFirstRowNumber;
+    private final List<ValidationExecutor.PendingValidation> submittedChunks = new ArrayList<>();
+    private final List<List<ValidationExecutor.ColumnResult>> completedChunks = new ArrayList<>();
+    private ValidationErrorSink errorSink;
+
+    private ErrorBudget errorBudget = ErrorBudget.unlimited();
+    private long foundErrors;
+    private long[] foundPerColumn; // per validated column (chunk row)
+    private boolean[] closedColumns; // fail-fast: column limit used up, no longer validated
+
+    // (rowIndex, colIndex) pairs of cells that received a default value
+    private final List<int[]> autoFilledCells = new ArrayList<>();
+
+    private String[] blankRow;
+    private boolean[] formulaCells; // current row: formulas saved without a result
+    private boolean rowHasFormulas;
+    private int nextRowIndex = 1;
+    private int rowNumberOffset = 1; // row number in errors = rowIndex + offset (spreadsheet rows by default)
+
+    SheetIngestSession(Function<String[], ColumnValidator[]> validatorLookup,
+                       Function<String, String> autoFillDefaults,
+                       ValidationExecutor validationExecutor,
+                       boolean keepColumnValues) {
+        this.validatorLookup = validatorLookup;
+        this.autoFillDefaults = autoFillDefaults;
+        this.validationExecutor = validationExecutor;
+        this.keepColumnValues = keepColumnValues;
+    }
+
+    /**
+     * Hand errors to {@code sink} while reading instead of keeping them for drainErrors.
+     */
+    void streamErrorsTo(ValidationErrorSink sink) {
+        this.errorSink = sink;
+    }
+
+    /**
+     * Number data rows from {@code firstDataRowNumber} in errors (default 2: the row under the header).
+     */
+    void numberRowsFrom(int firstDataRowNumber) {
+        this.rowNumberOffset = firstDataRowNumber - 1;
+    }
+
+    /**
+     * Apply the upload's error limits (unlimited by default).
+     */
+    void limitErrors(ErrorBudget budget) {
+        this.errorBudget = budget;
+    }
+
+    @Override
+    public void startSheet(int sheetCount, String sheetName) {
+        this.sheetCount = sheetCount;
+        this.sheetName = sheetName;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void header(String[] headers) {
+        int maxColumns = headers.length;
+        columnNames = new String[maxColumns];
+        autoFillValues = new String[maxColumns];
+        columnValues = new List[maxColumns];
+        blankRow = new String[maxColumns];
+
+        for (int colIndex = 0; colIndex < maxColumns; colIndex++) {
+            String colName = headers[colIndex];
+            if (colName.isEmpty()) {
+                colName = "Column_" + (colIndex + 1);
+            }
+            columnNames[colIndex] = colName;
+            columnIndexMap.put(colName, colIndex);
+            autoFillValues[colIndex] = autoFillDefaults.apply(colName);
+            blankRow[colIndex] = "";
+        }
+        formulaCells = new boolean[maxColumns];
+
+        // Rules are resolved for the whole header row at once (see HeaderResolver);
+        // kept values are stored by the type of their rule (see TypedColumn)
+        ColumnValidator[] resolved = validatorLookup.apply(columnNames);
+        if (keepColumnValues) {
+            for (int colIndex = 0; colIndex < maxColumns; colIndex++) {
+                columnValues[colIndex] = TypedColumn.forValidator(resolved[colIndex]);
+            }
+        }
+
+        // Duplicate headers: only the last column with a given name is validated/reported
+        validators = new ColumnValidator[maxColumns];
+        List<Integer> withValidator = new ArrayList<>();
+        for (Integer colIndex : columnIndexMap.values()) {
+            validators[colIndex] = resolved[colIndex];
+            if (validators[colIndex] != null) withValidator.add(colIndex);
+        }
+        validatedColumns = withValidator.stream().mapToInt(Integer::intValue).toArray();
+        chunkSlots = new int[maxColumns];
+        Arrays.fill(chunkSlots, -1);
+        for (int i = 0; i < validatedColumns.length; i++) {
+            chunkSlots[validatedColumns[i]] = i;
+        }
+        foundPerColumn = new long[validatedColumns.length];
+        closedColumns = new boolean[validatedColumns.length];
+        chunk = newChunk();
+    }
+
+    @Override
+    public void formulaWithoutResult(int colIndex) {
+        formulaCells[colIndex] = true;
+        rowHasFormulas = true;
+    }
+
+    @Override
+    public void row(int rowIndex, String[] values) throws IOException {
+        try {
+            if (errorBudget.isStopped() || (!rowHasFormulas && isBlank(values))) return;
+
+            while (nextRowIndex < rowIndex) {
+                processRow(nextRowIndex++, blankRow, null);
+            }
+            processRow(rowIndex, values, rowHasFormulas ? formulaCells : null);
+            nextRowIndex = rowIndex + 1;
+        } finally {
+            if (rowHasFormulas) {
+                Arrays.fill(formulaCells, false);
+                rowHasFormulas = false;
+            }
+        }
+    }
+
+    @Override
+    public boolean wantsMoreRows() {
+        return !errorBudget.isStopped();
+    }
+
+    @Override
+    public void endSheet() throws IOException {
+        // Pending blank rows past the last non-empty row are discarded
+        if (chunk != null && !errorBudget.isStopped()) submitChunk();
+        if (errorSink != null) pollChunks(true);
+    }
+
+    /**
+     * @param formulas columns holding a formula without a result (not auto-filled), or null
+     */
+    private void processRow(int rowIndex, String[] values, boolean[] formulas) throws IOException {
+        if (chunkSize == 0) chunkFirstRowNumber = rowIndex + rowNumberOffset;
+
+        for (int colIndex = 0; colIndex < columnNames.length; colIndex++) {
+            String value = values[colIndex];
+            if (value.isEmpty() && autoFillValues[colIndex] != null && (formulas == null || !formulas[colIndex])) {
+                value = autoFillValues[colIndex];
+                autoFilledCells.add(new int[]{rowIndex, colIndex});
+            }
+            if (keepColumnValues) columnValues[colIndex].add(value);
+            if (chunkSlots[colIndex] >= 0) chunk[chunkSlots[colIndex]][chunkSize] = value;
+        }
+        if (++chunkSize == validationExecutor.getChunkRows()) {
+            submitChunk();
+            chunk = newChunk();
+        }
+    }
+
+    private String[][] newChunk() {
+        return new String[validatedColumns.length][validationExecutor.getChunkRows()];
+    }
+
+    private void submitChunk() throws IOException {
+        if (chunkSize == 0 || validatedColumns.length == 0) return;
+
+        List<ValidationExecutor.ColumnSlice> slices = new ArrayList<>(validatedColumns.length);
+        for (int i = 0; i < validatedColumns.length; i++) {
+            int colIndex = validatedColumns[i];
+            // A closed column keeps its (empty) slot so results stay aligned with validatedColumns
+            List<String> values = closedColumns[i]
+                    ? Collections.emptyList()
+                    : Arrays.asList(chunk[i]).subList(0, chunkSize);
+            slices.add(new ValidationExecutor.ColumnSlice(columnNames[colIndex], colIndex, validators[colIndex],
+                    values, chunkFirstRowNumber, errorBudget.sliceLimit(), errorBudget.isFailFast()));
+        }
+        submittedChunks.add(validationExecutor.submit(slices));
+        chunkSize = 0;
+        // Finished chunks only keep their results, whatever the error handling
+        pollChunks(false);
+    }
+
+    /**
+     * Take validated chunks off the queue, oldest chunk first: count them for fail-fast, then pass
+     * their errors to the sink or keep them for drainErrors. Stops at the first chunk still running
+     * unless {@code wait} is set; once fail-fast has stopped, later chunks are dropped.
+     */
+    private void pollChunks(boolean wait) throws IOException {
+        while (!submittedChunks.isEmpty() && (wait || submittedChunks.get(0).isDone())) {
+            List<ValidationExecutor.ColumnResult> results = submittedChunks.remove(0).join();
+            if (errorBudget.isFailFast()) countFound(results);
+
+            if (errorSink != null) {
+                for (ValidationExecutor.ColumnResult result : results) {
+                    for (ValidationError error : result.getDetailedErrors()) {
+                        if (errorBudget.admit(error)) errorSink.accept(error);
+                    }
+                    errorBudget.truncate(result.getTruncatedCount());
+                }
+            } else {
+                completedChunks.add(results);
+            }
+
+            if (errorBudget.isStopped()) {
+                // Rows read past the chunk that filled the limit are not reported
+                submittedChunks.clear();
+                return;
+            }
+        }
+    }
+
+    private void countFound(List<ValidationExecutor.ColumnResult> results) {
+        for (int i = 0; i < results.size(); i++) {
+            long found = results.get(i).getFoundCount();
+            foundErrors += found;
+            foundPerColumn[i] += found;
+            if (foundPerColumn[i] >= errorBudget.getMaxErrorsPerColumn()) closedColumns[i] = true;
+        }
+        if (errorBudget.isFileLimitReached(foundErrors)) errorBudget.stop();
+    }
+
+    private static boolean isBlank(String[] values) {
+        for (String v : values) {
+            if (!v.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    int getSheetCount() { return sheetCount; }
+    String getSheetName() { return sheetName; }
+    Map<String, Integer> getColumnIndexMap() { return columnIndexMap; }
+    List<int[]> getAutoFilledCells() { return autoFilledCells; }
+
+    /**
+     * Data rows read up to the last non-blank one (all rows up to the stop with fail-fast).
+     */
+    int getRowCount() { return nextRowIndex - 1; }
+
+    /**
+     * Column name -> values, in header order (same shape the DOM path builds);
+     * null when the session was created without keepColumnValues
+     */
+    Map<String, List<String>> getColumnData() {
+        if (!keepColumnValues) return null;
+        Map<String, List<String>> columnData = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : columnIndexMap.entrySet()) {
+            columnData.put(e.getKey(), columnValues[e.getValue()]);
+        }
+        return columnData;
+    }
+
+    /**
+     * Append collected errors in column order, then row order, as far as the error limits allow.
+     */
+    void drainErrors(List<String> errors, List<ValidationError> detailedErrors) throws IOException {
+        if (validatedColumns == null) return;
+
+        pollChunks(true);
+        for (int i = 0; i < validatedColumns.length; i++) {
+            for (List<ValidationExecutor.ColumnResult> results : completedChunks) {
+                errorBudget.addAll(results.get(i), errors, detailedErrors);
+            }
+        }
+        completedChunks.clear();
+    }
+}
@@ -0,0 +1,142 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Columns of a loaded (DOM) sheet, read in one row-major pass.
+ *
+ * Every cell is formatted once, with DataFormatter and the FormulaEvaluator, as the text the
+ * user sees. The same pass finds the trailing blank rows, which are dropped: blank rows are
+ * held back as a pending count and only added once a later non-blank row shows up, as
+ * SheetIngestSession does on the streaming path. In the same sweep, blank cells of auto-filled
+ * columns (see {@code autoFillDefaults}) take their default value and are recorded in
+ * {@link #autoFillCells}; the caller writes them to the workbook after the scan, so formulas
+ * are evaluated against the sheet as uploaded. A formula left without a result (not evaluated,
+ * excel.formula.evaluation=cached) reads as "" but counts as content and is never auto-filled.
+ * Like the separate passes it replaces, the scan creates blank cells for missing cells of
+ * existing rows (Row.MissingCellPolicy.CREATE_NULL_AS_BLANK).
+ */
+final class SheetScan {
+
+    final LinkedHashMap<String, List<String>> columnData = new LinkedHashMap<>();
+    final LinkedHashMap<String, Integer> columnIndexMap = new LinkedHashMap<>();
+
+    // (rowIndex, colIndex) of the cells that received a default value, column by column
+    final List<int[]> autoFillCells = new ArrayList<>();
+
+    // Column names by index ("Column_<n>" for empty headers)
+    final String[] columnNames;
+
+    // Index of the last non-blank row, 0 when the sheet only has a header
+    int lastDataRow;
+
+    private final List<String>[] columns;
+    private final String[] autoFillValues;
+
+    @SuppressWarnings("unchecked")
+    private SheetScan(Row headerRow, Function<String, List<String>> newColumn, Function<String, String> autoFillDefaults) {
+        int maxColumns = Math.max(0, headerRow.getLastCellNum());
+        columnNames = new String[maxColumns];
+        columns = new List[maxColumns];
+        autoFillValues = new String[maxColumns];
+        for (int colIndex = 0; colIndex < maxColumns; colIndex++) {
+            Cell headerCell = headerRow.getCell(colIndex, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
+            String colName = headerCell.toString().trim();
+            if (colName.isEmpty()) {
+                colName = "Column_" + (colIndex + 1);
+            }
+            columnNames[colIndex] = colName;
+            columns[colIndex] = newColumn.apply(colName);
+            autoFillValues[colIndex] = autoFillDefaults.apply(colName);
+        }
+    }
+
+    /**
+     * Read every row under the header row of {@code sheet}.
+     *
+     * @param newColumn        column name -> empty value list
+     * @param autoFillDefaults column name -> default value for blank cells, or null if the column is not auto-filled
+     */
+    static SheetScan scan(Sheet sheet, DataFormatter formatter, FormulaEvaluator evaluator,
+                          Function<String, List<String>> newColumn, Function<String, String> autoFillDefaults) {
+        SheetScan scan = new SheetScan(sheet.getRow(0), newColumn, autoFillDefaults);
+        int maxColumns = scan.columnNames.length;
+
+        String[] values = new String[maxColumns];
+        boolean[] formulas = new boolean[maxColumns];
+        int pendingBlankRows = 0;
+        int lastRowNum = sheet.getLastRowNum();
+        for (int rowIndex = 1; rowIndex <= lastRowNum; rowIndex++) {
+            Row row = sheet.getRow(rowIndex);
+            boolean blank = true;
+            boolean hasFormulas = false;
+            for (int colIndex = 0; colIndex < maxColumns; colIndex++) {
+                String value = "";
+                boolean formula = false;
+                if (row != null) {
+                    Cell cell = row.getCell(colIndex, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
+                    value = formatter.formatCellValue(cell, evaluator).trim();
+                    formula = value.isEmpty() && FormulaPolicyEvaluator.isWithoutResult(cell);
+                }
+                values[colIndex] = value;
+                formulas[colIndex] = formula;
+                hasFormulas |= formula;
+                blank &= value.isEmpty() && !formula;
+            }
+            if (blank) {
+                pendingBlankRows++;
+                continue;
+            }
+
+            for (int blankRow = rowIndex - pendingBlankRows; blankRow < rowIndex; blankRow++) {
+                scan.addBlankRow(blankRow);
+            }
+            pendingBlankRows = 0;
+            scan.addRow(rowIndex, values, hasFormulas ? formulas : null);
+            scan.lastDataRow = rowIndex;
+        }
+
+        // Same shape the column-by-column passes built: the last column with a name wins
+        for (int colIndex = 0; colIndex < maxColumns; colIndex++) {
+            scan.columnIndexMap.put(scan.columnNames[colIndex], colIndex);
+            scan.columnData.put(scan.columnNames[colIndex], scan.columns[colIndex]);
+        }
+        scan.autoFillCells.sort(Comparator.<int[]>comparingInt(cell -> cell[1]).thenComparingInt(cell -> cell[0]));
+        return scan;
+    }
+
+    /**
+     * @param formulas columns holding a formula without a result (not auto-filled), or null
+     */
+    private void addRow(int rowIndex, String[] values, boolean[] formulas) {
+        for (int colIndex = 0; colIndex < values.length; colIndex++) {
+            String value = values[colIndex];
+            if (value.isEmpty() && autoFillValues[colIndex] != null && (formulas == null || !formulas[colIndex])) {
+                value = autoFillValues[colIndex];
+                autoFillCells.add(new int[]{rowIndex, colIndex});
+            }
+            columns[colIndex].add(value);
+        }
+    }
+
+    private void addBlankRow(int rowIndex) {
+        for (int colIndex = 0; colIndex < columns.length; colIndex++) {
+            if (autoFillValues[colIndex] != null) {
+                autoFillCells.add(new int[]{rowIndex, colIndex});
+                columns[colIndex].add(autoFillValues[colIndex]);
+            } else {
+                columns[colIndex].add("");
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects a window of data rows (and a subset of columns) from {@link StreamingSheetReader}.
+ *
+ * Row numbering matches the sheetData of the upload response: data row 0 is the row under the
+ * header, rows missing from the sheet XML count as blank rows (a formula saved without a result
+ * is content, as on upload), and blank rows after the last non-empty row are not part of the data. Parsing stops at the first non-empty row past the
+ * window, so the cost of a page grows with its offset, not with the size of the sheet.
+ */
+class SheetWindow implements StreamingSheetReader.RowHandler {
+
+    private final int offset;
+    private final int limit;
+    private final List<String> requestedColumns;
+
+    private String sheetName;
+    private final Map<String, Integer> columnIndexMap = new LinkedHashMap<>();
+    private List<String> columnNames;
+    private int[] columnIndexes;
+
+    private final List<String[]> windowRows = new ArrayList<>();
+    private boolean hasMore;
+    private boolean rowHasFormulas; // current row holds a formula saved without a result
+
+    /**
+     * @param columns header names to return, in that order; null or empty for all columns
+     */
+    SheetWindow(int offset, int limit, List<String> columns) {
+        this.offset = offset;
+        this.limit = limit;
+        this.requestedColumns = columns;
+    }
+
+    @Override
+    public void startSheet(int sheetCount, String sheetName) {
+        this.sheetName = sheetName;
+    }
+
+    @Override
+    public void header(String[] headers) {
+        // Same column naming as the upload (blank headers become Column_N, duplicates keep the last column)
+        for (int colIndex = 0; colIndex < headers.length; colIndex++) {
+            String colName = headers[colIndex].isEmpty() ? "Column_" + (colIndex + 1) : headers[colIndex];
+            columnIndexMap.put(colName, colIndex);
+        }
+        columnNames = (requestedColumns == null || requestedColumns.isEmpty())
+                ? new ArrayList<>(columnIndexMap.keySet())
+                : requestedColumns;
+        columnIndexes = new int[columnNames.size()];
+        for (int i = 0; i < columnIndexes.length; i++) {
+            Integer colIndex = columnIndexMap.get(columnNames.get(i));
+            if (colIndex == null) {
+                throw new IllegalArgumentException("Unknown column: " + columnNames.get(i));
+            }
+            columnIndexes[i] = colIndex;
+        }
+    }
+
+    @Override
+    public void formulaWithoutResult(int colIndex) {
+        rowHasFormulas = true;
+    }
+
+    @Override
+    public void row(int rowIndex, String[] values) {
+        boolean blank = !rowHasFormulas && isBlank(values);
+        rowHasFormulas = false;
+        if (blank) return;
+
+        int dataRow = rowIndex - 1;
+        if (dataRow >= offset + limit) {
+            hasMore = true;
+            return;
+        }
+        if (dataRow < offset) return;
+
+        // Rows skipped by the sheet XML inside the window are blank rows
+        while (offset + windowRows.size() < dataRow) windowRows.add(null);
+        String[] projected = new String[columnIndexes.length];
+        for (int i = 0; i < columnIndexes.length; i++) {
+            projected[i] = values[columnIndexes[i]];
+        }
+        windowRows.add(projected);
+    }
+
+    @Override
+    public boolean wantsMoreRows() {
+        return !hasMore;
+    }
+
+    @Override
+    public void endSheet() {
+        // Blank rows between the window's last row and a later non-empty row are still data
+        if (hasMore) {
+            while (windowRows.size() < limit) windowRows.add(null);
+        }
+    }
+
+    private static boolean isBlank(String[] values) {
+        for (String v : values) {
+            if (!v.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    String getSheetName() { return sheetName; }
+    boolean hasMore() { return hasMore; }
+
+    /**
+     * Column name -> values of the window, in the requested column order.
+     */
+    Map<String, List<String>> getColumnData() {
+        Map<String, List<String>> columnData = new LinkedHashMap<>();
+        for (int i = 0; i < columnNames.size(); i++) {
+            List<String> values = new ArrayList<>(windowRows.size());
+            for (String[] row : windowRows) values.add(row == null ? "" : row[i]);
+            columnData.put(columnNames.get(i), values);
+        }
+        return columnData;
+    }
+}
@@ -0,0 +1,122 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact form of the validation errors kept with a stored file (see FileStorageService).
+ *
+ * Every error is a handful of ints: row number, column index and codes into one table of
+ * distinct strings for the column name, the message and the cell value. Messages are kept
+ * without their "Row <n>: " prefix, so a column failing the same rule on every row shares one
+ * message; {@link #toList()} rebuilds the ValidationErrors with the prefix put back. The same
+ * layout is written to disk when the entry is spilled.
+ */
+final class StoredErrors {
+
+    // rowNumber, columnIndex, column name, message, message had the row prefix (0/1), cell value
+    private static final int FIELDS = 6;
+    private static final int NULL = -1;
+
+    private final String[] strings;
+    private final int[] data;
+
+    private StoredErrors(String[] strings, int[] data) {
+        this.strings = strings;
+        this.data = data;
+    }
+
+    static StoredErrors of(List<ValidationError> errors) {
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] data = new int[errors.size() * FIELDS];
+        int i = 0;
+        for (ValidationError error : errors) {
+            String message = error.getMessage();
+            String prefix = "Row " + error.getRowNumber() + ": ";
+            boolean prefixed = message != null && message.startsWith(prefix);
+            data[i++] = error.getRowNumber();
+            data[i++] = error.getColumnIndex();
+            data[i++] = code(error.getColumnName(), codes, strings);
+            data[i++] = code(prefixed ? message.substring(prefix.length()) : message, codes, strings);
+            data[i++] = prefixed ? 1 : 0;
+            data[i++] = code(error.getCellValue(), codes, strings);
+        }
+        return new StoredErrors(strings.toArray(new String[0]), data);
+    }
+
+    private static int code(String value, Map<String, Integer> codes, List<String> strings) {
+        if (value == null) return NULL;
+        return codes.computeIfAbsent(value, v -> {
+            strings.add(v);
+            return strings.size() - 1;
+        });
+    }
+
+    int size() {
+        return data.length / FIELDS;
+    }
+
+    /**
+     * Approximate heap held by this object, for the storage's memory limit.
+     */
+    long heapBytes() {
+        long bytes = 32 + 4L * data.length + 8L * strings.length;
+        for (String value : strings) bytes += 48 + value.length();
+        return bytes;
+    }
+
+    List<ValidationError> toList() {
+        List<ValidationError> errors = new ArrayList<>(size());
+        for (int i = 0; i < data.length; i += FIELDS) {
+            int rowNumber = data[i];
+            String message = string(data[i + 3]);
+            if (data[i + 4] == 1) message = "Row " + rowNumber + ": " + message;
+            errors.add(new ValidationError(string(data[i + 2]), rowNumber, data[i + 1], message, string(data[i + 5])));
+        }
+        return errors;
+    }
+
+    private String string(int code) {
+        return (code == NULL) ? null : strings[code];
+    }
+
+    void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(strings.length);
+            for (String value : strings) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(data.length);
+            for (int value : data) out.writeInt(value);
+        }
+    }
+
+    static StoredErrors read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int[] data = new int[in.readInt()];
+            for (int i = 0; i < data.length; i++) data[i] = in.readInt();
+            return new StoredErrors(strings, data);
+        }
+    }
+}
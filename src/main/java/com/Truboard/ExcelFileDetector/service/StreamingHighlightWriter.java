@@ -0,0 +1,1161 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Bounded-memory writer for the error-highlighted download.
+ *
+ * Instead of loading the stored workbook as an XSSFWorkbook, the package is copied entry by
+ * entry into the response and only the parts that change are rewritten:
+ * - the data sheet is streamed through StAX. In ranges fill mode the error cells are coalesced
+ *   into runs (see ErrorRanges) covered by a few conditional-formatting ranges; in cell-style
+ *   mode every error cell gets a highlighted style index (missing rows/cells are inserted in order)
+ * - styles.xml gets one differential format (ranges) or one red fill plus one cloned xf per
+ *   distinct original style (cell-style)
+ * - comments and the VML drawing of the sheet receive one note per error cell, or, in
+ *   errors-sheet mode, a new worksheet lists the errors with a link to each cell
+ * - relationships, workbook.xml and [Content_Types].xml are patched when new parts are added
+ *
+ * Memory use is proportional to the number of errors and the size of the small metadata
+ * parts, not to the size of the sheet.
+ */
+class StreamingHighlightWriter {
+
+    interface ContentSource {
+        InputStream open() throws IOException;
+    }
+
+    private static final String NS_MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String NS_REL = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String NS_PKG_REL = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String NS_CONTENT_TYPES = "http://schemas.openxmlformats.org/package/2006/content-types";
+    private static final String NS_XML = "http://www.w3.org/XML/1998/namespace";
+
+    private static final String REL_OFFICE_DOCUMENT = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument";
+    private static final String REL_STYLES = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles";
+    private static final String REL_COMMENTS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/comments";
+    private static final String REL_VML = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/vmlDrawing";
+    private static final String REL_WORKSHEET = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet";
+
+    private static final String CT_COMMENTS = "application/vnd.openxmlformats-officedocument.spreadsheetml.comments+xml";
+    private static final String CT_VML = "application/vnd.openxmlformats-officedocument.vmlDrawing";
+    private static final String CT_WORKSHEET = "application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml";
+    private static final String CONTENT_TYPES_PART = "[Content_Types].xml";
+
+    // Worksheet children that must come after <legacyDrawing> (CT_Worksheet sequence)
+    private static final Set<String> AFTER_LEGACY_DRAWING = Set.of(
+            "legacyDrawingHF", "drawingHF", "picture", "oleObjects", "controls",
+            "webPublishItems", "tableParts", "extLst");
+
+    // Errors sheet layout, shared with the DOM writer in ExcelService
+    static final String[] ERRORS_SHEET_HEADERS = {"Cell", "Row", "Column", "Value", "Error"};
+    static final int[] ERRORS_SHEET_WIDTHS = {10, 8, 30, 30, 80}; // characters
+    static final int MAX_ERRORS_SHEET_ROWS = 1_048_575; // sheet row limit minus the header
+    private static final String ERRORS_SHEET_COLUMNS = "ABCDE";
+
+    // Worksheet children that must come after <conditionalFormatting>
+    private static final Set<String> AFTER_CONDITIONAL_FORMATTING = Set.of(
+            "dataValidations", "hyperlinks", "printOptions", "pageMargins", "pageSetup", "headerFooter",
+            "rowBreaks", "colBreaks", "customProperties", "cellWatches", "ignoredErrors", "smartTags",
+            "drawing", "legacyDrawing", "legacyDrawingHF", "drawingHF", "picture", "oleObjects", "controls",
+            "webPublishItems", "tableParts", "extLst");
+
+    // Ranges per <conditionalFormatting> element, keeps each sqref attribute reasonably short
+    static final int RANGES_PER_CONDITIONAL_FORMAT = 1000;
+
+    private static final Pattern VML_SHAPE_ID = Pattern.compile("_x0000_s(\\d+)");
+
+    private final ExcelValidationConfig.ErrorHighlightConfig config;
+    private final XMLInputFactory inputFactory = XMLHelper.newXMLInputFactory();
+    private final XMLOutputFactory outputFactory = XMLHelper.newXMLOutputFactory();
+    private final XMLEventFactory eventFactory = XMLHelper.newXMLEventFactory();
+
+    StreamingHighlightWriter(ExcelValidationConfig.ErrorHighlightConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * The parts of a stored package the rewrite needs before it writes anything: its structure,
+     * where the sheet and its styles, comments and notes live, and those small parts themselves.
+     */
+    static final class StoredPackage {
+        private final ContentSource source;
+        private final String sheetName;
+        private final Set<String> entryNames;
+        private final Map<String, byte[]> structure;
+        private final String workbookPart;
+        private final String sheetPart;
+        private final String stylesPart;
+        private final String commentsPart;
+        private final String vmlPart;
+        private final Map<String, byte[]> parts;
+
+        private StoredPackage(ContentSource source, String sheetName, Set<String> entryNames, Map<String, byte[]> structure,
+                              String workbookPart, String sheetPart, String stylesPart, String commentsPart,
+                              String vmlPart, Map<String, byte[]> parts) {
+            this.source = source;
+            this.sheetName = sheetName;
+            this.entryNames = entryNames;
+            this.structure = structure;
+            this.workbookPart = workbookPart;
+            this.sheetPart = sheetPart;
+            this.stylesPart = stylesPart;
+            this.commentsPart = commentsPart;
+            this.vmlPart = vmlPart;
+            this.parts = parts;
+        }
+    }
+
+    /**
+     * Copy the package from {@code source} to {@code out}, highlighting the given errors on {@code sheetName}.
+     */
+    void write(ContentSource source, String sheetName, List<ValidationError> errors, OutputStream out) throws Exception {
+        write(readPackage(source, sheetName), errors, out);
+    }
+
+    /**
+     * First two passes over the package, which fail on a damaged package or a missing sheet;
+     * nothing is written yet, so callers can still report those errors as they see fit.
+     */
+    StoredPackage readPackage(ContentSource source, String sheetName) throws Exception {
+        // Pass 1: package structure (content types, relationships, workbook)
+        Set<String> entryNames = new HashSet<>();
+        Map<String, byte[]> structure = readEntries(source, entryNames, name ->
+                name.equals(CONTENT_TYPES_PART) || name.endsWith(".rels") || name.endsWith("workbook.xml"));
+
+        String workbookPart = findRelationshipTarget(structure.get("_rels/.rels"), "", REL_OFFICE_DOCUMENT);
+        if (workbookPart == null || !structure.containsKey(workbookPart)) {
+            throw new Exception("Workbook part not found in package");
+        }
+        byte[] workbookRels = structure.get(relsPartFor(workbookPart));
+        String sheetPart = findSheetPart(structure.get(workbookPart), workbookRels, workbookPart, sheetName);
+        String stylesPart = findRelationshipTarget(workbookRels, workbookPart, REL_STYLES);
+        if (sheetPart == null || stylesPart == null) {
+            throw new Exception("Sheet '" + sheetName + "' not found in the workbook");
+        }
+
+        String sheetRelsPart = relsPartFor(sheetPart);
+        byte[] sheetRels = structure.get(sheetRelsPart);
+        String commentsPart = findRelationshipTarget(sheetRels, sheetPart, REL_COMMENTS);
+        String vmlPart = findRelationshipTarget(sheetRels, sheetPart, REL_VML);
+
+        // Pass 2: styles and the sheet's existing notes (small parts)
+        Set<String> wanted = new HashSet<>(Arrays.asList(stylesPart, commentsPart, vmlPart));
+        Map<String, byte[]> parts = readEntries(source, null, wanted::contains);
+        return new StoredPackage(source, sheetName, entryNames, structure, workbookPart, sheetPart, stylesPart,
+                commentsPart, vmlPart, parts);
+    }
+
+    /**
+     * Copy a package read by {@link #readPackage} to {@code out}, highlighting the given errors.
+     */
+    void write(StoredPackage stored, List<ValidationError> errors, OutputStream out) throws Exception {
+        ContentSource source = stored.source;
+        String sheetName = stored.sheetName;
+        Set<String> entryNames = stored.entryNames;
+        Map<String, byte[]> structure = stored.structure;
+        Map<String, byte[]> parts = stored.parts;
+        String workbookPart = stored.workbookPart;
+        String sheetPart = stored.sheetPart;
+        String stylesPart = stored.stylesPart;
+        String commentsPart = stored.commentsPart;
+        String vmlPart = stored.vmlPart;
+        byte[] workbookRels = structure.get(relsPartFor(workbookPart));
+        String sheetRelsPart = relsPartFor(sheetPart);
+        byte[] sheetRels = structure.get(sheetRelsPart);
+
+        HighlightPlan plan = new HighlightPlan(errors);
+        Document styles = parseDom(parts.get(stylesPart));
+        int baseXfCount = countChildren(styles, "cellXfs", "xf");
+
+        // Ranges fill: a few conditional formats over coalesced runs instead of one restyle per cell
+        SheetHighlight highlight = new SheetHighlight();
+        if (config.getFill() == ExcelValidationConfig.ErrorHighlightConfig.FillMode.RANGES) {
+            highlight.ranges = ErrorRanges.coalesce(errors);
+            if (!highlight.ranges.isEmpty()) highlight.dxfId = appendHighlightDxf(styles);
+        } else {
+            highlight.cellsByRow = plan.cellsByRow;
+        }
+
+        boolean comments = config.useComments(plan.firstErrors.size());
+        ExistingComments existing = comments && commentsPart != null && parts.containsKey(commentsPart)
+                ? readExistingComments(parts.get(commentsPart))
+                : new ExistingComments();
+        List<ValidationError> notes = comments ? plan.notesExcluding(existing.refs) : List.of();
+
+        int nextShapeId = 1024;
+        if (vmlPart != null && parts.containsKey(vmlPart)) {
+            Matcher m = VML_SHAPE_ID.matcher(new String(parts.get(vmlPart), StandardCharsets.UTF_8));
+            while (m.find()) nextShapeId = Math.max(nextShapeId, Integer.parseInt(m.group(1)));
+        }
+        nextShapeId++;
+
+        // New parts are only needed when there is something to annotate
+        boolean newComments = !notes.isEmpty() && (commentsPart == null || !parts.containsKey(commentsPart));
+        boolean newVml = !notes.isEmpty() && (vmlPart == null || !parts.containsKey(vmlPart));
+        if (newComments) commentsPart = uniquePartName(entryNames, "xl/comments", ".xml");
+        if (newVml) vmlPart = uniquePartName(entryNames, "xl/drawings/vmlDrawing", ".vml");
+
+        Document sheetRelsDoc = null;
+        if (newComments || newVml) {
+            sheetRelsDoc = (sheetRels != null) ? parseDom(sheetRels) : newRelationshipsDocument();
+            if (newComments) addRelationship(sheetRelsDoc, REL_COMMENTS, relativeTarget(sheetPart, commentsPart));
+            if (newVml) highlight.legacyDrawingRelId = addRelationship(sheetRelsDoc, REL_VML, relativeTarget(sheetPart, vmlPart));
+        }
+
+        // Errors sheet: a new worksheet part, registered in workbook.xml and its relationships
+        String errorsSheetPart = null;
+        Document workbookDoc = null;
+        Document workbookRelsDoc = null;
+        if (!comments && errors != null && !errors.isEmpty()) {
+            errorsSheetPart = uniquePartName(entryNames, directoryOf(workbookPart) + "worksheets/sheet", ".xml");
+            workbookRelsDoc = parseDom(workbookRels);
+            String relId = addRelationship(workbookRelsDoc, REL_WORKSHEET, relativeTarget(workbookPart, errorsSheetPart));
+            workbookDoc = parseDom(structure.get(workbookPart));
+            addSheet(workbookDoc, config.getErrorsSheetName(), relId);
+        }
+        String workbookRelsPart = relsPartFor(workbookPart);
+
+        // Pass 3: copy everything, rewriting the parts that change
+        ZipOutputStream zip = new ZipOutputStream(out);
+        Map<Integer, Integer> styleMapping = new LinkedHashMap<>();
+        try (ZipArchiveInputStream in = openPackage(source)) {
+            ZipArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (name.equals(stylesPart)) continue; // written last, once the style mapping is known
+
+                zip.putNextEntry(new ZipEntry(name));
+                OutputStream entryOut = new NonClosingOutputStream(zip);
+                if (name.equals(sheetPart) && highlight.changesSheet()) {
+                    rewriteSheet(in, entryOut, highlight, styleMapping, baseXfCount);
+                } else if (name.equals(CONTENT_TYPES_PART) && (newComments || newVml || errorsSheetPart != null)) {
+                    Document ct = parseDom(in.readAllBytes());
+                    if (newComments) addOverride(ct, "/" + commentsPart, CT_COMMENTS);
+                    if (newVml) addDefault(ct, "vml", CT_VML);
+                    if (errorsSheetPart != null) addOverride(ct, "/" + errorsSheetPart, CT_WORKSHEET);
+                    writeDom(ct, entryOut);
+                } else if (name.equals(workbookPart) && workbookDoc != null) {
+                    writeDom(workbookDoc, entryOut);
+                } else if (name.equals(workbookRelsPart) && workbookRelsDoc != null) {
+                    writeDom(workbookRelsDoc, entryOut);
+                } else if (name.equals(sheetRelsPart) && sheetRelsDoc != null) {
+                    writeDom(sheetRelsDoc, entryOut);
+                } else if (name.equals(commentsPart) && !notes.isEmpty()) {
+                    appendComments(in, entryOut, notes, existing);
+                } else if (name.equals(vmlPart) && !notes.isEmpty()) {
+                    String vml = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    int end = vml.lastIndexOf("</xml>");
+                    if (end < 0) end = vml.length();
+                    entryOut.write(vml.substring(0, end).getBytes(StandardCharsets.UTF_8));
+                    writeVmlShapes(entryOut, notes, nextShapeId);
+                    entryOut.write(vml.substring(end).getBytes(StandardCharsets.UTF_8));
+                } else {
+                    in.transferTo(entryOut);
+                }
+                zip.closeEntry();
+            }
+        }
+
+        zip.putNextEntry(new ZipEntry(stylesPart));
+        writeDom(appendHighlightStyles(styles, styleMapping), new NonClosingOutputStream(zip));
+        zip.closeEntry();
+
+        if (sheetRelsDoc != null && sheetRels == null) {
+            zip.putNextEntry(new ZipEntry(sheetRelsPart));
+            writeDom(sheetRelsDoc, new NonClosingOutputStream(zip));
+            zip.closeEntry();
+        }
+        if (newComments) {
+            zip.putNextEntry(new ZipEntry(commentsPart));
+            writeNewComments(new NonClosingOutputStream(zip), notes);
+            zip.closeEntry();
+        }
+        if (newVml) {
+            zip.putNextEntry(new ZipEntry(vmlPart));
+            OutputStream vmlOut = new NonClosingOutputStream(zip);
+            vmlOut.write(VML_HEADER.getBytes(StandardCharsets.UTF_8));
+            writeVmlShapes(vmlOut, notes, nextShapeId);
+            vmlOut.write("</xml>".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        if (errorsSheetPart != null) {
+            zip.putNextEntry(new ZipEntry(errorsSheetPart));
+            writeErrorsSheet(new NonClosingOutputStream(zip), errors, sheetName);
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    // ------------------------------------------------------------------
+    // Sheet rewrite
+    // ------------------------------------------------------------------
+
+    /**
+     * What the sheet rewrite has to do: restyle cells, add conditional formats, link the VML drawing.
+     */
+    private static class SheetHighlight {
+        TreeMap<Integer, TreeSet<Integer>> cellsByRow = new TreeMap<>();
+        List<CellRangeAddress> ranges = List.of();
+        int dxfId = -1;
+        String legacyDrawingRelId;
+
+        boolean changesSheet() {
+            return !cellsByRow.isEmpty() || !ranges.isEmpty() || legacyDrawingRelId != null;
+        }
+    }
+
+    private void rewriteSheet(InputStream in, OutputStream out, SheetHighlight highlight, Map<Integer, Integer> styleMapping,
+                              int baseXfCount) throws Exception {
+        XMLEventReader reader = inputFactory.createXMLEventReader(new NonClosingInputStream(in));
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+
+        String legacyDrawingRelId = highlight.legacyDrawingRelId;
+        Iterator<Map.Entry<Integer, TreeSet<Integer>>> pendingRows = highlight.cellsByRow.entrySet().iterator();
+        Map.Entry<Integer, TreeSet<Integer>> pendingRow = pendingRows.hasNext() ? pendingRows.next() : null;
+        Iterator<Integer> pendingCols = null;
+        Integer pendingCol = null;
+
+        String prefix = "";
+        String ns = NS_MAIN;
+        int depth = 0;
+        int currentRow = -1;
+        int nextCol = 0;
+        boolean inSheetData = false;
+        boolean legacyDrawingPending = legacyDrawingRelId != null;
+        boolean conditionalFormatPending = !highlight.ranges.isEmpty();
+        int maxPriority = 0;
+
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+
+            if (event.isStartElement()) {
+                StartElement start = event.asStartElement();
+                String local = start.getName().getLocalPart();
+                depth++;
+
+                if (depth == 1) {
+                    prefix = start.getName().getPrefix();
+                    ns = start.getName().getNamespaceURI();
+                } else if (local.equals("cfRule")) {
+                    Attribute priority = start.getAttributeByName(new QName("priority"));
+                    if (priority != null) maxPriority = Math.max(maxPriority, Integer.parseInt(priority.getValue()));
+                }
+                if (depth == 2 && conditionalFormatPending && AFTER_CONDITIONAL_FORMATTING.contains(local)) {
+                    writeConditionalFormatting(writer, prefix, ns, highlight, maxPriority);
+                    conditionalFormatPending = false;
+                }
+                if (depth == 2 && legacyDrawingPending && AFTER_LEGACY_DRAWING.contains(local)) {
+                    writeLegacyDrawing(writer, prefix, ns, legacyDrawingRelId);
+                    legacyDrawingPending = false;
+                }
+
+                if (depth == 2 && local.equals("sheetData")) {
+                    inSheetData = true;
+                } else if (inSheetData && local.equals("row")) {
+                    Attribute r = start.getAttributeByName(new QName("r"));
+                    currentRow = (r != null) ? Integer.parseInt(r.getValue()) - 1 : currentRow + 1;
+                    nextCol = 0;
+                    // Error rows that do not exist in the sheet and come before this one
+                    while (pendingRow != null && pendingRow.getKey() < currentRow) {
+                        writeSyntheticRow(writer, prefix, ns, pendingRow.getKey(), pendingRow.getValue(), styleMapping, baseXfCount);
+                        pendingRow = pendingRows.hasNext() ? pendingRows.next() : null;
+                    }
+                    if (pendingRow != null && pendingRow.getKey() == currentRow) {
+                        pendingCols = pendingRow.getValue().iterator();
+                        pendingCol = pendingCols.next();
+                        pendingRow = pendingRows.hasNext() ? pendingRows.next() : null;
+                    } else {
+                        pendingCols = null;
+                        pendingCol = null;
+                    }
+                } else if (inSheetData && local.equals("c")) {
+                    Attribute r = start.getAttributeByName(new QName("r"));
+                    int col = (r != null) ? new CellReference(r.getValue()).getCol() : nextCol;
+                    nextCol = col + 1;
+                    while (pendingCol != null && pendingCol < col) {
+                        writeSyntheticCell(writer, prefix, ns, currentRow, pendingCol, styleMapping, baseXfCount);
+                        pendingCol = pendingCols.hasNext() ? pendingCols.next() : null;
+                    }
+                    if (pendingCol != null && pendingCol == col) {
+                        event = withStyle(start, styleMapping, baseXfCount);
+                        pendingCol = pendingCols.hasNext() ? pendingCols.next() : null;
+                    }
+                }
+            } else if (event.isEndElement()) {
+                String local = event.asEndElement().getName().getLocalPart();
+                if (inSheetData && local.equals("row")) {
+                    while (pendingCol != null) {
+                        writeSyntheticCell(writer, prefix, ns, currentRow, pendingCol, styleMapping, baseXfCount);
+                        pendingCol = pendingCols.hasNext() ? pendingCols.next() : null;
+                    }
+                } else if (depth == 2 && local.equals("sheetData")) {
+                    while (pendingRow != null) {
+                        writeSyntheticRow(writer, prefix, ns, pendingRow.getKey(), pendingRow.getValue(), styleMapping, baseXfCount);
+                        pendingRow = pendingRows.hasNext() ? pendingRows.next() : null;
+                    }
+                    inSheetData = false;
+                } else if (depth == 1) {
+                    if (conditionalFormatPending) {
+                        writeConditionalFormatting(writer, prefix, ns, highlight, maxPriority);
+                        conditionalFormatPending = false;
+                    }
+                    if (legacyDrawingPending) {
+                        writeLegacyDrawing(writer, prefix, ns, legacyDrawingRelId);
+                        legacyDrawingPending = false;
+                    }
+                }
+                depth--;
+            }
+            writer.add(event);
+        }
+        writer.flush();
+        writer.close();
+        reader.close();
+    }
+
+    private StartElement withStyle(StartElement cell, Map<Integer, Integer> styleMapping, int baseXfCount) {
+        List<Attribute> attributes = new ArrayList<>();
+        int originalStyle = 0;
+        Iterator<Attribute> it = cell.getAttributes();
+        while (it.hasNext()) {
+            Attribute a = it.next();
+            if (a.getName().getLocalPart().equals("s") && a.getName().getNamespaceURI().isEmpty()) {
+                originalStyle = Integer.parseInt(a.getValue());
+            } else {
+                attributes.add(a);
+            }
+        }
+        int style = highlightStyleFor(originalStyle, styleMapping, baseXfCount);
+        attributes.add(eventFactory.createAttribute("s", Integer.toString(style)));
+        return eventFactory.createStartElement(cell.getName(), attributes.iterator(), cell.getNamespaces());
+    }
+
+    private void writeSyntheticRow(XMLEventWriter writer, String prefix, String ns, int rowIndex, Set<Integer> cols,
+                                   Map<Integer, Integer> styleMapping, int baseXfCount) throws Exception {
+        writer.add(eventFactory.createStartElement(prefix, ns, "row",
+                List.of(eventFactory.createAttribute("r", Integer.toString(rowIndex + 1))).iterator(), null));
+        for (Integer col : cols) {
+            writeSyntheticCell(writer, prefix, ns, rowIndex, col, styleMapping, baseXfCount);
+        }
+        writer.add(eventFactory.createEndElement(prefix, ns, "row"));
+    }
+
+    private void writeSyntheticCell(XMLEventWriter writer, String prefix, String ns, int rowIndex, int colIndex,
+                                    Map<Integer, Integer> styleMapping, int baseXfCount) throws Exception {
+        String ref = new CellReference(rowIndex, colIndex).formatAsString(false);
+        int style = highlightStyleFor(0, styleMapping, baseXfCount);
+        writer.add(eventFactory.createStartElement(prefix, ns, "c", List.of(
+                eventFactory.createAttribute("r", ref),
+                eventFactory.createAttribute("s", Integer.toString(style))).iterator(), null));
+        writer.add(eventFactory.createEndElement(prefix, ns, "c"));
+    }
+
+    /**
+     * One always-true expression rule per block of ranges, all pointing at the highlight dxf.
+     */
+    private void writeConditionalFormatting(XMLEventWriter writer, String prefix, String ns, SheetHighlight highlight,
+                                            int maxPriority) throws Exception {
+        List<CellRangeAddress> ranges = highlight.ranges;
+        int priority = maxPriority;
+        StringBuilder sqref = new StringBuilder();
+        for (int from = 0; from < ranges.size(); from += RANGES_PER_CONDITIONAL_FORMAT) {
+            sqref.setLength(0);
+            for (int i = from; i < Math.min(ranges.size(), from + RANGES_PER_CONDITIONAL_FORMAT); i++) {
+                if (sqref.length() > 0) sqref.append(' ');
+                sqref.append(ranges.get(i).formatAsString());
+            }
+            writer.add(eventFactory.createStartElement(prefix, ns, "conditionalFormatting",
+                    List.of(eventFactory.createAttribute("sqref", sqref.toString())).iterator(), null));
+            writer.add(eventFactory.createStartElement(prefix, ns, "cfRule", List.of(
+                    eventFactory.createAttribute("type", "expression"),
+                    eventFactory.createAttribute("dxfId", Integer.toString(highlight.dxfId)),
+                    eventFactory.createAttribute("priority", Integer.toString(++priority))).iterator(), null));
+            writeTextElement(writer, prefix, ns, "formula", "TRUE");
+            writer.add(eventFactory.createEndElement(prefix, ns, "cfRule"));
+            writer.add(eventFactory.createEndElement(prefix, ns, "conditionalFormatting"));
+        }
+    }
+
+    private void writeLegacyDrawing(XMLEventWriter writer, String prefix, String ns, String relId) throws Exception {
+        writer.add(eventFactory.createStartElement(prefix, ns, "legacyDrawing",
+                List.of(eventFactory.createAttribute("r", NS_REL, "id", relId)).iterator(),
+                List.of(eventFactory.createNamespace("r", NS_REL)).iterator()));
+        writer.add(eventFactory.createEndElement(prefix, ns, "legacyDrawing"));
+    }
+
+    private static int highlightStyleFor(int originalStyle, Map<Integer, Integer> styleMapping, int baseXfCount) {
+        return styleMapping.computeIfAbsent(originalStyle, s -> baseXfCount + styleMapping.size());
+    }
+
+    // ------------------------------------------------------------------
+    // Styles
+    // ------------------------------------------------------------------
+
+    private Document appendHighlightStyles(Document styles, Map<Integer, Integer> styleMapping) {
+        if (styleMapping.isEmpty()) return styles;
+
+        Element root = styles.getDocumentElement();
+        Element fills = firstChild(root, "fills");
+        if (fills == null) {
+            fills = styles.createElementNS(NS_MAIN, "fills");
+            root.insertBefore(fills, root.getFirstChild());
+        }
+        Element fill = styles.createElementNS(NS_MAIN, "fill");
+        Element patternFill = styles.createElementNS(NS_MAIN, "patternFill");
+        patternFill.setAttribute("patternType", "solid");
+        Element fgColor = styles.createElementNS(NS_MAIN, "fgColor");
+        fgColor.setAttribute("indexed", Short.toString(highlightColorIndex()));
+        Element bgColor = styles.createElementNS(NS_MAIN, "bgColor");
+        bgColor.setAttribute("indexed", "64");
+        patternFill.appendChild(fgColor);
+        patternFill.appendChild(bgColor);
+        fill.appendChild(patternFill);
+        fills.appendChild(fill);
+        int fillId = childElements(fills, "fill").size() - 1;
+        fills.setAttribute("count", Integer.toString(fillId + 1));
+
+        Element cellXfs = firstChild(root, "cellXfs");
+        List<Element> xfs = childElements(cellXfs, "xf");
+        for (Integer originalStyle : styleMapping.keySet()) {
+            Element xf;
+            if (originalStyle < xfs.size()) {
+                xf = (Element) xfs.get(originalStyle).cloneNode(true);
+            } else {
+                xf = styles.createElementNS(NS_MAIN, "xf");
+                xf.setAttribute("numFmtId", "0");
+                xf.setAttribute("fontId", "0");
+                xf.setAttribute("borderId", "0");
+                xf.setAttribute("xfId", "0");
+            }
+            xf.setAttribute("fillId", Integer.toString(fillId));
+            xf.setAttribute("applyFill", "1");
+            cellXfs.appendChild(xf);
+        }
+        cellXfs.setAttribute("count", Integer.toString(xfs.size() + styleMapping.size()));
+        return styles;
+    }
+
+    /**
+     * Append a solid highlight fill to the differential formats; returns its dxfId.
+     */
+    private int appendHighlightDxf(Document styles) {
+        Element root = styles.getDocumentElement();
+        Element dxfs = firstChild(root, "dxfs");
+        if (dxfs == null) {
+            dxfs = styles.createElementNS(NS_MAIN, "dxfs");
+            // dxfs comes right before tableStyles/colors/extLst in CT_Stylesheet
+            Node before = null;
+            for (String next : List.of("tableStyles", "colors", "extLst")) {
+                before = firstChild(root, next);
+                if (before != null) break;
+            }
+            root.insertBefore(dxfs, before);
+        }
+        Element dxf = styles.createElementNS(NS_MAIN, "dxf");
+        Element fill = styles.createElementNS(NS_MAIN, "fill");
+        Element patternFill = styles.createElementNS(NS_MAIN, "patternFill");
+        patternFill.setAttribute("patternType", "solid");
+        // For differential fills the cell colour is the background colour
+        Element bgColor = styles.createElementNS(NS_MAIN, "bgColor");
+        bgColor.setAttribute("indexed", Short.toString(highlightColorIndex()));
+        patternFill.appendChild(bgColor);
+        fill.appendChild(patternFill);
+        dxf.appendChild(fill);
+        dxfs.appendChild(dxf);
+        int dxfId = childElements(dxfs, "dxf").size() - 1;
+        dxfs.setAttribute("count", Integer.toString(dxfId + 1));
+        return dxfId;
+    }
+
+    private short highlightColorIndex() {
+        try {
+            return IndexedColors.valueOf(config.getBackgroundColor().trim().toUpperCase(Locale.ROOT)).getIndex();
+        } catch (Exception e) {
+            return IndexedColors.RED.getIndex();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Comments + VML
+    // ------------------------------------------------------------------
+
+    private static class ExistingComments {
+        final Set<String> refs = new HashSet<>();
+        final List<String> authors = new ArrayList<>();
+    }
+
+    private ExistingComments readExistingComments(byte[] content) throws Exception {
+        ExistingComments existing = new ExistingComments();
+        XMLEventReader reader = inputFactory.createXMLEventReader(new ByteArrayInputStream(content));
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (!event.isStartElement()) continue;
+            StartElement start = event.asStartElement();
+            String local = start.getName().getLocalPart();
+            if (local.equals("comment")) {
+                Attribute ref = start.getAttributeByName(new QName("ref"));
+                if (ref != null) existing.refs.add(ref.getValue());
+            } else if (local.equals("author")) {
+                existing.authors.add(reader.getElementText());
+            }
+        }
+        reader.close();
+        return existing;
+    }
+
+    private void appendComments(InputStream in, OutputStream out, List<ValidationError> notes,
+                                ExistingComments existing) throws Exception {
+        XMLEventReader reader = inputFactory.createXMLEventReader(new NonClosingInputStream(in));
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+        int authorId = existing.authors.indexOf(config.getCommentAuthor());
+        boolean addAuthor = authorId < 0;
+        if (addAuthor) authorId = existing.authors.size();
+
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isEndElement()) {
+                QName name = event.asEndElement().getName();
+                if (name.getLocalPart().equals("authors") && addAuthor) {
+                    writeTextElement(writer, name.getPrefix(), name.getNamespaceURI(), "author", config.getCommentAuthor());
+                } else if (name.getLocalPart().equals("commentList")) {
+                    writeCommentElements(writer, name.getPrefix(), name.getNamespaceURI(), notes, authorId);
+                }
+            }
+            writer.add(event);
+        }
+        writer.flush();
+        writer.close();
+        reader.close();
+    }
+
+    private void writeNewComments(OutputStream out, List<ValidationError> notes) throws Exception {
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+        writer.add(eventFactory.createStartDocument("UTF-8", "1.0", true));
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "comments", null,
+                List.of(eventFactory.createNamespace(NS_MAIN)).iterator()));
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "authors"));
+        writeTextElement(writer, "", NS_MAIN, "author", config.getCommentAuthor());
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "authors"));
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "commentList"));
+        writeCommentElements(writer, "", NS_MAIN, notes, 0);
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "commentList"));
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "comments"));
+        writer.add(eventFactory.createEndDocument());
+        writer.flush();
+        writer.close();
+    }
+
+    private void writeCommentElements(XMLEventWriter writer, String prefix, String ns,
+                                      List<ValidationError> notes, int authorId) throws Exception {
+        for (ValidationError error : notes) {
+            String ref = new CellReference(error.getRowNumber() - 1, error.getColumnIndex()).formatAsString(false);
+            writer.add(eventFactory.createStartElement(prefix, ns, "comment", List.of(
+                    eventFactory.createAttribute("ref", ref),
+                    eventFactory.createAttribute("authorId", Integer.toString(authorId))).iterator(), null));
+            writer.add(eventFactory.createStartElement(prefix, ns, "text"));
+            writer.add(eventFactory.createStartElement(prefix, ns, "t",
+                    List.of(eventFactory.createAttribute("xml", NS_XML, "space", "preserve")).iterator(), null));
+            writer.add(eventFactory.createCharacters(commentText(error)));
+            writer.add(eventFactory.createEndElement(prefix, ns, "t"));
+            writer.add(eventFactory.createEndElement(prefix, ns, "text"));
+            writer.add(eventFactory.createEndElement(prefix, ns, "comment"));
+        }
+    }
+
+    private void writeTextElement(XMLEventWriter writer, String prefix, String ns, String local, String text) throws Exception {
+        writer.add(eventFactory.createStartElement(prefix, ns, local));
+        writer.add(eventFactory.createCharacters(text));
+        writer.add(eventFactory.createEndElement(prefix, ns, local));
+    }
+
+    private String commentText(ValidationError error) {
+        String text = config.getCommentPrefix() + error.getMessage();
+        if (config.isShowCurrentValue()) {
+            text += "\nCurrent value: " + (error.getCellValue() == null ? "" : error.getCellValue());
+        }
+        return text;
+    }
+
+    private static final String VML_HEADER =
+            "<xml xmlns:v=\"urn:schemas-microsoft-com:vml\" xmlns:o=\"urn:schemas-microsoft-com:office:office\""
+                    + " xmlns:x=\"urn:schemas-microsoft-com:office:excel\">"
+                    + "<o:shapelayout v:ext=\"edit\"><o:idmap v:ext=\"edit\" data=\"1\"/></o:shapelayout>"
+                    + "<v:shapetype id=\"_x0000_t202\" coordsize=\"21600,21600\" o:spt=\"202\" path=\"m,l,21600r21600,l21600,xe\">"
+                    + "<v:stroke joinstyle=\"miter\"/><v:path gradientshapeok=\"t\" o:connecttype=\"rect\"/></v:shapetype>";
+
+    private void writeVmlShapes(OutputStream out, List<ValidationError> notes, int firstShapeId) throws IOException {
+        int shapeId = firstShapeId;
+        StringBuilder sb = new StringBuilder(512);
+        for (ValidationError error : notes) {
+            int row = error.getRowNumber() - 1;
+            int col = error.getColumnIndex();
+            sb.setLength(0);
+            sb.append("<v:shape id=\"_x0000_s").append(shapeId++).append("\" type=\"#_x0000_t202\"")
+                    .append(" style=\"position:absolute;visibility:hidden\" fillcolor=\"#ffffe1\" o:insetmode=\"auto\">")
+                    .append("<v:fill color2=\"#ffffe1\"/><v:shadow on=\"t\" color=\"black\" obscured=\"t\"/>")
+                    .append("<v:path o:connecttype=\"none\"/>")
+                    .append("<v:textbox style=\"mso-direction-alt:auto\"><div style=\"text-align:left\"></div></v:textbox>")
+                    .append("<x:ClientData ObjectType=\"Note\"><x:MoveWithCells/><x:SizeWithCells/>")
+                    .append("<x:Anchor>").append(col).append(", 0, ").append(row).append(", 0, ")
+                    .append(col + config.getCommentWidth()).append(", 0, ")
+                    .append(row + config.getCommentHeight()).append(", 0</x:Anchor>")
+                    .append("<x:AutoFill>False</x:AutoFill>")
+                    .append("<x:Row>").append(row).append("</x:Row>")
+                    .append("<x:Column>").append(col).append("</x:Column>")
+                    .append("</x:ClientData></v:shape>");
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Errors sheet
+    // ------------------------------------------------------------------
+
+    /**
+     * One row per error (header frozen on top), written straight to the entry with inline strings
+     * so the shared strings table is left alone. Hyperlinks are written in a second pass over the errors.
+     */
+    private void writeErrorsSheet(OutputStream out, List<ValidationError> errors, String dataSheetName) throws Exception {
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+        writer.add(eventFactory.createStartDocument("UTF-8", "1.0", true));
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "worksheet", null,
+                List.of(eventFactory.createNamespace(NS_MAIN)).iterator()));
+
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "sheetViews"));
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "sheetView",
+                List.of(eventFactory.createAttribute("workbookViewId", "0")).iterator(), null));
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "pane", List.of(
+                eventFactory.createAttribute("ySplit", "1"),
+                eventFactory.createAttribute("topLeftCell", "A2"),
+                eventFactory.createAttribute("activePane", "bottomLeft"),
+                eventFactory.createAttribute("state", "frozen")).iterator(), null));
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "pane"));
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "sheetView"));
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "sheetViews"));
+
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "cols"));
+        for (int i = 0; i < ERRORS_SHEET_WIDTHS.length; i++) {
+            writer.add(eventFactory.createStartElement("", NS_MAIN, "col", List.of(
+                    eventFactory.createAttribute("min", Integer.toString(i + 1)),
+                    eventFactory.createAttribute("max", Integer.toString(i + 1)),
+                    eventFactory.createAttribute("width", Integer.toString(ERRORS_SHEET_WIDTHS[i])),
+                    eventFactory.createAttribute("customWidth", "1")).iterator(), null));
+            writer.add(eventFactory.createEndElement("", NS_MAIN, "col"));
+        }
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "cols"));
+
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "sheetData"));
+        startRow(writer, 1);
+        for (int i = 0; i < ERRORS_SHEET_HEADERS.length; i++) {
+            writeInlineStringCell(writer, i, 1, ERRORS_SHEET_HEADERS[i]);
+        }
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "row"));
+
+        int listed = Math.min(errors.size(), MAX_ERRORS_SHEET_ROWS - 1);
+        for (int i = 0; i < listed; i++) {
+            ValidationError error = errors.get(i);
+            int rowNum = i + 2;
+            startRow(writer, rowNum);
+            if (hasCell(error)) {
+                writeInlineStringCell(writer, 0, rowNum, cellRef(error));
+                writeNumberCell(writer, 1, rowNum, error.getRowNumber());
+            }
+            writeInlineStringCell(writer, 2, rowNum, error.getColumnName());
+            writeInlineStringCell(writer, 3, rowNum, error.getCellValue());
+            writeInlineStringCell(writer, 4, rowNum, error.getMessage());
+            writer.add(eventFactory.createEndElement("", NS_MAIN, "row"));
+        }
+        if (listed < errors.size()) {
+            startRow(writer, listed + 2);
+            writeInlineStringCell(writer, 4, listed + 2, "... and " + (errors.size() - listed) + " more errors");
+            writer.add(eventFactory.createEndElement("", NS_MAIN, "row"));
+        }
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "sheetData"));
+
+        boolean hyperlinks = false;
+        for (int i = 0; i < listed; i++) {
+            ValidationError error = errors.get(i);
+            if (!hasCell(error)) continue;
+            if (!hyperlinks) {
+                writer.add(eventFactory.createStartElement("", NS_MAIN, "hyperlinks"));
+                hyperlinks = true;
+            }
+            String ref = cellRef(error);
+            writer.add(eventFactory.createStartElement("", NS_MAIN, "hyperlink", List.of(
+                    eventFactory.createAttribute("ref", "A" + (i + 2)),
+                    eventFactory.createAttribute("location", cellLocation(dataSheetName, ref)),
+                    eventFactory.createAttribute("display", ref)).iterator(), null));
+            writer.add(eventFactory.createEndElement("", NS_MAIN, "hyperlink"));
+        }
+        if (hyperlinks) writer.add(eventFactory.createEndElement("", NS_MAIN, "hyperlinks"));
+
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "worksheet"));
+        writer.add(eventFactory.createEndDocument());
+        writer.flush();
+        writer.close();
+    }
+
+    private void startRow(XMLEventWriter writer, int rowNum) throws Exception {
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "row",
+                List.of(eventFactory.createAttribute("r", Integer.toString(rowNum))).iterator(), null));
+    }
+
+    private void writeInlineStringCell(XMLEventWriter writer, int col, int rowNum, String text) throws Exception {
+        if (text == null || text.isEmpty()) return;
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "c", List.of(
+                eventFactory.createAttribute("r", ERRORS_SHEET_COLUMNS.charAt(col) + Integer.toString(rowNum)),
+                eventFactory.createAttribute("t", "inlineStr")).iterator(), null));
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "is"));
+        writeTextElement(writer, "", NS_MAIN, "t", text);
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "is"));
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "c"));
+    }
+
+    private void writeNumberCell(XMLEventWriter writer, int col, int rowNum, long value) throws Exception {
+        writer.add(eventFactory.createStartElement("", NS_MAIN, "c",
+                List.of(eventFactory.createAttribute("r", ERRORS_SHEET_COLUMNS.charAt(col) + Integer.toString(rowNum))).iterator(), null));
+        writeTextElement(writer, "", NS_MAIN, "v", Long.toString(value));
+        writer.add(eventFactory.createEndElement("", NS_MAIN, "c"));
+    }
+
+    /**
+     * Whether the error points at a cell (missing column errors have row 0).
+     */
+    static boolean hasCell(ValidationError error) {
+        return error.getRowNumber() > 0 && error.getColumnIndex() >= 0;
+    }
+
+    static String cellRef(ValidationError error) {
+        return new CellReference(error.getRowNumber() - 1, error.getColumnIndex()).formatAsString(false);
+    }
+
+    /**
+     * Hyperlink target of a cell on another sheet, e.g. 'My Data'!B5.
+     */
+    static String cellLocation(String sheetName, String ref) {
+        return "'" + sheetName.replace("'", "''") + "'!" + ref;
+    }
+
+    /**
+     * {@code base}, or "base (2)", "base (3)"... if the workbook already has a sheet by that name.
+     * Sheet names are compared case-insensitively and limited to 31 characters, as in Excel.
+     */
+    static String uniqueSheetName(Collection<String> existingNames, String base) {
+        Set<String> taken = new HashSet<>();
+        for (String name : existingNames) taken.add(name.toLowerCase(Locale.ROOT));
+        String name = truncateSheetName(base, "");
+        for (int n = 2; taken.contains(name.toLowerCase(Locale.ROOT)); n++) {
+            name = truncateSheetName(base, " (" + n + ")");
+        }
+        return name;
+    }
+
+    private static String truncateSheetName(String base, String suffix) {
+        return base.substring(0, Math.min(base.length(), 31 - suffix.length())) + suffix;
+    }
+
+    private static void addSheet(Document workbook, String name, String relId) {
+        Element root = workbook.getDocumentElement();
+        Element sheets = firstChild(root, "sheets");
+        List<String> names = new ArrayList<>();
+        int maxSheetId = 0;
+        for (Element sheet : childElements(sheets, "sheet")) {
+            names.add(sheet.getAttribute("name"));
+            try {
+                maxSheetId = Math.max(maxSheetId, Integer.parseInt(sheet.getAttribute("sheetId")));
+            } catch (NumberFormatException ignored) {
+                // keep the highest valid id
+            }
+        }
+
+        String relPrefix = root.lookupPrefix(NS_REL);
+        if (relPrefix == null) {
+            relPrefix = "r";
+            root.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:r", NS_REL);
+        }
+        String prefix = sheets.getPrefix();
+        Element sheet = workbook.createElementNS(NS_MAIN, prefix == null ? "sheet" : prefix + ":sheet");
+        sheet.setAttribute("name", uniqueSheetName(names, name));
+        sheet.setAttribute("sheetId", Integer.toString(maxSheetId + 1));
+        sheet.setAttributeNS(NS_REL, relPrefix + ":id", relId);
+        sheets.appendChild(sheet);
+    }
+
+    // ------------------------------------------------------------------
+    // Error positions
+    // ------------------------------------------------------------------
+
+    /**
+     * Error cells grouped by 0-based row, plus the first error of each cell (the one that gets the note).
+     */
+    private static class HighlightPlan {
+        final TreeMap<Integer, TreeSet<Integer>> cellsByRow = new TreeMap<>();
+        final List<ValidationError> firstErrors = new ArrayList<>();
+
+        HighlightPlan(List<ValidationError> errors) {
+            if (errors == null) return;
+            for (ValidationError error : errors) {
+                // A rowNumber of 0 indicates a missing column error, which cannot be highlighted on a cell
+                if (error.getRowNumber() <= 0 || error.getColumnIndex() < 0) continue;
+                if (cellsByRow.computeIfAbsent(error.getRowNumber() - 1, r -> new TreeSet<>()).add(error.getColumnIndex())) {
+                    firstErrors.add(error);
+                }
+            }
+        }
+
+        List<ValidationError> notesExcluding(Set<String> existingRefs) {
+            if (existingRefs.isEmpty()) return firstErrors;
+            List<ValidationError> notes = new ArrayList<>();
+            for (ValidationError error : firstErrors) {
+                String ref = new CellReference(error.getRowNumber() - 1, error.getColumnIndex()).formatAsString(false);
+                if (!existingRefs.contains(ref)) notes.add(error);
+            }
+            return notes;
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Package helpers
+    // ------------------------------------------------------------------
+
+    private interface NameFilter {
+        boolean accept(String name);
+    }
+
+    /**
+     * Entries of the stored package in file order. Unlike java.util.zip.ZipInputStream this also
+     * reads entries whose sizes only follow the data (as streaming writers such as SXSSF produce).
+     */
+    private static ZipArchiveInputStream openPackage(ContentSource source) throws IOException {
+        return new ZipArchiveInputStream(source.open(), StandardCharsets.UTF_8.name(), true, true);
+    }
+
+    private static Map<String, byte[]> readEntries(ContentSource source, Set<String> names, NameFilter filter) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipArchiveInputStream in = openPackage(source)) {
+            ZipArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (names != null) names.add(entry.getName());
+                if (filter.accept(entry.getName())) {
+                    entries.put(entry.getName(), in.readAllBytes());
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static String uniquePartName(Set<String> existing, String base, String extension) {
+        int i = 1;
+        while (existing.contains(base + i + extension)) i++;
+        return base + i + extension;
+    }
+
+    private static String directoryOf(String partName) {
+        return partName.substring(0, partName.lastIndexOf('/') + 1);
+    }
+
+    private static String relsPartFor(String partName) {
+        int slash = partName.lastIndexOf('/');
+        return partName.substring(0, slash + 1) + "_rels/" + partName.substring(slash + 1) + ".rels";
+    }
+
+    private String findSheetPart(byte[] workbookXml, byte[] workbookRels, String workbookPart, String sheetName) throws Exception {
+        Document wb = parseDom(workbookXml);
+        NodeList sheets = wb.getElementsByTagNameNS(NS_MAIN, "sheet");
+        for (int i = 0; i < sheets.getLength(); i++) {
+            Element sheet = (Element) sheets.item(i);
+            if (sheetName.equals(sheet.getAttribute("name"))) {
+                String relId = sheet.getAttributeNS(NS_REL, "id");
+                return findRelationshipTargetById(workbookRels, workbookPart, relId);
+            }
+        }
+        return null;
+    }
+
+    private String findRelationshipTarget(byte[] rels, String sourcePart, String type) throws Exception {
+        if (rels == null) return null;
+        for (Element rel : childElements(parseDom(rels).getDocumentElement(), "Relationship")) {
+            if (type.equals(rel.getAttribute("Type")) && !"External".equals(rel.getAttribute("TargetMode"))) {
+                return resolveTarget(sourcePart, rel.getAttribute("Target"));
+            }
+        }
+        return null;
+    }
+
+    private String findRelationshipTargetById(byte[] rels, String sourcePart, String id) throws Exception {
+        if (rels == null) return null;
+        for (Element rel : childElements(parseDom(rels).getDocumentElement(), "Relationship")) {
+            if (id.equals(rel.getAttribute("Id"))) {
+                return resolveTarget(sourcePart, rel.getAttribute("Target"));
+            }
+        }
+        return null;
+    }
+
+    private static String resolveTarget(String sourcePart, String target) {
+        if (target.startsWith("/")) return target.substring(1);
+        int slash = sourcePart.lastIndexOf('/');
+        Deque<String> segments = new ArrayDeque<>();
+        if (slash > 0) segments.addAll(Arrays.asList(sourcePart.substring(0, slash).split("/")));
+        for (String segment : target.split("/")) {
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.addLast(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    private static String relativeTarget(String sourcePart, String targetPart) {
+        String[] from = sourcePart.split("/");
+        String[] to = targetPart.split("/");
+        int common = 0;
+        while (common < from.length - 1 && common < to.length - 1 && from[common].equals(to[common])) common++;
+        StringBuilder sb = new StringBuilder();
+        for (int i = common; i < from.length - 1; i++) sb.append("../");
+        for (int i = common; i < to.length; i++) {
+            sb.append(to[i]);
+            if (i < to.length - 1) sb.append('/');
+        }
+        return sb.toString();
+    }
+
+    private static Document newRelationshipsDocument() throws Exception {
+        Document doc = XMLHelper.newDocumentBuilder().newDocument();
+        doc.appendChild(doc.createElementNS(NS_PKG_REL, "Relationships"));
+        return doc;
+    }
+
+    private static String addRelationship(Document rels, String type, String target) {
+        Element root = rels.getDocumentElement();
+        Set<String> ids = new HashSet<>();
+        for (Element rel : childElements(root, "Relationship")) ids.add(rel.getAttribute("Id"));
+        int n = 1;
+        while (ids.contains("rId" + n)) n++;
+        Element rel = rels.createElementNS(NS_PKG_REL, "Relationship");
+        rel.setAttribute("Id", "rId" + n);
+        rel.setAttribute("Type", type);
+        rel.setAttribute("Target", target);
+        root.appendChild(rel);
+        return "rId" + n;
+    }
+
+    private static void addOverride(Document ct, String partName, String contentType) {
+        Element override = ct.createElementNS(NS_CONTENT_TYPES, "Override");
+        override.setAttribute("PartName", partName);
+        override.setAttribute("ContentType", contentType);
+        ct.getDocumentElement().appendChild(override);
+    }
+
+    private static void addDefault(Document ct, String extension, String contentType) {
+        for (Element def : childElements(ct.getDocumentElement(), "Default")) {
+            if (extension.equalsIgnoreCase(def.getAttribute("Extension"))) return;
+        }
+        Element def = ct.createElementNS(NS_CONTENT_TYPES, "Default");
+        def.setAttribute("Extension", extension);
+        def.setAttribute("ContentType", contentType);
+        ct.getDocumentElement().insertBefore(def, ct.getDocumentElement().getFirstChild());
+    }
+
+    private static Document parseDom(byte[] content) throws Exception {
+        return XMLHelper.newDocumentBuilder().parse(new ByteArrayInputStream(content));
+    }
+
+    private static void writeDom(Document doc, OutputStream out) throws Exception {
+        doc.setXmlStandalone(true);
+        Transformer transformer = XMLHelper.newTransformer();
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        transformer.transform(new DOMSource(doc), new StreamResult(out));
+        out.flush();
+    }
+
+    private static int countChildren(Document doc, String parent, String child) {
+        Element p = firstChild(doc.getDocumentElement(), parent);
+        return p == null ? 0 : childElements(p, child).size();
+    }
+
+    private static Element firstChild(Element parent, String localName) {
+        List<Element> children = childElements(parent, localName);
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    private static List<Element> childElements(Element parent, String localName) {
+        List<Element> result = new ArrayList<>();
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element && localName.equals(n.getLocalName())) result.add((Element) n);
+        }
+        return result;
+    }
+
+    /**
+     * Keeps XML writers from closing the zip stream they write an entry into.
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Keeps XML readers from closing the zip stream they read an entry from.
+     */
+    private static class NonClosingInputStream extends FilterInputStream {
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Event-driven (SAX) reader for the data sheet of an .xlsx package.
+ *
+ * The sheet XML is never materialized as a DOM: rows are pushed to a {@link RowHandler}
+ * one at a time with the same displayed text DataFormatter produces (cached formula
+ * results are used, no FormulaEvaluator; formulas saved without a result are reported
+ * separately, see {@link RowHandler#formulaWithoutResult}). Sheet selection mirrors the DOM path:
+ * the only sheet of a single-sheet workbook, otherwise the sheet named "Data".
+ */
+public class StreamingSheetReader {
+
+    /**
+     * Receives the header row first, then every data row present in the sheet XML.
+     * Rows that do not exist in the file are not reported; gap handling is up to the handler.
+     */
+    public interface RowHandler {
+        void startSheet(int sheetCount, String sheetName) throws Exception;
+
+        void header(String[] headers) throws Exception;
+
+        /**
+         * @param rowIndex 0-based sheet row index (always >= 1)
+         * @param values   trimmed display values, one per header column ("" when missing);
+         *                 the array is reused for the next row, so copy what must be kept
+         */
+        void row(int rowIndex, String[] values) throws Exception;
+
+        /**
+         * Called before {@link #row} for each cell of that row holding a formula saved without a
+         * result: its value is "" although the cell is not empty.
+         */
+        default void formulaWithoutResult(int colIndex) throws Exception {
+        }
+
+        /**
+         * Checked after every row; returning false stops parsing and goes straight to endSheet().
+         */
+        default boolean wantsMoreRows() {
+            return true;
+        }
+
+        void endSheet() throws Exception;
+    }
+
+    private static final String DATA_SHEET_NAME = "Data";
+
+    /**
+     * Size figures of the data sheet, read from the zip directory and the sheet's dimension tag
+     * without parsing any cell data.
+     */
+    public static class SheetProfile {
+        private final String sheetName;
+        private final long sheetXmlBytes;
+        private final long sharedStringsBytes;
+        private final int rows;
+        private final int columns;
+
+        SheetProfile(String sheetName, long sheetXmlBytes, long sharedStringsBytes, int rows, int columns) {
+            this.sheetName = sheetName;
+            this.sheetXmlBytes = sheetXmlBytes;
+            this.sharedStringsBytes = sharedStringsBytes;
+            this.rows = rows;
+            this.columns = columns;
+        }
+
+        public String getSheetName() { return sheetName; }
+        /** Uncompressed size of the sheet XML part (-1 if unknown) */
+        public long getSheetXmlBytes() { return sheetXmlBytes; }
+        /** Uncompressed size of the shared strings part (0 if there is none) */
+        public long getSharedStringsBytes() { return sharedStringsBytes; }
+        /** Rows / columns from the dimension tag (-1 if the sheet has none) */
+        public int getRows() { return rows; }
+        public int getColumns() { return columns; }
+    }
+
+    public SheetProfile profile(OPCPackage pkg) throws Exception {
+        XSSFReader reader = new XSSFReader(pkg);
+        List<String> sheetNames = listSheetNames(reader);
+        String target = selectSheet(sheetNames);
+
+        long sharedStringsBytes = 0;
+        for (PackagePart part : pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType())) {
+            sharedStringsBytes += Math.max(0, part.getSize());
+        }
+
+        XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (it.hasNext()) {
+            try (InputStream sheetStream = it.next()) {
+                if (!target.equals(it.getSheetName())) continue;
+
+                int[] dimension = readDimension(sheetStream);
+                return new SheetProfile(target, it.getSheetPart().getSize(), sharedStringsBytes, dimension[0], dimension[1]);
+            }
+        }
+        throw new Exception("Sheet named 'Data' not found in the workbook");
+    }
+
+    /**
+     * Rows and columns covered by the sheet's {@code <dimension ref="A1:K5000"/>}; stops at sheetData.
+     */
+    private static int[] readDimension(InputStream sheetStream) throws Exception {
+        XMLStreamReader xml = XMLHelper.newXMLInputFactory().createXMLStreamReader(sheetStream);
+        try {
+            while (xml.hasNext()) {
+                if (xml.next() != XMLStreamConstants.START_ELEMENT) continue;
+                String name = xml.getLocalName();
+                if ("sheetData".equals(name)) break;
+                if ("dimension".equals(name)) {
+                    String ref = xml.getAttributeValue(null, "ref");
+                    if (ref == null || ref.isEmpty()) break;
+                    CellRangeAddress range = ref.contains(":")
+                            ? CellRangeAddress.valueOf(ref)
+                            : CellRangeAddress.valueOf(ref + ":" + ref);
+                    return new int[]{range.getLastRow() + 1, range.getLastColumn() + 1};
+                }
+            }
+        } finally {
+            xml.close();
+        }
+        return new int[]{-1, -1};
+    }
+
+    /**
+     * Whether the sheet holds a formula cell, or with {@code withoutResultOnly} a formula cell
+     * saved without a result. Scans the sheet XML (no values are read) up to the first such cell.
+     */
+    public boolean hasFormulas(OPCPackage pkg, String sheetName, boolean withoutResultOnly) throws Exception {
+        XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) new XSSFReader(pkg).getSheetsData();
+        while (it.hasNext()) {
+            try (InputStream sheetStream = it.next()) {
+                if (sheetName.equals(it.getSheetName())) return hasFormulas(sheetStream, withoutResultOnly);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Looks at element names only, byte by byte: the sheet XML holds no '<' outside markup
+     * (text and attribute values escape it), and this is several times faster than a parser.
+     */
+    private static boolean hasFormulas(InputStream sheetStream, boolean withoutResultOnly) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        boolean inName = false;
+        boolean endTag = false;
+        int localLength = 0;
+        int local = 0;
+        boolean formula = false;
+        boolean result = false;
+        for (int n; (n = sheetStream.read(buffer)) > 0; ) {
+            for (int i = 0; i < n; i++) {
+                int b = buffer[i];
+                if (!inName) {
+                    if (b == '<') {
+                        inName = true;
+                        endTag = false;
+                        localLength = 0;
+                    }
+                    continue;
+                }
+                if (b == '/' && localLength == 0 && !endTag) {
+                    endTag = true;
+                } else if (b == ':') {
+                    localLength = 0; // prefix, the local name follows
+                } else if (b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                    inName = false;
+                    if (localLength != 1) continue;
+                    if (endTag) {
+                        if (local == 'c' && formula) {
+                            if (!result) return true;
+                            formula = false;
+                        }
+                    } else if (local == 'c') {
+                        formula = false;
+                        result = false;
+                    } else if (local == 'f') {
+                        if (!withoutResultOnly) return true;
+                        formula = true;
+                    } else if (local == 'v') {
+                        result = true;
+                    }
+                } else {
+                    localLength++;
+                    local = b;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<String> listSheetNames(XSSFReader reader) throws Exception {
+        // Count sheets and pick the one to process without parsing any of them
+        List<String> sheetNames = new ArrayList<>();
+        XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (it.hasNext()) {
+            try (InputStream ignored = it.next()) {
+                sheetNames.add(it.getSheetName());
+            }
+        }
+        return sheetNames;
+    }
+
+    private static String selectSheet(List<String> sheetNames) throws Exception {
+        String target = (sheetNames.size() == 1) ? sheetNames.get(0) : null;
+        if (target == null) {
+            for (String name : sheetNames) {
+                if (DATA_SHEET_NAME.equalsIgnoreCase(name)) {
+                    target = name;
+                    break;
+                }
+            }
+        }
+        if (target == null) {
+            throw new Exception("Sheet named 'Data' not found in the workbook");
+        }
+        return target;
+    }
+
+    public void read(OPCPackage pkg, RowHandler handler) throws Exception {
+        XSSFReader reader = new XSSFReader(pkg);
+        StylesTable styles = reader.getStylesTable();
+        ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg, false);
+
+        List<String> sheetNames = listSheetNames(reader);
+        String target = selectSheet(sheetNames);
+
+        handler.startSheet(sheetNames.size(), target);
+
+        XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (it.hasNext()) {
+            try (InputStream sheetStream = it.next()) {
+                if (!target.equals(it.getSheetName())) continue;
+
+                RowDispatcher dispatcher = new RowDispatcher(handler);
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new SheetHandler(styles, strings, dispatcher));
+                try {
+                    parser.parse(new InputSource(sheetStream));
+                } catch (SheetCompleteException e) {
+                    // the handler has all the rows it wants
+                } catch (SheetAbortException e) {
+                    throw (Exception) e.getCause();
+                } catch (SAXException e) {
+                    if (e.getException() != null) throw e.getException();
+                    throw e;
+                }
+                if (!dispatcher.headerSeen) {
+                    throw new Exception("No header row found in sheet");
+                }
+                handler.endSheet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * XSSFSheetXMLHandler that also spots formula cells without a cached result ({@code <f>}
+     * but no {@code <v>}), for which it reports no value at all.
+     */
+    private static class SheetHandler extends XSSFSheetXMLHandler {
+        private final RowDispatcher dispatcher;
+        private String cellReference;
+        private boolean formula;
+        private boolean result;
+
+        SheetHandler(StylesTable styles, ReadOnlySharedStringsTable strings, RowDispatcher dispatcher) {
+            super(styles, null, strings, dispatcher, new DataFormatter(), false);
+            this.dispatcher = dispatcher;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if (XSSFRelation.NS_SPREADSHEETML.equals(uri)) {
+                switch (localName) {
+                    case "c":
+                        cellReference = attributes.getValue("r");
+                        formula = false;
+                        result = false;
+                        break;
+                    case "f":
+                        formula = true;
+                        break;
+                    case "v":
+                        result = true;
+                        break;
+                    default:
+                }
+            }
+            super.startElement(uri, localName, qName, attributes);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (formula && !result && "c".equals(localName) && XSSFRelation.NS_SPREADSHEETML.equals(uri)) {
+                dispatcher.formulaWithoutResult(cellReference);
+                formula = false;
+            }
+            super.endElement(uri, localName, qName);
+        }
+    }
+
+    /**
+     * Collects the cells of the current row and hands complete rows to the RowHandler.
+     */
+    private static class RowDispatcher implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final RowHandler handler;
+        private final List<String> headerCells = new ArrayList<>();
+        private boolean headerSeen;
+        private int currentRow = -1;
+        private int nextColumn;
+        private String[] values;
+        private final List<Integer> formulasWithoutResult = new ArrayList<>();
+
+        RowDispatcher(RowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            currentRow = rowNum;
+            nextColumn = 0;
+            formulasWithoutResult.clear();
+            if (headerSeen) {
+                Arrays.fill(values, "");
+            }
+        }
+
+        void formulaWithoutResult(String cellReference) {
+            int col = (cellReference == null) ? nextColumn : columnIndexOf(cellReference);
+            nextColumn = col + 1;
+            if (headerSeen && col < values.length) {
+                values[col] = "";
+                formulasWithoutResult.add(col);
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int col = (cellReference == null) ? nextColumn : columnIndexOf(cellReference);
+            nextColumn = col + 1;
+            String value = (formattedValue == null) ? "" : formattedValue.trim();
+
+            if (!headerSeen) {
+                if (currentRow != 0) return;
+                while (headerCells.size() < col) headerCells.add("");
+                headerCells.add(value);
+            } else if (col < values.length) {
+                values[col] = value;
+            }
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            try {
+                if (!headerSeen) {
+                    if (rowNum != 0) {
+                        throw new Exception("No header row found in sheet");
+                    }
+                    headerSeen = true;
+                    values = new String[headerCells.size()];
+                    Arrays.fill(values, "");
+                    handler.header(headerCells.toArray(new String[0]));
+                    return;
+                }
+                for (int col : formulasWithoutResult) handler.formulaWithoutResult(col);
+                handler.row(rowNum, values);
+                if (!handler.wantsMoreRows()) {
+                    throw new SheetCompleteException();
+                }
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SheetAbortException(e);
+            }
+        }
+
+        private static int columnIndexOf(String cellReference) {
+            int col = 0;
+            for (int i = 0; i < cellReference.length(); i++) {
+                char ch = cellReference.charAt(i);
+                if (ch < 'A' || ch > 'Z') break;
+                col = col * 26 + (ch - 'A' + 1);
+            }
+            return col - 1;
+        }
+    }
+
+    /**
+     * Ends parsing early once the RowHandler wants no more rows.
+     */
+    private static class SheetCompleteException extends RuntimeException {
+        SheetCompleteException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Carries a checked exception thrown by the RowHandler out of the SAX callbacks.
+     */
+    static class SheetAbortException extends RuntimeException {
+        SheetAbortException(Exception cause) {
+            super(cause);
+        }
+    }
+}
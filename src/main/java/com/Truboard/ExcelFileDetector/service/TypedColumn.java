@@ -0,0 +1,405 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Values of one column stored by type instead of one String per cell.
+ *
+ * The column is created by the validator of its rule (see ColumnValidator.newColumn):
+ * - number / percent / currency: double[] plus one format byte per cell (decimals, thousands
+ *   separators, % sign)
+ * - date: int epoch days, for text in the rule's date format (formats without time fields)
+ * - text and columns without a rule: int[] ids into a per-column dictionary of distinct values,
+ *   validated once per distinct value; columns where most values are distinct (ids, comments)
+ *   switch to plain String[] storage
+ * Empty cells are a bit in a null bitmap. A value is only stored typed when turning it back into
+ * text gives exactly the original; anything else (e.g. "n/a" in a number column) is kept as is.
+ *
+ * As a List<String> the column reads like the list of cell texts it replaces, so sheetData can
+ * be handed to the response unchanged: strings are only created when the list is read, e.g.
+ * while the response is serialized. Validation reads the typed values directly
+ * (see {@link #validate}) when the column belongs to the validator that created it.
+ */
+abstract class TypedColumn extends AbstractList<String> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ColumnValidator owner;
+    private int size;
+    private long[] empty = new long[1]; // null bitmap: cell is ""
+    private long[] other = new long[1]; // cell is kept as text in others
+    private final Map<Integer, String> others = new HashMap<>();
+
+    TypedColumn(ColumnValidator owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Store for a column validated by {@code validator} (null: no rule, dictionary text).
+     */
+    static TypedColumn forValidator(ColumnValidator validator) {
+        return (validator != null) ? validator.newColumn() : new Texts(null);
+    }
+
+    /**
+     * Store {@code value} in row {@code row} (capacity already ensured); false if it cannot be stored typed.
+     */
+    abstract boolean encode(int row, String value);
+
+    /**
+     * Text of a typed row.
+     */
+    abstract String decode(int row);
+
+    /**
+     * Make room for {@code capacity} rows in the typed vectors.
+     */
+    abstract void ensureCapacity(int capacity);
+
+    /**
+     * Validate a typed row with the column's own validator.
+     */
+    abstract void validateTyped(int row, List<String> errors);
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String get(int row) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        if (isSet(empty, row)) return "";
+        if (isSet(other, row)) return others.get(row);
+        return decode(row);
+    }
+
+    @Override
+    public boolean add(String value) {
+        grow(size + 1);
+        store(size, value);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public String set(int row, String value) {
+        String previous = get(row);
+        clearBit(empty, row);
+        if (isSet(other, row)) {
+            clearBit(other, row);
+            others.remove(row);
+        }
+        store(row, value);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        Arrays.fill(empty, 0L);
+        Arrays.fill(other, 0L);
+        others.clear();
+        modCount++;
+    }
+
+    /**
+     * Validate row {@code row} with {@code validator}, appending one message per failed check,
+     * the same way validator.validate(get(row), errors) would.
+     */
+    void validate(int row, ColumnValidator validator, List<String> errors) {
+        if (validator != owner || isSet(empty, row) || isSet(other, row)) {
+            validator.validate(get(row), errors);
+        } else {
+            validateTyped(row, errors);
+        }
+    }
+
+    ColumnValidator owner() {
+        return owner;
+    }
+
+    private void store(int row, String value) {
+        if (value != null && value.isEmpty()) {
+            setBit(empty, row);
+        } else if (value == null || !encode(row, value)) {
+            setBit(other, row);
+            others.put(row, value);
+        }
+    }
+
+    private void grow(int capacity) {
+        if (capacity > empty.length * 64) {
+            int words = Math.max(empty.length * 2, (capacity + 63) / 64);
+            empty = Arrays.copyOf(empty, words);
+            other = Arrays.copyOf(other, words);
+        }
+        ensureCapacity(capacity);
+    }
+
+    static int grownCapacity(int current, int needed) {
+        return Math.max(needed, Math.max(INITIAL_CAPACITY, current + (current >> 1)));
+    }
+
+    private static boolean isSet(long[] bits, int row) {
+        return (bits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private static void setBit(long[] bits, int row) {
+        bits[row >>> 6] |= 1L << row;
+    }
+
+    private static void clearBit(long[] bits, int row) {
+        bits[row >>> 6] &= ~(1L << row);
+    }
+
+    /**
+     * number / percent / currency cells: the value and how it was written,
+     * e.g. "1,234.50" is 1234.5 with 2 decimals and thousands separators, "12.00%" is 12.0
+     * with 2 decimals and a % sign (the number as written, not divided by 100).
+     */
+    static final class Numbers extends TypedColumn {
+        private static final int DECIMALS_MASK = 0x0F;
+        private static final int GROUPING = 0x10;
+        private static final int PERCENT = 0x20;
+
+        private final ColumnValidator.NumericValidator validator;
+        private double[] values = new double[0];
+        private byte[] formats = new byte[0];
+
+        Numbers(ColumnValidator.NumericValidator owner) {
+            super(owner);
+            this.validator = owner;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                int grown = grownCapacity(values.length, capacity);
+                values = Arrays.copyOf(values, grown);
+                formats = Arrays.copyOf(formats, grown);
+            }
+        }
+
+        @Override
+        boolean encode(int row, String value) {
+            // -?digits(,ddd)*(.digits)?%? and nothing else
+            int length = value.length();
+            boolean percent = length > 0 && value.charAt(length - 1) == '%';
+            int end = percent ? length - 1 : length;
+            int i = (end > 0 && value.charAt(0) == '-') ? 1 : 0;
+            int integerStart = i;
+            boolean grouping = false;
+            while (i < end && (Character.isDigit(value.charAt(i)) || value.charAt(i) == ',')) {
+                grouping |= value.charAt(i) == ',';
+                i++;
+            }
+            if (i == integerStart) return false;
+            int decimals = 0;
+            if (i < end && value.charAt(i) == '.') {
+                int fractionStart = ++i;
+                while (i < end && Character.isDigit(value.charAt(i))) i++;
+                decimals = i - fractionStart;
+                if (decimals == 0) return false;
+            }
+            if (i != end || decimals > DECIMALS_MASK) return false;
+
+            double number;
+            try {
+                number = Double.parseDouble(ColumnValidator.stripCommas(value.substring(0, end)));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            byte format = (byte) (decimals | (grouping ? GROUPING : 0) | (percent ? PERCENT : 0));
+            if (!value.equals(render(number, format))) return false;
+
+            values[row] = number;
+            formats[row] = format;
+            return true;
+        }
+
+        @Override
+        String decode(int row) {
+            return render(values[row], formats[row]);
+        }
+
+        @Override
+        void validateTyped(int row, List<String> errors) {
+            validator.validateNumber(values[row], (formats[row] & PERCENT) != 0, errors);
+        }
+
+        private static String render(double number, byte format) {
+            if (Double.isNaN(number) || Double.isInfinite(number)) return null;
+            String plain = BigDecimal.valueOf(number)
+                    .setScale(format & DECIMALS_MASK, RoundingMode.HALF_EVEN)
+                    .toPlainString();
+            if ((format & GROUPING) != 0) plain = group(plain);
+            return ((format & PERCENT) != 0) ? plain + "%" : plain;
+        }
+
+        /**
+         * Insert thousands separators into the integer part.
+         */
+        private static String group(String plain) {
+            int start = plain.startsWith("-") ? 1 : 0;
+            int point = plain.indexOf('.');
+            int integerEnd = (point < 0) ? plain.length() : point;
+            StringBuilder sb = new StringBuilder(plain.length() + (integerEnd - start) / 3);
+            sb.append(plain, 0, start);
+            for (int i = start; i < integerEnd; i++) {
+                if (i > start && (integerEnd - i) % 3 == 0) sb.append(',');
+                sb.append(plain.charAt(i));
+            }
+            return sb.append(plain, integerEnd, plain.length()).toString();
+        }
+    }
+
+    /**
+     * date cells written in the rule's format, as epoch days.
+     */
+    static final class Dates extends TypedColumn {
+        private final DateTimeFormatter formatter;
+        private int[] epochDays = new int[0];
+
+        Dates(ColumnValidator owner, DateTimeFormatter formatter) {
+            super(owner);
+            this.formatter = formatter;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > epochDays.length) {
+                epochDays = Arrays.copyOf(epochDays, grownCapacity(epochDays.length, capacity));
+            }
+        }
+
+        @Override
+        boolean encode(int row, String value) {
+            LocalDate date;
+            try {
+                date = LocalDate.from(formatter.parse(value, new ParsePosition(0)));
+                if (!value.equals(formatter.format(date))) return false;
+            } catch (DateTimeException e) {
+                return false;
+            }
+            epochDays[row] = (int) date.toEpochDay();
+            return true;
+        }
+
+        @Override
+        String decode(int row) {
+            return formatter.format(LocalDate.ofEpochDay(epochDays[row]));
+        }
+
+        @Override
+        void validateTyped(int row, List<String> errors) {
+            // Stored typed only if the rule's format parsed it: nothing to report
+        }
+    }
+
+    /**
+     * text cells as ids into the column's dictionary of distinct values.
+     */
+    static final class Texts extends TypedColumn {
+        // Beyond this many distinct values a dictionary holding more than half the rows is dropped
+        private static final int DICTIONARY_CHECK = 4096;
+
+        private Map<String, Integer> ids = new HashMap<>();
+        private List<String> dictionary = new ArrayList<>();
+        private int[] rowIds = new int[0];
+        private String[] plain; // set once the dictionary is dropped
+        private volatile List<String>[] results; // validation messages per dictionary id
+
+        Texts(ColumnValidator owner) {
+            super(owner);
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (plain != null) {
+                if (capacity > plain.length) plain = Arrays.copyOf(plain, grownCapacity(plain.length, capacity));
+            } else if (capacity > rowIds.length) {
+                rowIds = Arrays.copyOf(rowIds, grownCapacity(rowIds.length, capacity));
+            }
+        }
+
+        @Override
+        boolean encode(int row, String value) {
+            if (plain != null) {
+                plain[row] = value;
+                return true;
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = dictionary.size();
+                dictionary.add(value);
+                ids.put(value, id);
+                if (dictionary.size() >= DICTIONARY_CHECK && dictionary.size() > (row + 1) / 2) {
+                    dropDictionary(row, value);
+                    return true;
+                }
+            }
+            rowIds[row] = id;
+            return true;
+        }
+
+        /**
+         * Mostly distinct values: the dictionary costs more than it saves.
+         */
+        private void dropDictionary(int row, String value) {
+            String[] values = new String[rowIds.length];
+            for (int r = 0; r < row; r++) values[r] = dictionary.get(rowIds[r]);
+            values[row] = value;
+            plain = values;
+            rowIds = null;
+            ids = null;
+            dictionary = null;
+        }
+
+        @Override
+        String decode(int row) {
+            return (plain != null) ? plain[row] : dictionary.get(rowIds[row]);
+        }
+
+        /**
+         * Each distinct value is validated once; its messages are reused for every row holding
+         * it. Ranges of a column may be validated in parallel: racing threads at worst validate
+         * the same value twice.
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        void validateTyped(int row, List<String> errors) {
+            if (plain != null) {
+                owner().validate(plain[row], errors);
+                return;
+            }
+            int id = rowIds[row];
+            List<String>[] cache = results;
+            if (cache == null || id >= cache.length) {
+                cache = (cache == null) ? new List[dictionary.size()] : Arrays.copyOf(cache, dictionary.size());
+                results = cache;
+            }
+            List<String> messages = cache[id];
+            if (messages == null) {
+                List<String> found = new ArrayList<>(1);
+                owner().validate(dictionary.get(id), found);
+                messages = List.copyOf(found);
+                cache[id] = messages;
+            }
+            errors.addAll(messages);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ExcelInfoResponse;
+import com.Truboard.ExcelFileDetector.DTO.JobQueueFullException;
+import com.Truboard.ExcelFileDetector.DTO.UploadJobResponse;
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs uploads as background jobs on a fixed pool of excel.async.workers threads with at
+ * most excel.async.queue-capacity jobs waiting. When both are taken new uploads are refused
+ * with a {@link JobQueueFullException} carrying a Retry-After estimate, instead of piling up
+ * on Tomcat request threads.
+ *
+ * Finished results stay on the heap until they are fetched or expire, so they never carry
+ * sheetData (clients page through /files/{fileId}/rows instead) and at most
+ * excel.async.max-retained-results of them are kept; the oldest go first.
+ */
+@Service
+public class UploadJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadJobService.class);
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private static class UploadJob {
+        private final String jobId;
+        private final String fileName;
+        private final long submittedAt = System.currentTimeMillis();
+        private volatile Status status = Status.QUEUED;
+        private volatile Long startedAt;
+        private volatile Long finishedAt;
+        private volatile String error;
+        private volatile ExcelInfoResponse result;
+
+        UploadJob(String jobId, String fileName) {
+            this.jobId = jobId;
+            this.fileName = fileName;
+        }
+    }
+
+    /**
+     * A queued job with its spooled upload, so the file can be deleted if the job never runs.
+     */
+    private final class JobTask implements Runnable {
+        private final UploadJob job;
+        private final Path uploadFile;
+        private final boolean json;
+        private final String contentType;
+
+        JobTask(UploadJob job, Path uploadFile, boolean json, String contentType) {
+            this.job = job;
+            this.uploadFile = uploadFile;
+            this.json = json;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public void run() {
+            UploadJobService.this.run(job, uploadFile, json, contentType);
+        }
+    }
+
+    private final ExcelService excelService;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, UploadJob> jobs = new ConcurrentHashMap<>();
+
+    private final int workers;
+    private final long resultRetentionMillis;
+    private final int maxRetainedResults;
+    private final long defaultRetryAfterSeconds;
+
+    // Moving average of job run time, used for the Retry-After estimate (0 = no job finished yet)
+    private final AtomicLong averageJobMillis = new AtomicLong();
+
+    public UploadJobService(ExcelService excelService, ExcelValidationConfig config) {
+        ExcelValidationConfig.AsyncConfig asyncConfig = config.getAsync();
+        this.excelService = excelService;
+        this.workers = Math.max(1, asyncConfig.getWorkers());
+        this.resultRetentionMillis = asyncConfig.getResultRetention().toMillis();
+        this.maxRetainedResults = Math.max(1, asyncConfig.getMaxRetainedResults());
+        this.defaultRetryAfterSeconds = Math.max(1, asyncConfig.getRetryAfter().toSeconds());
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, asyncConfig.getQueueCapacity())),
+                r -> new Thread(r, "upload-job-" + threadCount.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queue an .xlsx, .json, .csv or .ndjson upload. The multipart is spooled to disk first because the
+     * container deletes it once the request completes.
+     */
+    public UploadJobResponse submit(MultipartFile file) throws IOException {
+        purgeExpiredJobs();
+        if (executor.getQueue().remainingCapacity() == 0) {
+            // Don't spool a file we are going to refuse anyway
+            throw new JobQueueFullException(estimateRetryAfterSeconds());
+        }
+
+        String fileName = file.getOriginalFilename();
+        boolean json = fileName != null && fileName.toLowerCase().endsWith(".json");
+        String contentType = file.getContentType();
+        Path uploadFile = excelService.spoolUpload(file);
+
+        UploadJob job = new UploadJob(UUID.randomUUID().toString(), fileName);
+        jobs.put(job.jobId, job);
+        try {
+            executor.execute(new JobTask(job, uploadFile, json, contentType));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.jobId);
+            Files.deleteIfExists(uploadFile);
+            throw new JobQueueFullException(estimateRetryAfterSeconds());
+        }
+        return toResponse(job);
+    }
+
+    private void run(UploadJob job, Path uploadFile, boolean json, String contentType) {
+        long start = System.currentTimeMillis();
+        job.startedAt = start;
+        job.status = Status.RUNNING;
+        try {
+            if (json) {
+                byte[] content;
+                try {
+                    content = Files.readAllBytes(uploadFile);
+                } finally {
+                    Files.deleteIfExists(uploadFile);
+                }
+                job.result = excelService.extractJsonInfo(job.fileName, contentType, content, false);
+            } else if (ExcelService.isCsvOrNdjson(job.fileName)) {
+                // Takes ownership of the spooled file
+                job.result = excelService.extractCsvOrNdjsonInfo(uploadFile, job.fileName, false);
+            } else {
+                // Takes ownership of the spooled file
+                job.result = excelService.extractAndProcessExcelInfo(uploadFile, job.fileName, false);
+            }
+            job.status = Status.COMPLETED;
+        } catch (Exception e) {
+            job.error = e.getMessage();
+            job.status = Status.FAILED;
+            log.error("Upload job {} failed", job.jobId, e);
+        } finally {
+            long finished = System.currentTimeMillis();
+            job.finishedAt = finished;
+            recordDuration(finished - start);
+            purgeExpiredJobs();
+        }
+    }
+
+    /**
+     * Current state of a job, or null if it is unknown or expired.
+     */
+    public UploadJobResponse getJob(String jobId) {
+        purgeExpiredJobs();
+        UploadJob job = jobs.get(jobId);
+        return (job == null) ? null : toResponse(job);
+    }
+
+    /**
+     * Result of a completed job, or null if the job has not completed (successfully).
+     */
+    public ExcelInfoResponse getResult(String jobId) {
+        UploadJob job = jobs.get(jobId);
+        return (job == null) ? null : job.result;
+    }
+
+    /**
+     * Seconds a refused client should wait: the queued work spread over the workers.
+     */
+    public long estimateRetryAfterSeconds() {
+        long average = averageJobMillis.get();
+        if (average == 0) return defaultRetryAfterSeconds;
+        long waitingJobs = executor.getQueue().size() + 1;
+        long millis = average * waitingJobs / workers;
+        return Math.max(1, Math.min(300, (millis + 999) / 1000));
+    }
+
+    private void recordDuration(long millis) {
+        // Exponential moving average, weight 1/4 for the newest job
+        averageJobMillis.accumulateAndGet(Math.max(1, millis),
+                (average, latest) -> (average == 0) ? latest : (3 * average + latest) / 4);
+    }
+
+    /**
+     * Finished jobs (and their results) are dropped excel.async.result-retention after they finished,
+     * or earlier, oldest first, when more than excel.async.max-retained-results have finished.
+     */
+    private void purgeExpiredJobs() {
+        long cutoff = System.currentTimeMillis() - resultRetentionMillis;
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt < cutoff);
+
+        List<UploadJob> finished = new ArrayList<>();
+        for (UploadJob job : jobs.values()) {
+            if (job.finishedAt != null) finished.add(job);
+        }
+        if (finished.size() <= maxRetainedResults) return;
+        finished.sort(Comparator.comparingLong(job -> job.finishedAt));
+        for (UploadJob job : finished.subList(0, finished.size() - maxRetainedResults)) {
+            jobs.remove(job.jobId, job);
+        }
+    }
+
+    private UploadJobResponse toResponse(UploadJob job) {
+        String statusUrl = "/api/excel/jobs/" + job.jobId;
+        return new UploadJobResponse(job.jobId, job.fileName, job.status.name(), job.submittedAt,
+                job.startedAt, job.finishedAt, job.error, statusUrl, statusUrl + "/result");
+    }
+
+    /**
+     * Stop the workers; jobs still waiting in the queue never run, so their spooled files are deleted.
+     */
+    @PreDestroy
+    public void shutdown() {
+        List<Runnable> dropped = executor.shutdownNow();
+        for (Runnable task : dropped) {
+            if (!(task instanceof JobTask)) continue;
+            JobTask jobTask = (JobTask) task;
+            jobTask.job.error = "Server shut down before the job started";
+            jobTask.job.status = Status.FAILED;
+            try {
+                Files.deleteIfExists(jobTask.uploadFile);
+            } catch (IOException e) {
+                log.warn("Could not delete spooled upload {} of job {}", jobTask.uploadFile, jobTask.job.jobId, e);
+            }
+        }
+    }
+}
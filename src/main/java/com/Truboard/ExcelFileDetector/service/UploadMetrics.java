@@ -0,0 +1,110 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ColumnValidationRule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Micrometer meters of the upload and highlighted-download pipelines (see monitoring/grafana).
+ *
+ * - excel.pipeline.phase (timer; operation, format, phase): time spent in each phase, e.g.
+ *   parse, scan, autofill, validate, write, store
+ * - excel.upload.rows / columns / cells (summaries; format): size of every processed upload
+ * - excel.validation.errors (counter; rule, column): reported errors per rule type and configured
+ *   column, excel.validation.errors.truncated: errors left out by excel.error-limits
+ * - excel.formula.evaluations (counter; operation): formula cells actually evaluated
+ *   (see excel.formula.evaluation)
+ * Timers and summaries publish histogram buckets so Prometheus can compute percentiles.
+ * Tags only take values from the code and the configured rules, never from file content.
+ */
+final class UploadMetrics {
+
+    static final String UPLOAD = "upload";
+    static final String DOWNLOAD = "download";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<ColumnValidationRule, String> ruleKeys = new IdentityHashMap<>();
+    private final Counter truncatedErrors;
+
+    UploadMetrics(MeterRegistry meterRegistry, Map<String, ColumnValidationRule> rules) {
+        this.meterRegistry = meterRegistry;
+        if (rules != null) {
+            for (Map.Entry<String, ColumnValidationRule> e : rules.entrySet()) ruleKeys.put(e.getValue(), e.getKey());
+        }
+        this.truncatedErrors = Counter.builder("excel.validation.errors.truncated")
+                .description("Validation errors found but left out of the report by the error limits")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start timing a phase; finish it with {@link #stop}.
+     */
+    Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    /**
+     * Record the time since {@code sample} was started as {@code phase} of the operation,
+     * and return a new sample for the next phase.
+     */
+    Timer.Sample stop(Timer.Sample sample, String operation, String format, String phase) {
+        sample.stop(Timer.builder("excel.pipeline.phase")
+                .description("Time spent in one phase of the upload / highlighted download pipeline")
+                .tag("operation", operation)
+                .tag("format", format)
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(meterRegistry));
+        return start();
+    }
+
+    Counter formulaEvaluations(String operation) {
+        return Counter.builder("excel.formula.evaluations")
+                .description("Formula cells evaluated instead of using the result saved in the file")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    void recordSize(String format, long rowCount, int columnCount) {
+        summary("excel.upload.rows", "Data rows per upload", "rows", format).record(rowCount);
+        summary("excel.upload.columns", "Columns per upload", "columns", format).record(columnCount);
+        summary("excel.upload.cells", "Cells (rows x columns) per upload", "cells", format).record((double) rowCount * columnCount);
+    }
+
+    private DistributionSummary summary(String name, String description, String unit, String format) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit(unit)
+                .tag("format", format)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(1e9)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Count the errors an upload reported, per column as kept by its budget; the column name
+     * is resolved to its rule with {@code ruleLookup} (the same header matching as validation).
+     */
+    void recordErrors(ErrorBudget errorBudget, Function<String, ColumnValidationRule> ruleLookup) {
+        for (Map.Entry<String, Integer> entry : errorBudget.getKeptPerColumn().entrySet()) {
+            ColumnValidationRule rule = ruleLookup.apply(entry.getKey());
+            String type = (rule != null && rule.getType() != null) ? rule.getType().toLowerCase() : "none";
+            Counter.builder("excel.validation.errors")
+                    .description("Validation errors reported, per rule type and configured column")
+                    .tag("rule", type)
+                    .tag("column", (rule != null) ? ruleKeys.getOrDefault(rule, "other") : "other")
+                    .register(meterRegistry)
+                    .increment(entry.getValue());
+        }
+        truncatedErrors.increment(errorBudget.getTruncated());
+    }
+}
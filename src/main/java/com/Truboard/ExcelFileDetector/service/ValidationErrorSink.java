@@ -0,0 +1,14 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+
+import java.io.IOException;
+
+/**
+ * Receives validation errors one at a time, as validation produces them, instead of
+ * collecting them into lists.
+ */
+@FunctionalInterface
+interface ValidationErrorSink {
+    void accept(ValidationError error) throws IOException;
+}
@@ -0,0 +1,238 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs cell validation on a dedicated, bounded ForkJoinPool.
+ *
+ * Work is split by column and, within a column, by row range (excel.validation-pool.chunk-rows).
+ * Results are always merged back in submission order, so errors come out in column order,
+ * then row order - exactly as the sequential loops produced them. Inputs smaller than
+ * excel.validation-pool.min-parallel-cells are validated on the calling thread.
+ */
+@Service
+public class ValidationExecutor {
+
+    /**
+     * Values of one column to validate; {@code firstRowNumber} is the display row of values[0].
+     * Each range builds at most {@code errorLimit} errors; past that it only counts them, or
+     * stops checking when {@code stopAtLimit} is set.
+     */
+    public static final class ColumnSlice {
+        final String colName;
+        final int colIndex;
+        final ColumnValidator validator;
+        final List<String> values;
+        final int firstRowNumber;
+        final int errorLimit;
+        final boolean stopAtLimit;
+
+        public ColumnSlice(String colName, int colIndex, ColumnValidator validator, List<String> values, int firstRowNumber) {
+            this(colName, colIndex, validator, values, firstRowNumber, Integer.MAX_VALUE, false);
+        }
+
+        public ColumnSlice(String colName, int colIndex, ColumnValidator validator, List<String> values, int firstRowNumber,
+                           int errorLimit, boolean stopAtLimit) {
+            this.colName = colName;
+            this.colIndex = colIndex;
+            this.validator = validator;
+            this.values = values;
+            this.firstRowNumber = firstRowNumber;
+            this.errorLimit = errorLimit;
+            this.stopAtLimit = stopAtLimit;
+        }
+    }
+
+    /**
+     * Errors found in one ColumnSlice, in row order, and the number found past the error limit.
+     */
+    public static final class ColumnResult {
+        private final List<String> errors = new ArrayList<>();
+        private final List<ValidationError> detailedErrors = new ArrayList<>();
+        private long truncatedCount;
+
+        public List<String> getErrors() { return errors; }
+        public List<ValidationError> getDetailedErrors() { return detailedErrors; }
+        public long getTruncatedCount() { return truncatedCount; }
+
+        /**
+         * Errors found, built or not.
+         */
+        public long getFoundCount() { return detailedErrors.size() + truncatedCount; }
+
+        void addAll(ColumnResult other) {
+            errors.addAll(other.errors);
+            detailedErrors.addAll(other.detailedErrors);
+            truncatedCount += other.truncatedCount;
+        }
+    }
+
+    /**
+     * Handle on submitted slices; {@link #join()} waits and merges in submission order.
+     */
+    public static final class PendingValidation {
+        private final List<List<ForkJoinTask<ColumnResult>>> rangesPerSlice;
+
+        private PendingValidation(List<List<ForkJoinTask<ColumnResult>>> rangesPerSlice) {
+            this.rangesPerSlice = rangesPerSlice;
+        }
+
+        /**
+         * True once every range has been validated, i.e. join() will not block.
+         */
+        public boolean isDone() {
+            for (List<ForkJoinTask<ColumnResult>> ranges : rangesPerSlice) {
+                for (ForkJoinTask<ColumnResult> range : ranges) {
+                    if (!range.isDone()) return false;
+                }
+            }
+            return true;
+        }
+
+        public List<ColumnResult> join() {
+            List<ColumnResult> results = new ArrayList<>(rangesPerSlice.size());
+            for (List<ForkJoinTask<ColumnResult>> ranges : rangesPerSlice) {
+                if (ranges.size() == 1) {
+                    results.add(ranges.get(0).join());
+                    continue;
+                }
+                ColumnResult merged = new ColumnResult();
+                for (ForkJoinTask<ColumnResult> range : ranges) {
+                    merged.addAll(range.join());
+                }
+                results.add(merged);
+            }
+            return results;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final int chunkRows;
+    private final long minParallelCells;
+
+    public ValidationExecutor(ExcelValidationConfig config) {
+        ExcelValidationConfig.ValidationPoolConfig poolConfig = config.getValidationPool();
+        int parallelism = poolConfig.getParallelism() > 0
+                ? poolConfig.getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(parallelism, p -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("excel-validation-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.chunkRows = Math.max(1, poolConfig.getChunkRows());
+        this.minParallelCells = poolConfig.getMinParallelCells();
+    }
+
+    /**
+     * Validate the slices and wait for the results (one ColumnResult per slice, same order).
+     */
+    public List<ColumnResult> validateColumns(List<ColumnSlice> slices) {
+        return submit(slices).join();
+    }
+
+    /**
+     * Start validating the slices without waiting, so the caller can keep producing input.
+     */
+    public PendingValidation submit(List<ColumnSlice> slices) {
+        long cells = 0;
+        for (ColumnSlice slice : slices) cells += slice.values.size();
+        boolean parallel = pool.getParallelism() > 1 && cells >= minParallelCells;
+
+        List<List<ForkJoinTask<ColumnResult>>> rangesPerSlice = new ArrayList<>(slices.size());
+        for (ColumnSlice slice : slices) {
+            List<ForkJoinTask<ColumnResult>> ranges = new ArrayList<>();
+            int size = slice.values.size();
+            int step = parallel ? chunkRows : Math.max(1, size);
+            for (int from = 0; from < size || from == 0; from += step) {
+                int start = from;
+                int end = Math.min(size, from + step);
+                ForkJoinTask<ColumnResult> task = new RangeTask(slice, start, end);
+                if (parallel) {
+                    pool.execute(task);
+                } else {
+                    task.invoke();
+                }
+                ranges.add(task);
+                if (size == 0) break;
+            }
+            rangesPerSlice.add(ranges);
+        }
+        return new PendingValidation(rangesPerSlice);
+    }
+
+    /**
+     * One row range of a slice. The slice (and with it the cell values) is released as soon as
+     * the range is validated, so a finished task waiting to be joined only holds its errors.
+     */
+    private static final class RangeTask extends RecursiveTask<ColumnResult> {
+        private ColumnSlice slice;
+        private final int from;
+        private final int to;
+
+        RangeTask(ColumnSlice slice, int from, int to) {
+            this.slice = slice;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ColumnResult compute() {
+            try {
+                return validateRange(slice, from, to);
+            } finally {
+                slice = null;
+            }
+        }
+    }
+
+    private static ColumnResult validateRange(ColumnSlice slice, int from, int to) {
+        ColumnResult result = new ColumnResult();
+        List<String> cellErrors = new ArrayList<>();
+        // Typed columns are validated without turning every value back into text
+        TypedColumn typed = (slice.values instanceof TypedColumn) ? (TypedColumn) slice.values : null;
+        for (int i = from; i < to; i++) {
+            cellErrors.clear();
+            if (typed != null) {
+                typed.validate(i, slice.validator, cellErrors);
+            } else {
+                slice.validator.validate(slice.values.get(i), cellErrors);
+            }
+            if (cellErrors.isEmpty()) continue;
+
+            String value = slice.values.get(i);
+
+            int displayRowNum = slice.firstRowNumber + i;
+            for (String errorMsg : cellErrors) {
+                if (result.detailedErrors.size() >= slice.errorLimit) {
+                    // Beyond the limit this range's errors can never be reported
+                    if (slice.stopAtLimit) return result;
+                    result.truncatedCount++;
+                    continue;
+                }
+                String fullErrorMsg = "Row " + displayRowNum + ": " + slice.colName + " " + errorMsg;
+                result.errors.add(fullErrorMsg);
+                result.detailedErrors.add(new ValidationError(slice.colName, displayRowNum, slice.colIndex, fullErrorMsg, value));
+            }
+        }
+        return result;
+    }
+
+    public int getChunkRows() {
+        return chunkRows;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,41 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ColumnValidationRule;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Validation rules compiled once from ExcelValidationConfig.getValidations().
+ *
+ * Holds one {@link ColumnValidator} per configured {@link ColumnValidationRule}; the map is
+ * built in the constructor and never modified afterwards, so lookups are safe from any thread.
+ */
+public class ValidationPlan {
+
+    private final Map<ColumnValidationRule, ColumnValidator> validators;
+
+    public ValidationPlan(Map<String, ColumnValidationRule> rules) {
+        Map<ColumnValidationRule, ColumnValidator> compiled = new IdentityHashMap<>();
+        if (rules != null) {
+            for (ColumnValidationRule rule : rules.values()) {
+                if (rule != null) compiled.put(rule, ColumnValidator.compile(rule));
+            }
+        }
+        this.validators = Collections.unmodifiableMap(compiled);
+    }
+
+    /**
+     * Compiled validator for a configured rule, or null when there is no rule.
+     */
+    public ColumnValidator validatorFor(ColumnValidationRule rule) {
+        if (rule == null) return null;
+        ColumnValidator validator = validators.get(rule);
+        return (validator != null) ? validator : ColumnValidator.compile(rule);
+    }
+
+    public int size() {
+        return validators.size();
+    }
+}
@@ -0,0 +1,179 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CsvSheetReaderTests {
+
+	private final ValidationExecutor executor = new ValidationExecutor(new ExcelValidationConfig());
+
+	@AfterEach
+	void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Header and rows as the reader hands them out (rows copied, the array is reused).
+	 */
+	private static class Recorder implements StreamingSheetReader.RowHandler {
+		String sheetName;
+		List<String> header;
+		final List<Integer> rowIndexes = new ArrayList<>();
+		final List<List<String>> rows = new ArrayList<>();
+		int maxRows = Integer.MAX_VALUE;
+		boolean ended;
+
+		@Override
+		public void startSheet(int sheetCount, String sheetName) {
+			this.sheetName = sheetName;
+		}
+
+		@Override
+		public void header(String[] headers) {
+			header = Arrays.asList(headers.clone());
+		}
+
+		@Override
+		public void row(int rowIndex, String[] values) {
+			rowIndexes.add(rowIndex);
+			rows.add(Arrays.asList(values.clone()));
+		}
+
+		@Override
+		public boolean wantsMoreRows() {
+			return rows.size() < maxRows;
+		}
+
+		@Override
+		public void endSheet() {
+			ended = true;
+		}
+	}
+
+	private static Recorder read(String csv) throws Exception {
+		return read(csv, ',');
+	}
+
+	private static Recorder read(String csv, char delimiter) throws Exception {
+		Recorder recorder = new Recorder();
+		new CsvSheetReader(delimiter).read(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), recorder);
+		return recorder;
+	}
+
+	@Test
+	void quotedFieldsKeepDelimitersLineBreaksAndDoubledQuotes() throws Exception {
+		Recorder csv = read("NAME,NOTE,CITY\n"
+				+ "\"Smith, John\",\"two\nlines\",\"say \"\"hi\"\"\"\n"
+				+ "\"\",\"\"\"\",x\n");
+
+		assertThat(csv.sheetName).isEqualTo(CsvSheetReader.SHEET_NAME);
+		assertThat(csv.header).containsExactly("NAME", "NOTE", "CITY");
+		assertThat(csv.rows).containsExactly(
+				List.of("Smith, John", "two\nlines", "say \"hi\""),
+				List.of("", "\"", "x"));
+		// An embedded line break does not start a new row
+		assertThat(csv.rowIndexes).containsExactly(1, 2);
+	}
+
+	@Test
+	void quotesOutsideAQuotedFieldAreText() throws Exception {
+		Recorder csv = read("A,B\nab\"c,\"ab\"cd\n");
+		assertThat(csv.rows).containsExactly(List.of("ab\"c", "abcd"));
+	}
+
+	@Test
+	void crLfCrAndLfEndRecordsAlike() throws Exception {
+		Recorder csv = read("A,B\r\n1,2\r3,4\n5,6\r\n\"7\r\n\",8");
+		assertThat(csv.rows).containsExactly(
+				List.of("1", "2"), List.of("3", "4"), List.of("5", "6"), List.of("7", "8")); // quoted line end trimmed like any value
+	}
+
+	@Test
+	void lineEndsSplitAcrossBufferRefillsAreReadTheSame() throws Exception {
+		// One byte per read: every \r\n, doubled quote and BOM straddles a refill of the tokenizer
+		String csv = "\uFEFFA,B\r\n1,\"x\"\"y\"\r3,4\n5,\"6\r\n\"\r\n";
+		byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+		InputStream trickle = new InputStream() {
+			private int pos;
+
+			@Override
+			public int read() {
+				return (pos < bytes.length) ? (bytes[pos++] & 0xFF) : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (pos >= bytes.length) return -1;
+				b[off] = bytes[pos++];
+				return 1;
+			}
+		};
+		Recorder recorder = new Recorder();
+		new CsvSheetReader(',').read(trickle, recorder);
+		assertThat(recorder.header).containsExactly("A", "B");
+		assertThat(recorder.rows).containsExactly(List.of("1", "x\"y"), List.of("3", "4"), List.of("5", "6"));
+		assertThat(recorder.rowIndexes).containsExactly(1, 2, 3);
+	}
+
+	@Test
+	void byteOrderMarkIsNotPartOfTheFirstHeader() throws Exception {
+		Recorder csv = read("\uFEFFNAME,AGE\nAnn,30\n");
+		assertThat(csv.header).containsExactly("NAME", "AGE");
+		assertThat(csv.rows).containsExactly(List.of("Ann", "30"));
+	}
+
+	@Test
+	void unterminatedQuoteFailsWithItsRecordNumber() {
+		assertThatThrownBy(() -> read("A,B\n1,2\n3,\"open\n4,5\n"))
+				.isInstanceOf(IOException.class)
+				.hasMessage("Unterminated quoted field in CSV record 3");
+	}
+
+	@Test
+	void valuesAreTrimmedAndFitToTheHeaderWidth() throws Exception {
+		Recorder csv = read(" A ; B ;C\n 1 ;\" 2 \"\n1;2;3;4\n", ';');
+		assertThat(csv.header).containsExactly("A", "B", "C");
+		assertThat(csv.rows).containsExactly(List.of("1", "2", ""), List.of("1", "2", "3"));
+	}
+
+	@Test
+	void emptyFileHasNoHeader() {
+		assertThatThrownBy(() -> read("")).hasMessage("No header row found in file");
+	}
+
+	@Test
+	void stopsWhenTheHandlerHasEnough() throws Exception {
+		Recorder recorder = new Recorder();
+		recorder.maxRows = 2;
+		new CsvSheetReader(',').read(new ByteArrayInputStream("A\n1\n2\n3\n".getBytes(StandardCharsets.UTF_8)), recorder);
+		assertThat(recorder.rows).containsExactly(List.of("1"), List.of("2"));
+		assertThat(recorder.ended).isTrue();
+	}
+
+	@Test
+	void emptyLinesAreBlankRowsLikeEmptySheetRows() throws Exception {
+		String csv = "NAME,RATE\nAnn,1%\n\n\r\nBob,2%\n\n\n";
+		Recorder recorder = read(csv);
+		assertThat(recorder.rows).containsExactly(
+				List.of("Ann", "1%"), List.of("", ""), List.of("", ""), List.of("Bob", "2%"), List.of("", ""), List.of("", ""));
+
+		// Inside the data they keep their row (and line) number; trailing ones are dropped
+		SheetIngestSession session = new SheetIngestSession(headers -> new ColumnValidator[headers.length],
+				colName -> null, executor, true);
+		new CsvSheetReader(',').read(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), session);
+		assertThat(session.getRowCount()).isEqualTo(4);
+		assertThat(session.getColumnData().get("NAME")).containsExactly("Ann", "", "", "Bob");
+	}
+}
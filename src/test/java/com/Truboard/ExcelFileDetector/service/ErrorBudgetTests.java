@@ -0,0 +1,115 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ColumnValidationRule;
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ErrorBudgetTests {
+
+	private final ValidationExecutor executor = new ValidationExecutor(new ExcelValidationConfig());
+
+	@AfterEach
+	void shutdown() {
+		executor.shutdown();
+	}
+
+	private static ErrorBudget budget(int maxErrors, int maxErrorsPerColumn, boolean failFast) {
+		ExcelValidationConfig.ErrorLimitsConfig limits = new ExcelValidationConfig.ErrorLimitsConfig();
+		limits.setMaxErrors(maxErrors);
+		limits.setMaxErrorsPerColumn(maxErrorsPerColumn);
+		limits.setFailFast(failFast);
+		return ErrorBudget.of(limits);
+	}
+
+	private static ValidationError error(String column, int row) {
+		return new ValidationError(column, row, "Row " + row + ": " + column + " is required");
+	}
+
+	/**
+	 * A required column where every one of {@code rows} cells is empty.
+	 */
+	private static ValidationExecutor.ColumnSlice emptyColumn(String name, int index, int rows, ErrorBudget budget) {
+		ColumnValidationRule rule = new ColumnValidationRule();
+		rule.setRequired(true);
+		return new ValidationExecutor.ColumnSlice(name, index, ColumnValidator.compile(rule),
+				Collections.nCopies(rows, ""), 2, budget.sliceLimit(), budget.isFailFast());
+	}
+
+	@Test
+	void keepsTheFirstErrorsPerColumnAndCountsTheRest() {
+		ErrorBudget budget = budget(0, 2, false);
+		assertThat(budget.hasFileLimit()).isFalse();
+		assertThat(budget.sliceLimit()).isEqualTo(2);
+
+		assertThat(budget.admit(error("A", 2))).isTrue();
+		assertThat(budget.admit(error("A", 3))).isTrue();
+		assertThat(budget.admit(error("A", 4))).isFalse();
+		assertThat(budget.admit(error("B", 2))).isTrue();
+		budget.truncate(10);
+
+		assertThat(budget.getKeptPerColumn()).containsEntry("A", 2).containsEntry("B", 1);
+		assertThat(budget.getTruncated()).isEqualTo(11);
+		assertThat(budget.isStopped()).isFalse();
+	}
+
+	@Test
+	void fileLimitAppliesAcrossColumns() {
+		ErrorBudget budget = budget(3, 2, false);
+		assertThat(budget.sliceLimit()).isEqualTo(2);
+
+		List<String> errors = new ArrayList<>();
+		List<ValidationError> detailed = new ArrayList<>();
+		for (ValidationExecutor.ColumnResult result : executor.validateColumns(List.of(
+				emptyColumn("A", 0, 5, budget), emptyColumn("B", 1, 5, budget), emptyColumn("C", 2, 5, budget)))) {
+			budget.addAll(result, errors, detailed);
+		}
+
+		// Two from A (its column limit), one from B (the file limit), none from C
+		assertThat(detailed).extracting(ValidationError::getColumnName).containsExactly("A", "A", "B");
+		assertThat(detailed).extracting(ValidationError::getRowNumber).containsExactly(2, 3, 2);
+		assertThat(errors).hasSize(3).allMatch(e -> e.endsWith("is required"));
+		assertThat(budget.getTruncated()).isEqualTo(15 - 3);
+		assertThat(budget.isFileLimitReached(3)).isFalse(); // only fail-fast stops
+	}
+
+	@Test
+	void failFastStopsRangesAtTheLimit() {
+		ErrorBudget budget = budget(4, 0, true);
+		assertThat(budget.sliceLimit()).isEqualTo(4);
+		assertThat(budget.isFileLimitReached(3)).isFalse();
+		assertThat(budget.isFileLimitReached(4)).isTrue();
+
+		ValidationExecutor.ColumnResult result = executor.validateColumns(List.of(emptyColumn("A", 0, 1000, budget))).get(0);
+		// The range stops building and counting once the limit is reached
+		assertThat(result.getDetailedErrors()).hasSize(4);
+		assertThat(result.getTruncatedCount()).isZero();
+		assertThat(budget.isFileLimitReached(result.getFoundCount())).isTrue();
+
+		budget.stop();
+		assertThat(budget.isStopped()).isTrue();
+	}
+
+	@Test
+	void withoutFailFastRangesCountWhatTheyDoNotBuild() {
+		ErrorBudget budget = budget(4, 0, false);
+		ValidationExecutor.ColumnResult result = executor.validateColumns(List.of(emptyColumn("A", 0, 1000, budget))).get(0);
+		assertThat(result.getDetailedErrors()).hasSize(4);
+		assertThat(result.getTruncatedCount()).isEqualTo(996);
+	}
+
+	@Test
+	void unlimitedKeepsEverything() {
+		ErrorBudget budget = ErrorBudget.unlimited();
+		for (int row = 2; row < 1002; row++) assertThat(budget.admit(error("A", row))).isTrue();
+		assertThat(budget.getTruncated()).isZero();
+		assertThat(budget.isFileLimitReached(Long.MAX_VALUE)).isFalse();
+	}
+}
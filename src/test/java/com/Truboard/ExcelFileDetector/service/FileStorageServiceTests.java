@@ -0,0 +1,164 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileStorageServiceTests {
+
+	@TempDir
+	Path spillDirectory;
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private FileStorageService storage;
+
+	@AfterEach
+	void shutdown() {
+		if (storage != null) storage.shutdown();
+	}
+
+	private FileStorageService storage(DataSize memoryLimit) throws Exception {
+		ExcelValidationConfig config = new ExcelValidationConfig();
+		config.getStorage().setMemoryLimit(memoryLimit);
+		config.getStorage().setSpillDirectory(spillDirectory.toString());
+		storage = new FileStorageService(config, registry);
+		return storage;
+	}
+
+	private double gauge(String name) {
+		return registry.get(name).gauge().value();
+	}
+
+	private static List<ValidationError> errors(int rows) {
+		List<ValidationError> errors = new ArrayList<>();
+		errors.add(new ValidationError("LAN", 0, -1, "Missing required column: LAN", null));
+		for (int row = 2; row < rows + 2; row++) {
+			errors.add(new ValidationError("AMOUNT", row, 3, "Row " + row + ": AMOUNT must be >= 0.0", "-" + (row % 7)));
+			if (row % 3 == 0) {
+				errors.add(new ValidationError("DATE", row, 5,
+						"Row " + row + ": DATE must match date format dd-MMM-yy (current value: 'x" + row + "')", "x" + row));
+			}
+		}
+		errors.add(new ValidationError("RATE", 7, 4, "Rate is off", ""));
+		return errors;
+	}
+
+	private static void assertSameErrors(List<ValidationError> actual, List<ValidationError> expected) {
+		assertThat(actual).hasSameSizeAs(expected);
+		for (int i = 0; i < expected.size(); i++) {
+			assertThat(actual.get(i)).usingRecursiveComparison().isEqualTo(expected.get(i));
+		}
+	}
+
+	@Test
+	void compactErrorsRoundTrip() throws Exception {
+		List<ValidationError> errors = errors(300);
+		StoredErrors stored = StoredErrors.of(errors);
+		assertThat(stored.size()).isEqualTo(errors.size());
+		assertSameErrors(stored.toList(), errors);
+
+		Path file = spillDirectory.resolve("errors.bin");
+		stored.write(file);
+		assertSameErrors(StoredErrors.read(file).toList(), errors);
+	}
+
+	@Test
+	void compactErrorsShareRepeatedMessages() {
+		List<ValidationError> repeated = new ArrayList<>();
+		for (int row = 2; row < 10_002; row++) {
+			repeated.add(new ValidationError("AMOUNT", row, 3, "Row " + row + ": AMOUNT must be >= 0.0", "-" + (row % 7)));
+		}
+		// One table entry per distinct message and value, not one per row
+		assertThat(StoredErrors.of(repeated).heapBytes()).isLessThan(30L * repeated.size());
+	}
+
+	@Test
+	void errorsCountTowardsTheMemoryLimitAndSpillWithTheirFile() throws Exception {
+		FileStorageService storage = storage(DataSize.ofMegabytes(64));
+		List<ValidationError> errors = errors(1000);
+
+		Path upload = storage.createTempFile();
+		Files.write(upload, new byte[]{1, 2, 3});
+		String fileId = storage.storeFile("a.xlsx", upload, "Data", errors);
+		assertThat(gauge("excel.storage.resident.bytes")).isEqualTo((double) StoredErrors.of(errors).heapBytes());
+		assertSameErrors(storage.getValidationErrors(fileId), errors);
+		assertThat(files("upload-*.errors")).isEmpty();
+	}
+
+	@Test
+	void errorsOfFilesOnDiskSpillOverTheLimit() throws Exception {
+		FileStorageService storage = storage(DataSize.ofBytes(1));
+		List<ValidationError> errors = errors(1000);
+
+		Path upload = storage.createTempFile();
+		Files.write(upload, new byte[]{4, 5});
+		String fileId = storage.storeFile("b.xlsx", upload, "Data", errors);
+		assertThat(gauge("excel.storage.resident.bytes")).isZero();
+		assertThat(files("upload-*.errors")).hasSize(1);
+		assertSameErrors(storage.getValidationErrors(fileId), errors);
+
+		storage.removeFile(fileId);
+		assertThat(files("upload-*")).isEmpty();
+		assertThat(gauge("excel.storage.spilled.bytes")).isZero();
+	}
+
+	@Test
+	void residentFilesSpillTheirErrorsToo() throws Exception {
+		FileStorageService storage = storage(DataSize.ofKilobytes(1));
+		List<ValidationError> errors = errors(50);
+		String fileId = storage.storeFile("a.xlsx", new byte[600], "Data", errors);
+		storage.storeFile("b.xlsx", new byte[600], "Data", null);
+
+		assertThat(storage.getSpilledFile(fileId)).isNotNull();
+		assertThat(files("upload-*.errors")).hasSize(1);
+		assertSameErrors(storage.getValidationErrors(fileId), errors);
+		assertThat(storage.getFileContent(fileId)).hasSize(600);
+	}
+
+	@Test
+	void directoriesOfProcessesThatAreGoneAreRemoved() throws Exception {
+		long pid = ProcessHandle.current().pid();
+		Path live = Files.createDirectory(spillDirectory.resolve("storage-" + pid + "-live"));
+		Path reused = Files.createDirectory(spillDirectory.resolve("storage-" + pid + "-reused"));
+		Files.setLastModifiedTime(reused, FileTime.from(Instant.EPOCH));
+		Path gone = Files.createDirectory(spillDirectory.resolve("storage-" + Long.MAX_VALUE + "-gone"));
+		Files.write(gone.resolve("upload-1.bin"), new byte[]{1});
+		Path other = Files.createDirectory(spillDirectory.resolve("other"));
+
+		FileStorageService storage = storage(DataSize.ofMegabytes(1));
+		assertThat(live).exists();
+		assertThat(other).exists();
+		assertThat(reused).doesNotExist();
+		assertThat(gone).doesNotExist();
+
+		// Its own files go into a directory of its own, removed again at shutdown
+		Path upload = storage.createTempFile();
+		assertThat(upload.getParent().getFileName().toString()).startsWith("storage-" + pid + "-");
+		Files.delete(upload);
+		storage.shutdown();
+		assertThat(upload.getParent()).doesNotExist();
+	}
+
+	private List<Path> files(String glob) throws Exception {
+		List<Path> files = new ArrayList<>();
+		try (Stream<Path> paths = Files.walk(spillDirectory)) {
+			paths.filter(p -> spillDirectory.getFileSystem().getPathMatcher("glob:" + glob).matches(p.getFileName()))
+					.forEach(files::add);
+		}
+		return files;
+	}
+}
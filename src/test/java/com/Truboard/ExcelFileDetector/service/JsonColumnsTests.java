@@ -0,0 +1,170 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonColumnsTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private JsonColumns read(String json) throws IOException {
+		return JsonColumns.read(objectMapper, json.getBytes(StandardCharsets.UTF_8), key -> new ArrayList<>());
+	}
+
+	/**
+	 * The Map-based parsing JsonColumns replaced: bind the document as a list of row maps, and
+	 * failing that as a map of column lists; values printed with String.valueOf, null as "".
+	 */
+	private Map<String, List<String>> readWithMaps(String json) throws Exception {
+		try {
+			List<Map<String, Object>> rows = objectMapper.readValue(json, new TypeReference<List<Map<String, Object>>>() {});
+			if (rows == null) rows = Collections.emptyList();
+			LinkedHashSet<String> keysOrder = new LinkedHashSet<>();
+			for (Map<String, Object> row : rows) {
+				if (row != null) keysOrder.addAll(row.keySet());
+			}
+			LinkedHashMap<String, List<String>> columnData = new LinkedHashMap<>();
+			for (String key : keysOrder) columnData.put(key, new ArrayList<>());
+			for (Map<String, Object> row : rows) {
+				for (String key : keysOrder) {
+					Object val = (row == null) ? null : row.get(key);
+					columnData.get(key).add(val == null ? "" : String.valueOf(val));
+				}
+			}
+			return columnData;
+		} catch (Exception eArray) {
+			// fall through to object-of-arrays
+		}
+
+		Map<String, List<Object>> cols = objectMapper.readValue(json, new TypeReference<Map<String, List<Object>>>() {});
+		if (cols == null) cols = Collections.emptyMap();
+		int maxRows = 0;
+		for (List<Object> values : cols.values()) maxRows = Math.max(maxRows, (values == null) ? 0 : values.size());
+		LinkedHashMap<String, List<String>> columnData = new LinkedHashMap<>();
+		for (Map.Entry<String, List<Object>> e : cols.entrySet()) {
+			List<String> strings = new ArrayList<>();
+			if (e.getValue() != null) {
+				for (Object o : e.getValue()) strings.add(o == null ? "" : String.valueOf(o));
+			}
+			while (strings.size() < maxRows) strings.add("");
+			columnData.put(e.getKey(), strings);
+		}
+		return columnData;
+	}
+
+	private void assertSameAsMapParsing(String json) throws Exception {
+		Map<String, List<String>> expected = readWithMaps(json);
+		JsonColumns actual = read(json);
+		assertThat(actual.columnData).containsExactlyEntriesOf(expected);
+		assertThat(actual.columnIndexMap.keySet()).containsExactlyElementsOf(expected.keySet());
+		int index = 0;
+		for (Integer colIndex : actual.columnIndexMap.values()) assertThat(colIndex).isEqualTo(index++);
+	}
+
+	@Test
+	void arrayOfObjectsHasColumnsInOrderOfFirstAppearance() throws Exception {
+		JsonColumns json = read("[{\"Name\":\"John\",\"Age\":25},{\"Age\":30,\"City\":\"Oslo\"},null,{}]");
+		assertThat(json.columnIndexMap).containsExactly(Map.entry("Name", 0), Map.entry("Age", 1), Map.entry("City", 2));
+		// Missing keys, null rows and empty objects are blank cells
+		assertThat(json.columnData.get("Name")).containsExactly("John", "", "", "");
+		assertThat(json.columnData.get("Age")).containsExactly("25", "30", "", "");
+		assertThat(json.columnData.get("City")).containsExactly("", "Oslo", "", "");
+	}
+
+	@Test
+	void objectOfArraysPadsShorterColumns() throws Exception {
+		JsonColumns json = read("{\"Name\":[\"John\",\"Alice\",\"Bob\"],\"Age\":[25],\"Note\":null,\"Empty\":[]}");
+		assertThat(json.columnIndexMap.keySet()).containsExactly("Name", "Age", "Note", "Empty");
+		assertThat(json.columnData.get("Age")).containsExactly("25", "", "");
+		assertThat(json.columnData.get("Note")).containsExactly("", "", "");
+		assertThat(json.columnData.get("Empty")).containsExactly("", "", "");
+	}
+
+	@Test
+	void duplicateKeysKeepTheirFirstPositionAndTheLastValue() throws Exception {
+		JsonColumns rows = read("[{\"A\":1,\"B\":2,\"A\":3}]");
+		assertThat(rows.columnIndexMap.keySet()).containsExactly("A", "B");
+		assertThat(rows.columnData.get("A")).containsExactly("3");
+
+		JsonColumns columns = read("{\"A\":[1,2],\"B\":[3],\"A\":[4]}");
+		assertThat(columns.columnIndexMap.keySet()).containsExactly("A", "B");
+		assertThat(columns.columnData.get("A")).containsExactly("4");
+		assertThat(columns.columnData.get("B")).containsExactly("3");
+	}
+
+	@Test
+	void valuesPrintLikeTheMapBasedParsing() throws Exception {
+		String[] documents = {
+				"[{\"S\":\" x \",\"I\":7,\"L\":12345678901234,\"G\":123456789012345678901234567890,"
+						+ "\"F\":1.50,\"E\":1e3,\"T\":true,\"N\":null,\"O\":{\"k\":[1,\"v\",null]},\"A\":[],\"U\":\"\\u00e9\"}]",
+				"{\"S\":[\" x \",null,true],\"O\":[{\"k\":{}},[1,[2]]],\"F\":[-0.0,3.0e-5]}",
+				"[{\"A\":1},null,{\"B\":{\"c\":null}},{\"A\":null,\"C\":false}]",
+				"[{\"A\":1,\"B\":2,\"A\":3},{\"B\":4}]",
+				"{\"A\":[1,2],\"B\":null,\"A\":[4]}",
+				"[]",
+				"{}",
+				"null",
+				"[null,null]",
+		};
+		for (String document : documents) {
+			assertSameAsMapParsing(document);
+		}
+	}
+
+	@Test
+	void otherDocumentsAreRefusedLikeTheMapBasedParsingRefusedThem() {
+		String[] documents = {
+				"",
+				"\"text\"",
+				"42",
+				"true",
+				"[1,2]",
+				"[{\"A\":1},[2]]",
+				"[{\"A\":1},\"x\"]",
+				"{\"A\":1}",
+				"{\"A\":{\"b\":[1]}}",
+				"[{\"A\":1}",
+		};
+		for (String document : documents) {
+			assertThatThrownBy(() -> readWithMaps(document)).as(document).isInstanceOf(IOException.class);
+			assertThatThrownBy(() -> read(document)).as(document).isInstanceOf(IOException.class);
+		}
+	}
+
+	@Test
+	void badFirstTokensNameTheExpectedLayouts() {
+		assertThatThrownBy(() -> read("42"))
+				.hasMessageContaining("Expected an array of objects or an object of arrays, found VALUE_NUMBER_INT");
+		assertThatThrownBy(() -> read("  "))
+				.hasMessageContaining("No content to map due to end-of-input");
+		assertThatThrownBy(() -> read("[1]"))
+				.hasMessageContaining("Expected an object for every array element, found VALUE_NUMBER_INT");
+		assertThatThrownBy(() -> read("{\"A\":\"x\"}"))
+				.hasMessageContaining("Expected an array for field 'A', found VALUE_STRING");
+	}
+
+	@Test
+	void columnsComeFromTheGivenFactory() throws Exception {
+		List<String> names = new ArrayList<>();
+		JsonColumns json = JsonColumns.read(objectMapper, "[{\"A\":1,\"B\":2},{\"A\":3}]".getBytes(StandardCharsets.UTF_8),
+				key -> {
+					names.add(key);
+					return new ArrayList<>();
+				});
+		assertThat(names).containsExactly("A", "B");
+		assertThat(json.columnData.get("B")).containsExactly("2", "");
+	}
+}
@@ -0,0 +1,97 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.AdmissionRejectedException;
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemoryAdmissionServiceTests {
+
+	private static final long KB = 1024;
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private MemoryAdmissionService admission(long budgetKb, Duration maxWait) {
+		ExcelValidationConfig config = new ExcelValidationConfig();
+		config.getAdmission().setMemoryBudget(DataSize.ofKilobytes(budgetKb));
+		config.getAdmission().setMaxWait(maxWait);
+		return new MemoryAdmissionService(config, registry);
+	}
+
+	private double waiting() {
+		return registry.get("excel.admission.waiting").gauge().value();
+	}
+
+	@Test
+	void growingDoesNotWaitWhileHoldingBudget() throws Exception {
+		MemoryAdmissionService admission = admission(100, Duration.ofSeconds(5));
+		try (MemoryAdmissionService.Reservation first = admission.newReservation()) {
+			first.growTo(40 * KB);
+
+			// A larger upload queues for budget the first one holds
+			CompletableFuture<Void> second = CompletableFuture.runAsync(() -> {
+				try (MemoryAdmissionService.Reservation reservation = admission.newReservation()) {
+					reservation.growTo(80 * KB);
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			while (!second.isDone() && waiting() == 0) Thread.sleep(5);
+
+			// Growing gives way to the waiting upload instead of deadlocking with it until max-wait
+			long start = System.nanoTime();
+			first.growTo(70 * KB);
+			assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(4);
+			second.get(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void growingTakesFreeBudgetRightAway() throws Exception {
+		MemoryAdmissionService admission = admission(100, Duration.ZERO);
+		try (MemoryAdmissionService.Reservation reservation = admission.newReservation()) {
+			reservation.growTo(30 * KB);
+			reservation.growTo(90 * KB);
+			reservation.growTo(10 * KB);
+			assertThatThrownBy(() -> admission.newReservation().growTo(20 * KB))
+					.isInstanceOf(AdmissionRejectedException.class);
+		}
+		try (MemoryAdmissionService.Reservation reservation = admission.newReservation()) {
+			reservation.growTo(100 * KB);
+		}
+	}
+
+	@Test
+	void streamingEstimateOnlyChargesKeptValues() {
+		ExcelValidationConfig config = new ExcelValidationConfig();
+		config.getAdmission().setBytesPerCell(40);
+		config.getValidationPool().setParallelism(3);
+		config.getValidationPool().setChunkRows(1000);
+		MemoryAdmissionService admission = new MemoryAdmissionService(config, registry);
+		StreamingSheetReader.SheetProfile profile = new StreamingSheetReader.SheetProfile("Data", 50_000_000, 1_000, 200_000, 10);
+
+		assertThat(admission.estimateStreaming(profile, true)).isEqualTo(200_000L * 10 * 40 + 2 * 1_000);
+		// Without sheetData only the chunk being filled and one per validation thread are held
+		assertThat(admission.estimateStreaming(profile, false)).isEqualTo(4 * 1000L * 10 * 40 + 2 * 1_000);
+
+		StreamingSheetReader.SheetProfile small = new StreamingSheetReader.SheetProfile("Data", 5_000, 0, 100, 10);
+		assertThat(admission.estimateStreaming(small, false)).isEqualTo(admission.estimateStreaming(small, true));
+	}
+
+	@Test
+	void workbooksLargerThanTheBudgetAreRefused() {
+		MemoryAdmissionService admission = admission(100, Duration.ofSeconds(5));
+		assertThatThrownBy(() -> admission.newReservation().growTo(101 * KB))
+				.isInstanceOf(AdmissionRejectedException.class)
+				.hasMessageContaining("more than the processing budget");
+	}
+}
@@ -0,0 +1,130 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NdjsonSheetReaderTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	/**
+	 * Header and rows as the reader hands them out (rows copied, the array is reused).
+	 */
+	private static class Recorder implements StreamingSheetReader.RowHandler {
+		String sheetName;
+		List<String> header;
+		final List<Integer> rowIndexes = new ArrayList<>();
+		final List<List<String>> rows = new ArrayList<>();
+		int maxRows = Integer.MAX_VALUE;
+
+		@Override
+		public void startSheet(int sheetCount, String sheetName) {
+			this.sheetName = sheetName;
+		}
+
+		@Override
+		public void header(String[] headers) {
+			header = Arrays.asList(headers.clone());
+		}
+
+		@Override
+		public void row(int rowIndex, String[] values) {
+			rowIndexes.add(rowIndex);
+			rows.add(Arrays.asList(values.clone()));
+		}
+
+		@Override
+		public boolean wantsMoreRows() {
+			return rows.size() < maxRows;
+		}
+
+		@Override
+		public void endSheet() {
+		}
+	}
+
+	private Recorder read(String ndjson) throws Exception {
+		return read(ndjson, new Recorder(), new AtomicInteger());
+	}
+
+	private Recorder read(String ndjson, Recorder recorder, AtomicInteger opens) throws Exception {
+		byte[] content = ndjson.getBytes(StandardCharsets.UTF_8);
+		new NdjsonSheetReader(objectMapper).read(() -> {
+			opens.incrementAndGet();
+			return new ByteArrayInputStream(content);
+		}, recorder);
+		return recorder;
+	}
+
+	@Test
+	void columnsComeFromEveryLineBeforeTheFirstRow() throws Exception {
+		AtomicInteger opens = new AtomicInteger();
+		Recorder ndjson = read("{\"NAME\":\"Ann\",\"AGE\":30}\n"
+				+ "{\"AGE\":41}\n"
+				+ "{\"CITY\":\"Oslo\",\"NAME\":\"Bob\"}\n", new Recorder(), opens);
+
+		// First pass collects the keys, second pass reads the rows
+		assertThat(opens).hasValue(2);
+		assertThat(ndjson.sheetName).isEqualTo(NdjsonSheetReader.SHEET_NAME);
+		assertThat(ndjson.header).containsExactly("NAME", "AGE", "CITY");
+		assertThat(ndjson.rows).containsExactly(
+				List.of("Ann", "30", ""),
+				List.of("", "41", ""),
+				List.of("Bob", "", "Oslo"));
+		assertThat(ndjson.rowIndexes).containsExactly(1, 2, 3);
+	}
+
+	@Test
+	void blankLinesAreSkippedAndNullLinesAreBlankRows() throws Exception {
+		Recorder ndjson = read("{\"A\":1}\n\n   \r\nnull\n{\"A\":2}\n\n");
+		assertThat(ndjson.rows).containsExactly(List.of("1"), List.of(""), List.of("2"));
+		assertThat(ndjson.rowIndexes).containsExactly(1, 2, 3);
+	}
+
+	@Test
+	void valuesReadLikeJsonUploads() throws Exception {
+		Recorder ndjson = read("{\"S\":\" x \",\"I\":7,\"F\":1.50,\"B\":true,\"N\":null,"
+				+ "\"O\":{\"k\":[1,\"v\"]},\"L\":[]}\n"
+				+ "{\"I\":1,\"I\":2}\n");
+		assertThat(ndjson.rows.get(0)).containsExactly(" x ", "7", "1.5", "true", "", "{k=[1, v]}", "[]");
+		// Duplicate key: the last value wins
+		assertThat(ndjson.rows.get(1).get(1)).isEqualTo("2");
+	}
+
+	@Test
+	void everyLineMustBeAnObject() {
+		assertThatThrownBy(() -> read("{\"A\":1}\n[1,2]\n"))
+				.isInstanceOf(JsonParseException.class)
+				.hasMessageContaining("Expected a JSON object on every line, found START_ARRAY");
+		assertThatThrownBy(() -> read("{\"A\":1}\n{\"A\":\n"))
+				.isInstanceOf(JsonParseException.class);
+	}
+
+	@Test
+	void emptyFileHasNoColumnsAndNoRows() throws Exception {
+		Recorder ndjson = read("\n\n");
+		assertThat(ndjson.header).isEmpty();
+		assertThat(ndjson.rows).isEmpty();
+	}
+
+	@Test
+	void stopsWhenTheHandlerHasEnough() throws Exception {
+		Recorder recorder = new Recorder();
+		recorder.maxRows = 1;
+		read("{\"A\":1}\n{\"A\":2}\n{\"B\":3}\n", recorder, new AtomicInteger());
+		// The header still covers every line
+		assertThat(recorder.header).containsExactly("A", "B");
+		assertThat(recorder.rows).containsExactly(List.of("1", ""));
+	}
+}
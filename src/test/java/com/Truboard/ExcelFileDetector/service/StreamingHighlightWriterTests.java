@@ -0,0 +1,242 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.common.usermodel.HyperlinkType;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Hyperlink;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class StreamingHighlightWriterTests {
+
+	/**
+	 * Data sheet with a header, rows 2-4 (C3 missing), no row 5, row 6 and an existing note on A2.
+	 */
+	private static byte[] workbook() throws Exception {
+		try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+			workbook.createSheet("Readme").createRow(0).createCell(0).setCellValue("read me");
+			XSSFSheet sheet = workbook.createSheet("Data");
+			String[] header = {"NAME", "AMOUNT", "RATE"};
+			XSSFRow headerRow = sheet.createRow(0);
+			for (int c = 0; c < header.length; c++) headerRow.createCell(c).setCellValue(header[c]);
+			for (int r = 1; r <= 5; r++) {
+				if (r == 4) continue;
+				XSSFRow row = sheet.createRow(r);
+				row.createCell(0).setCellValue("Name " + r);
+				row.createCell(1).setCellValue(r * 100);
+				if (r != 2) row.createCell(2).setCellValue(r + "%");
+			}
+
+			ClientAnchor anchor = workbook.getCreationHelper().createClientAnchor();
+			anchor.setRow1(1);
+			anchor.setCol1(0);
+			Comment note = sheet.createDrawingPatriarch().createCellComment(anchor);
+			note.setString(workbook.getCreationHelper().createRichTextString("Existing note"));
+			sheet.getRow(1).getCell(0).setCellComment(note);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			workbook.write(out);
+			return out.toByteArray();
+		}
+	}
+
+	private static List<ValidationError> errors() {
+		List<ValidationError> errors = new ArrayList<>();
+		errors.add(new ValidationError("AMOUNT", 2, 1, "Row 2: AMOUNT must be >= 500", "100"));   // existing cell
+		errors.add(new ValidationError("RATE", 3, 2, "Row 3: RATE is required", ""));            // missing cell
+		errors.add(new ValidationError("NAME", 5, 0, "Row 5: NAME is required", ""));            // missing row
+		errors.add(new ValidationError("RATE", 7, 2, "Row 7: RATE is required", ""));            // past the last row
+		errors.add(new ValidationError("RATE", 0, "Missing required column"));                   // not a cell
+		return errors;
+	}
+
+	private static byte[] highlight(ExcelValidationConfig.ErrorHighlightConfig config, byte[] workbook,
+									List<ValidationError> errors) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new StreamingHighlightWriter(config).write(() -> new ByteArrayInputStream(workbook), "Data", errors, out);
+		return out.toByteArray();
+	}
+
+	private static Map<String, String> entries(byte[] zip) throws Exception {
+		Map<String, String> entries = new TreeMap<>();
+		try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+			for (ZipEntry entry; (entry = in.getNextEntry()) != null; ) {
+				entries.put(entry.getName(), new String(in.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8));
+			}
+		}
+		return entries;
+	}
+
+	private static ExcelValidationConfig.ErrorHighlightConfig config(
+			ExcelValidationConfig.ErrorHighlightConfig.FillMode fill) {
+		ExcelValidationConfig.ErrorHighlightConfig config = new ExcelValidationConfig.ErrorHighlightConfig();
+		config.setMode(ExcelValidationConfig.ErrorHighlightConfig.HighlightMode.COMMENTS);
+		config.setFill(fill);
+		return config;
+	}
+
+	@Test
+	void cellStyleModeInsertsMissingRowsAndCellsAndAddsNotes() throws Exception {
+		byte[] result = highlight(config(ExcelValidationConfig.ErrorHighlightConfig.FillMode.CELL_STYLE), workbook(), errors());
+
+		try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(result))) {
+			XSSFSheet sheet = workbook.getSheet("Data");
+			assertThat(workbook.getSheet("Readme").getRow(0).getCell(0).getStringCellValue()).isEqualTo("read me");
+
+			for (String ref : List.of("B2", "C3", "A5", "C7")) {
+				CellAddress address = new CellAddress(ref);
+				XSSFRow row = sheet.getRow(address.getRow());
+				assertNotNull(row, ref);
+				XSSFCell cell = row.getCell(address.getColumn());
+				assertThat(cell).as(ref).isNotNull();
+				assertThat(cell.getCellStyle().getFillPattern()).as(ref).isEqualTo(FillPatternType.SOLID_FOREGROUND);
+				assertThat(cell.getCellStyle().getFillForegroundColor()).as(ref).isEqualTo(IndexedColors.RED.getIndex());
+				assertThat(cell.getCellComment()).as(ref).isNotNull();
+			}
+			assertThat(sheet.getCellComment(new CellAddress("B2")).getString().getString())
+					.contains("AMOUNT must be >= 500").contains("100");
+
+			// Untouched cells keep their values, style and notes
+			assertThat(sheet.getRow(1).getCell(1).getNumericCellValue()).isEqualTo(100.0);
+			assertThat(sheet.getRow(2).getCell(1).getNumericCellValue()).isEqualTo(200.0);
+			assertThat(sheet.getRow(2).getCell(1).getCellStyle().getFillPattern()).isEqualTo(FillPatternType.NO_FILL);
+			assertThat(sheet.getRow(1).getCell(0).getCellStyle().getFillPattern()).isEqualTo(FillPatternType.NO_FILL);
+			assertThat(sheet.getCellComment(new CellAddress("A2")).getString().getString()).isEqualTo("Existing note");
+			assertThat(sheet.getRow(5).getCell(2).getStringCellValue()).isEqualTo("5%");
+
+			// Rows and cells stay in order, so the sheet reads back row by row
+			int previous = -1;
+			for (org.apache.poi.ss.usermodel.Row row : sheet) {
+				assertThat(row.getRowNum()).isGreaterThan(previous);
+				previous = row.getRowNum();
+			}
+		}
+	}
+
+	@Test
+	void rangesModeAddsConditionalFormattingInSchemaOrder() throws Exception {
+		byte[] source;
+		try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(workbook()))) {
+			XSSFSheet sheet = workbook.getSheet("Data");
+			sheet.addMergedRegion(new CellRangeAddress(0, 0, 3, 4));
+			Hyperlink link = workbook.getCreationHelper().createHyperlink(HyperlinkType.URL);
+			link.setAddress("https://example.com/");
+			sheet.getRow(2).getCell(0).setHyperlink(link);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			workbook.write(out);
+			source = out.toByteArray();
+		}
+		byte[] result = highlight(config(ExcelValidationConfig.ErrorHighlightConfig.FillMode.RANGES), source, errors());
+
+		String sheetXml = entries(result).entrySet().stream()
+				.filter(e -> e.getKey().startsWith("xl/worksheets/") && e.getValue().contains("<mergeCells"))
+				.map(Map.Entry::getValue).findFirst().orElseThrow();
+		int conditionalFormatting = sheetXml.indexOf("<conditionalFormatting");
+		assertThat(conditionalFormatting).isGreaterThan(sheetXml.indexOf("</sheetData>"))
+				.isGreaterThan(sheetXml.indexOf("<mergeCells"))
+				.isLessThan(sheetXml.indexOf("<hyperlinks"))
+				.isLessThan(sheetXml.indexOf("<pageMargins"));
+		assertThat(sheetXml.indexOf("<hyperlinks")).isPositive();
+		assertThat(sheetXml.indexOf("<pageMargins")).isPositive();
+
+		try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(result))) {
+			XSSFSheet sheet = workbook.getSheet("Data");
+			SheetConditionalFormatting formatting = sheet.getSheetConditionalFormatting();
+			List<CellRangeAddress> ranges = new ArrayList<>();
+			for (int i = 0; i < formatting.getNumConditionalFormattings(); i++) {
+				ranges.addAll(List.of(formatting.getConditionalFormattingAt(i).getFormattingRanges()));
+			}
+			for (String ref : List.of("B2", "C3", "A5", "C7")) {
+				CellAddress address = new CellAddress(ref);
+				assertThat(ranges).as(ref).anyMatch(r -> r.isInRange(address.getRow(), address.getColumn()));
+			}
+			assertThat(ranges).noneMatch(r -> r.isInRange(2, 1)); // B3 has no error
+
+			// Cells are left as they were, the fill comes from the formatting rule
+			assertThat(sheet.getRow(1).getCell(1).getCellStyle().getFillPattern()).isEqualTo(FillPatternType.NO_FILL);
+			assertThat(sheet.getMergedRegions()).containsExactly(new CellRangeAddress(0, 0, 3, 4));
+			assertThat(sheet.getRow(2).getCell(0).getHyperlink().getAddress()).isEqualTo("https://example.com/");
+		}
+	}
+
+	@Test
+	void notesGoToTheExistingCommentsAndVmlParts() throws Exception {
+		Map<String, String> before = entries(workbook());
+		Map<String, String> after = entries(
+				highlight(config(ExcelValidationConfig.ErrorHighlightConfig.FillMode.CELL_STYLE), workbook(), errors()));
+
+		List<String> commentParts = after.keySet().stream().filter(n -> n.matches("xl/comments\\d*\\.xml")).toList();
+		List<String> vmlParts = after.keySet().stream().filter(n -> n.endsWith(".vml")).toList();
+		assertThat(commentParts).hasSize(1);
+		assertThat(vmlParts).hasSize(1);
+		assertThat(before.keySet()).containsAll(commentParts).containsAll(vmlParts);
+
+		String comments = after.get(commentParts.get(0));
+		assertThat(comments).contains("Existing note", "ref=\"B2\"", "ref=\"C3\"", "ref=\"A5\"", "ref=\"C7\"");
+		// One VML shape per note: the existing one and four new ones
+		assertThat(after.get(vmlParts.get(0)).split("<v:shape ", -1)).hasSize(6);
+	}
+
+	@Test
+	void notesCreateCommentsAndVmlPartsWhenTheSheetHasNone() throws Exception {
+		byte[] source;
+		try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+			XSSFRow row = workbook.createSheet("Data").createRow(0);
+			row.createCell(0).setCellValue("NAME");
+			workbook.getSheet("Data").createRow(1).createCell(0).setCellValue("x1");
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			workbook.write(out);
+			source = out.toByteArray();
+		}
+		List<ValidationError> errors = List.of(new ValidationError("NAME", 2, 0, "Row 2: NAME format is invalid", "x1"));
+		byte[] result = highlight(config(ExcelValidationConfig.ErrorHighlightConfig.FillMode.CELL_STYLE), source, errors);
+
+		Map<String, String> entries = entries(result);
+		assertThat(entries.keySet()).anyMatch(n -> n.endsWith(".vml")).anyMatch(n -> n.matches("xl/comments\\d*\\.xml"));
+		assertThat(entries.get("[Content_Types].xml")).contains("vml").contains("comments+xml");
+		try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(result))) {
+			Comment note = workbook.getSheet("Data").getCellComment(new CellAddress("A2"));
+			assertThat(note).isNotNull();
+			assertThat(note.getString().getString()).contains("NAME format is invalid");
+		}
+	}
+
+	@Test
+	void missingSheetsAndDamagedPackagesFailBeforeAnythingIsWritten() throws Exception {
+		StreamingHighlightWriter writer = new StreamingHighlightWriter(
+				config(ExcelValidationConfig.ErrorHighlightConfig.FillMode.CELL_STYLE));
+		byte[] workbook = workbook();
+		assertThatThrownBy(() -> writer.readPackage(() -> new ByteArrayInputStream(workbook), "Missing"))
+				.hasMessageContaining("Sheet 'Missing' not found");
+		assertThatThrownBy(() -> writer.readPackage(() -> new ByteArrayInputStream(new byte[]{1, 2, 3}), "Data"))
+				.isInstanceOf(Exception.class);
+
+		// A package read up front is written as usual
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.write(writer.readPackage(() -> new ByteArrayInputStream(workbook), "Data"), errors(), out);
+		assertThat(entries(out.toByteArray())).containsKey("xl/worksheets/sheet2.xml");
+	}
+}
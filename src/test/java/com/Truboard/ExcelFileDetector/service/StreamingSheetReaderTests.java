@@ -0,0 +1,111 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.xssf.usermodel.XSSFFormulaEvaluator;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingSheetReaderTests {
+
+	private final ValidationExecutor executor = new ValidationExecutor(new ExcelValidationConfig());
+
+	@AfterEach
+	void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * NAME / INTEREST RATE sheet: a formula without a saved result in C2's column, a blank rate,
+	 * a row holding nothing but such a formula, and a plain value.
+	 */
+	private static byte[] workbook() throws Exception {
+		try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+			XSSFSheet sheet = workbook.createSheet("Data");
+			XSSFRow header = sheet.createRow(0);
+			header.createCell(0).setCellValue("NAME");
+			header.createCell(1).setCellValue("INTEREST RATE");
+			XSSFRow row = sheet.createRow(1);
+			row.createCell(0).setCellValue("a");
+			row.createCell(1).setCellFormula("2%+3%");
+			row = sheet.createRow(2);
+			row.createCell(0).setCellValue("b");
+			sheet.createRow(3).createCell(1).setCellFormula("1%");
+			row = sheet.createRow(4);
+			row.createCell(0).setCellValue("d");
+			row.createCell(1).setCellValue("5%");
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			workbook.write(out);
+			return out.toByteArray();
+		}
+	}
+
+	private static void read(byte[] workbook, StreamingSheetReader.RowHandler handler) throws Exception {
+		try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(workbook))) {
+			new StreamingSheetReader().read(pkg, handler);
+		}
+	}
+
+	private static boolean hasFormulas(byte[] workbook, boolean withoutResultOnly) throws Exception {
+		try (OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(workbook))) {
+			return new StreamingSheetReader().hasFormulas(pkg, "Data", withoutResultOnly);
+		}
+	}
+
+	@Test
+	void findsFormulasWithAndWithoutResult() throws Exception {
+		byte[] withoutResult = workbook();
+		assertThat(hasFormulas(withoutResult, true)).isTrue();
+		assertThat(hasFormulas(withoutResult, false)).isTrue();
+
+		byte[] evaluated;
+		try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(withoutResult))) {
+			XSSFFormulaEvaluator.evaluateAllFormulaCells(workbook);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			workbook.write(out);
+			evaluated = out.toByteArray();
+		}
+		assertThat(hasFormulas(evaluated, true)).isFalse();
+		assertThat(hasFormulas(evaluated, false)).isTrue();
+
+		byte[] plain;
+		try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+			workbook.createSheet("Data").createRow(0).createCell(0).setCellValue("f");
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			workbook.write(out);
+			plain = out.toByteArray();
+		}
+		assertThat(hasFormulas(plain, false)).isFalse();
+	}
+
+	@Test
+	void formulasWithoutResultAreKeptOutOfTheAutoFill() throws Exception {
+		SheetIngestSession session = new SheetIngestSession(headers -> new ColumnValidator[headers.length],
+				colName -> colName.equals("INTEREST RATE") ? "0%" : null, executor, true);
+		read(workbook(), session);
+
+		// Only the really blank rate is filled; the formula rows stay data rows with an empty value
+		assertThat(session.getAutoFilledCells()).containsExactly(new int[]{2, 1});
+		assertThat(session.getRowCount()).isEqualTo(4);
+		assertThat(session.getColumnData().get("NAME")).containsExactly("a", "b", "", "d");
+		assertThat(session.getColumnData().get("INTEREST RATE")).containsExactly("", "0%", "", "5%");
+	}
+
+	@Test
+	void pagesCountFormulaOnlyRowsAsData() throws Exception {
+		SheetWindow window = new SheetWindow(1, 10, List.of("INTEREST RATE"));
+		read(workbook(), window);
+		assertThat(window.getColumnData().get("INTEREST RATE")).containsExactly("", "", "5%");
+		assertThat(window.hasMore()).isFalse();
+	}
+}
@@ -0,0 +1,104 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ColumnValidationRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TypedColumnTests {
+
+	private static ColumnValidator validator(String type, String format, Double min, Double max) {
+		ColumnValidationRule rule = new ColumnValidationRule();
+		rule.setType(type);
+		rule.setFormat(format);
+		rule.setMin(min);
+		rule.setMax(max);
+		return ColumnValidator.compile(rule);
+	}
+
+	private static TypedColumn fill(ColumnValidator validator, List<String> values) {
+		TypedColumn column = TypedColumn.forValidator(validator);
+		values.forEach(column::add);
+		return column;
+	}
+
+	/**
+	 * Every value reads back unchanged and validates exactly like its text.
+	 */
+	private static void assertRoundTrip(ColumnValidator validator, List<String> values) {
+		TypedColumn column = fill(validator, values);
+		assertThat(column).containsExactlyElementsOf(values);
+		for (int row = 0; row < values.size(); row++) {
+			List<String> typed = new ArrayList<>();
+			List<String> text = new ArrayList<>();
+			column.validate(row, validator, typed);
+			validator.validate(values.get(row), text);
+			assertThat(typed).as("row %d '%s'", row, values.get(row)).isEqualTo(text);
+		}
+	}
+
+	@Test
+	void numbersRoundTrip() {
+		List<String> values = List.of("0", "12", "-7", "1,234.50", "1234.5", "0.2833294", "007", "1e5", "12.00%",
+				"n/a", "", "1,23", "-0", "999,999,999.99", "5.", ".5");
+		assertThat(TypedColumn.forValidator(validator("number", null, 0.0, 1000.0)))
+				.isInstanceOf(TypedColumn.Numbers.class);
+		assertRoundTrip(validator("number", null, 0.0, 1000.0), values);
+		assertRoundTrip(validator("percent", null, 0.0, 50.0), values);
+		assertRoundTrip(validator("currency", null, null, 1e6), values);
+	}
+
+	@Test
+	void datesRoundTrip() {
+		ColumnValidator validator = validator("date", "dd-MMM-yy", null, null);
+		assertThat(TypedColumn.forValidator(validator)).isInstanceOf(TypedColumn.Dates.class);
+		assertRoundTrip(validator, List.of("01-Jan-24", "29-Feb-24", "29-Feb-23", "1-Jan-24", "01-JAN-24",
+				"2024-01-01", "", "31-Dec-1999"));
+	}
+
+	@Test
+	void dateTimeFormatsKeepTheirText() {
+		ColumnValidator validator = validator("date", "dd/MM/yyyy HH:mm", null, null);
+		assertRoundTrip(validator, List.of("01/02/2020 10:30", "31/02/2020 10:30", "01/02/2020", ""));
+
+		// Even a date store handed such a formatter keeps the value as text
+		TypedColumn dates = new TypedColumn.Dates(validator,
+				java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"));
+		dates.add("01/02/2020 10:30");
+		assertThat(dates).containsExactly("01/02/2020 10:30");
+	}
+
+	@Test
+	void textsRoundTripAcrossTheDictionarySwitch() {
+		ColumnValidationRule rule = new ColumnValidationRule();
+		rule.setType("text");
+		rule.setRegex("^[A-Za-z ]+$");
+		ColumnValidator validator = ColumnValidator.compile(rule);
+
+		List<String> repeated = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) repeated.add(List.of("Alpha", "Bravo 1", "", "Charlie").get(i % 4));
+		assertRoundTrip(validator, repeated);
+
+		// Mostly distinct values switch to plain storage halfway through
+		List<String> distinct = new ArrayList<>();
+		for (int i = 0; i < 10_000; i++) distinct.add((i % 3 == 0) ? "Id" + i : "Name " + (char) ('a' + i % 26));
+		assertRoundTrip(validator, distinct);
+		assertRoundTrip(validator.forUpload(), distinct);
+	}
+
+	@Test
+	void setAndClear() {
+		TypedColumn column = fill(validator("number", null, null, null), List.of("1", "2.50", "x"));
+		assertThat(column.set(1, "oops")).isEqualTo("2.50");
+		assertThat(column.set(2, "3")).isEqualTo("x");
+		assertThat(column).containsExactly("1", "oops", "3");
+
+		column.clear();
+		assertThat(column).isEmpty();
+		column.add("");
+		assertThat(column).containsExactly("");
+	}
+}
@@ -0,0 +1,159 @@
+package com.Truboard.ExcelFileDetector.service;
+
+import com.Truboard.ExcelFileDetector.DTO.ColumnValidationRule;
+import com.Truboard.ExcelFileDetector.DTO.ValidationError;
+import com.Truboard.ExcelFileDetector.config.ExcelValidationConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ValidationExecutorTests {
+
+	private static final String[] HEADER = {"NAME", "AMOUNT", "NOTE", "RATE"};
+	private static final int ROWS = 20_000;
+
+	private final ValidationExecutor sequential = executor(1, 1_000_000);
+	private final ValidationExecutor parallel = executor(4, 37);
+
+	@AfterEach
+	void shutdown() {
+		sequential.shutdown();
+		parallel.shutdown();
+	}
+
+	private static ValidationExecutor executor(int parallelism, int chunkRows) {
+		ExcelValidationConfig config = new ExcelValidationConfig();
+		config.getValidationPool().setParallelism(parallelism);
+		config.getValidationPool().setChunkRows(chunkRows);
+		config.getValidationPool().setMinParallelCells(0);
+		return new ValidationExecutor(config);
+	}
+
+	private static ColumnValidator validator(String type, boolean required, Double min, Double max, String regex) {
+		ColumnValidationRule rule = new ColumnValidationRule();
+		rule.setType(type);
+		rule.setRequired(required);
+		rule.setMin(min);
+		rule.setMax(max);
+		rule.setRegex(regex);
+		return ColumnValidator.compile(rule);
+	}
+
+	/**
+	 * Validators per header column; NOTE has no rule and is not validated.
+	 */
+	private static ColumnValidator[] validators(String[] header) {
+		return new ColumnValidator[]{
+				validator("text", true, null, null, "^[A-Z][a-z]+$"),
+				validator("number", false, 0.0, 500.0, null),
+				null,
+				validator("percent", true, null, 50.0, null)};
+	}
+
+	/**
+	 * Cell value of a generated row, failing in a different pattern per column.
+	 */
+	private static String value(int row, int col) {
+		switch (col) {
+			case 0: return (row % 7 == 0) ? "bad" + row : "Name";
+			case 1: return String.valueOf((row * 31) % 600);
+			case 2: return "note " + row;
+			default: return (row % 11 == 0) ? "" : (row % 97) + "%";
+		}
+	}
+
+	private static List<ValidationExecutor.ColumnSlice> slices() {
+		ColumnValidator[] validators = validators(HEADER);
+		List<ValidationExecutor.ColumnSlice> slices = new ArrayList<>();
+		for (int col = 0; col < HEADER.length; col++) {
+			if (validators[col] == null) continue;
+			List<String> values = new ArrayList<>(ROWS);
+			for (int row = 0; row < ROWS; row++) values.add(value(row, col));
+			slices.add(new ValidationExecutor.ColumnSlice(HEADER[col], col, validators[col], values, 2));
+		}
+		return slices;
+	}
+
+	private static List<ValidationError> flatten(List<ValidationExecutor.ColumnResult> results) {
+		List<ValidationError> errors = new ArrayList<>();
+		for (ValidationExecutor.ColumnResult result : results) errors.addAll(result.getDetailedErrors());
+		return errors;
+	}
+
+	private static void assertColumnThenRowOrder(List<ValidationError> errors) {
+		assertThat(errors).isNotEmpty().isSortedAccordingTo(Comparator
+				.comparingInt(ValidationError::getColumnIndex)
+				.thenComparingInt(ValidationError::getRowNumber));
+	}
+
+	private static List<ValidationError> ingest(ValidationExecutor executor, ValidationErrorSink sink) throws Exception {
+		SheetIngestSession session = new SheetIngestSession(ValidationExecutorTests::validators, colName -> null,
+				executor, false);
+		if (sink != null) session.streamErrorsTo(sink);
+		session.startSheet(1, "Data");
+		session.header(HEADER.clone());
+		for (int row = 0; row < ROWS; row++) {
+			String[] values = new String[HEADER.length];
+			for (int col = 0; col < HEADER.length; col++) values[col] = value(row, col);
+			session.row(row + 1, values);
+		}
+		session.endSheet();
+		List<String> errors = new ArrayList<>();
+		List<ValidationError> detailedErrors = new ArrayList<>();
+		session.drainErrors(errors, detailedErrors);
+		assertThat(errors).hasSameSizeAs(detailedErrors);
+		return detailedErrors;
+	}
+
+	@Test
+	void parallelRangesMergeInColumnThenRowOrder() {
+		List<ValidationError> expected = flatten(sequential.validateColumns(slices()));
+		assertColumnThenRowOrder(expected);
+
+		for (int run = 0; run < 5; run++) {
+			List<ValidationError> actual = flatten(parallel.validateColumns(slices()));
+			assertThat(actual).extracting(ValidationError::getMessage)
+					.containsExactlyElementsOf(expected.stream().map(ValidationError::getMessage).toList());
+		}
+	}
+
+	@Test
+	void resultsStayAlignedWithTheirSlices() {
+		List<ValidationExecutor.ColumnResult> results = parallel.submit(slices()).join();
+		assertThat(results).hasSize(3);
+		assertThat(results.get(0).getDetailedErrors()).allMatch(e -> e.getColumnName().equals("NAME"));
+		assertThat(results.get(1).getDetailedErrors()).allMatch(e -> e.getColumnName().equals("AMOUNT"));
+		assertThat(results.get(2).getDetailedErrors()).allMatch(e -> e.getColumnName().equals("RATE"));
+		assertThat(results.get(0).getDetailedErrors().get(0).getRowNumber()).isEqualTo(2); // row 0 is "bad0"
+	}
+
+	@Test
+	void chunkedIngestReportsTheSameErrorsInTheSameOrder() throws Exception {
+		List<ValidationError> expected = flatten(sequential.validateColumns(slices()));
+
+		List<ValidationError> collected = ingest(parallel, null);
+		assertColumnThenRowOrder(collected);
+		assertThat(collected).extracting(ValidationError::getMessage)
+				.containsExactlyElementsOf(expected.stream().map(ValidationError::getMessage).toList());
+	}
+
+	@Test
+	void streamedErrorsComeChunkByChunkInColumnThenRowOrder() throws Exception {
+		List<ValidationError> streamed = new ArrayList<>();
+		assertThat(ingest(parallel, streamed::add)).isEmpty();
+
+		List<ValidationError> expected = flatten(sequential.validateColumns(slices()));
+		assertThat(streamed).hasSameSizeAs(expected);
+		// Chunks come out in row order; within a chunk, column order, then row order
+		int chunkRows = parallel.getChunkRows();
+		assertThat(streamed).isSortedAccordingTo(Comparator
+				.<ValidationError>comparingInt(e -> (e.getRowNumber() - 2) / chunkRows)
+				.thenComparingInt(ValidationError::getColumnIndex)
+				.thenComparingInt(ValidationError::getRowNumber));
+	}
+}